@@ -41,7 +41,8 @@
 		<div id="play-buttons">
 			<label for="is-auto">Auto: </label><input id="is-auto"
 				type="checkbox"> <label for="is-bin">Bin: </label><input
-				id="is-bin" type="checkbox">
+				id="is-bin" type="checkbox" checked> <label for="is-delta">Delta: </label><input
+				id="is-delta" type="checkbox">
 			<button id="connect-button" type="button">Connect</button>
 			<input id="send-text" type="text" />
 			<button id="send-button" type="button">Send</button>
@@ -50,7 +51,10 @@
 	</div>
 
 	<script type="text/javascript">
-        var canvas, ws, context, auto = false, bin = false, img = new Image();
+        var canvas, ws, context, auto = false, bin = false, delta = false, img = new Image(), CREDITS = 3;
+        
+        /* Tiles must be drawn after the frame they update, so drawing is chained. */
+        var drawing = Promise.resolve();
 
         canvas = document.getElementById("port");
         context = canvas.getContext("2d");
@@ -61,6 +65,7 @@
 
             bin = document.getElementById("is-bin").checked;
             auto = document.getElementById("is-auto").checked;
+            delta = bin && document.getElementById("is-delta").checked;
 
             <%  /* Web socket URL. */
             	String url = request.getRequestURI();
@@ -72,7 +77,8 @@
 		    	url = "ws://" + request.getLocalAddr() + ":" + request.getServerPort() + url;
 		    %>
             
-            ws = new WebSocket("<%= url %>" + (bin ? "&bin=t" : ""));
+            ws = new WebSocket("<%= url %>" + (bin ? "&bin=t" : "") + (delta ? "&delta=t" : ""));
+            ws.binaryType = "arraybuffer";
             ws.onerror = function(error) {
                 console.log(error)
             };
@@ -87,19 +93,18 @@
 				 	dataImage(message.data);	   
 				}
 
-                if (auto)
-                {
-                    setTimeout(function()
-                    {
-                        ws.send("p");
-                    }, 50);
-                }
+                /* Return the credit used by this frame so the server continues 
+                 * to push frames. */
+                if (auto) ws.send("c1");
             };
 
             ws.onopen = function()
             {
                 console.log("Connection opened");
-                ws.send("p");
+                
+                /* In auto mode a window of credits is granted so frames are pushed 
+                 * as they arrive, otherwise a single frame is pulled. */
+                ws.send(auto ? "c" + CREDITS : "p");
             };
         };
 
@@ -122,9 +127,51 @@
 
         function binImage(data)
         {
-            //createImageBitmap(data).then(function(bitmap) {
-            createImageBitmap(data.slice(0, data.length, "image/jpeg")).then(function(bitmap) {
-                context.drawImage(bitmap, 0, 0);
+            /* Binary messages are an envelope header followed by the JPEG. The header 
+             * length is read from the header so the header may be extended. */
+            var header = new DataView(data), frame = {
+                type:      header.getUint8(1),
+                sequence:  header.getUint32(4),
+                timestamp: header.getUint32(8) * 4294967296 + header.getUint32(12),
+                width:     header.getUint16(16),
+                height:    header.getUint16(18),
+                rendition: header.getUint16(20)
+            };
+            
+            if (frame.type == 1)
+            {
+                tileImage(data, header);
+                return;
+            }
+            
+            var jpeg = new Blob([new Uint8Array(data, header.getUint16(2))], { type: "image/jpeg" });
+            draw(jpeg, 0, 0);
+        }
+        
+        function tileImage(data, header)
+        {
+            /* Tile messages are the number of tiles followed by each tile's position, 
+             * length and JPEG. */
+            var pos = header.getUint16(2), num = header.getUint16(pos), len;
+            pos += 4;
+            
+            for (var i = 0; i < num; i++)
+            {
+                len = header.getUint32(pos + 4);
+                draw(new Blob([new Uint8Array(data, pos + 8, len)], { type: "image/jpeg" }), 
+                        header.getUint16(pos), header.getUint16(pos + 2));
+                pos += 8 + len;
+            }
+        }
+        
+        function draw(jpeg, x, y)
+        {
+            var decoded = createImageBitmap(jpeg);
+            drawing = drawing.then(function() {
+                return decoded;
+            }).then(function(bitmap) {
+                context.drawImage(bitmap, x, y);
+                bitmap.close();
             });
         }
 
@@ -10,6 +10,8 @@ package au.edu.remotelabs.mjpeg;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.util.Iterator;
+import java.util.Map;
+import java.util.Map.Entry;
 import java.util.logging.Logger;
 
 import javax.servlet.ServletConfig;
@@ -20,6 +22,8 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import au.edu.remotelabs.mjpeg.StreamerConfig.Stream;
+import au.edu.remotelabs.mjpeg.dest.AdmissionController;
+import au.edu.remotelabs.mjpeg.dest.BandwidthGovernor;
 
 /** 
  * REST calls that allows management operations to be executed.
@@ -33,6 +37,9 @@ public class ApiServlet extends HttpServlet
     /** URL pattern for servlet. */
     public final static String PATH = "/api/";
     
+    /** Time in milliseconds a stream is prewarmed for if not specified. */
+    private final static long DEFAULT_PREWARM = 60000;
+    
     /** Holder for streamer objects. */
     private StreamerHolder holder;
     
@@ -86,11 +93,57 @@ public class ApiServlet extends HttpServlet
             }
             break;
 
+        case "stats": // Return metrics about reading the stream.
+            stream = this.getStream(request);
+            if (stream != null)
+            {
+                this.handleGetStats(response, this.holder.getStream(stream.name).getStats());
+            }
+            else
+            {
+                response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+            }
+            break;
+
+        case "bandwidth": // Return utilisation of bandwidth limits.
+            this.handleGetStats(response, BandwidthGovernor.get().getStats());
+            break;
+
+        case "admission": // Return utilisation of admission budgets and measured transform costs.
+            this.handleGetStats(response, AdmissionController.get().getStats());
+            break;
+
         default:
             this.logger.info("Unknown operation " + op);
             break;
         }
     }
+    
+    /**
+     * Handle request to get metrics.
+     * 
+     * @param response the request response
+     * @param stats metric names and values
+     * @throws IOException error writing output
+     */
+    private void handleGetStats(HttpServletResponse response, Map<String, Number> stats) throws IOException
+    {
+        response.setContentType("application/json");
+        
+        PrintWriter out = response.getWriter();
+        out.print('{');
+        Iterator<Entry<String, Number>> it = stats.entrySet().iterator();
+        while (it.hasNext())
+        {
+            Entry<String, Number> e = it.next();
+            ApiServlet.printString(out, e.getKey());
+            out.print(':');
+            out.print(e.getValue());
+            
+            if (it.hasNext()) out.print(',');
+        }
+        out.print('}');
+    }
 
     /**
      * Handle request to get list of streams.
@@ -108,9 +161,7 @@ public class ApiServlet extends HttpServlet
         while (it.hasNext())
         {
             String name = it.next();
-            out.print('"');
-            out.print(name);
-            out.print('"');
+            ApiServlet.printString(out, name);
             out.print(':');
             out.print(!this.holder.getStream(name).isDisabled());
             
@@ -119,6 +170,36 @@ public class ApiServlet extends HttpServlet
         out.print('}');
     }
 
+    /**
+     * Prints a string as a quoted JSON string. Names of streams are configured
+     * so may contain characters that must be escaped.
+     * 
+     * @param out output to print to
+     * @param str string to print
+     */
+    private static void printString(PrintWriter out, String str)
+    {
+        out.print('"');
+        for (int i = 0; i < str.length(); i++)
+        {
+            char c = str.charAt(i);
+            if (c == '"' || c == '\\')
+            {
+                out.print('\\');
+                out.print(c);
+            }
+            else if (c < 0x20)
+            {
+                out.print(String.format("\\u%04x", (int) c));
+            }
+            else
+            {
+                out.print(c);
+            }
+        }
+        out.print('"');
+    }
+
     @Override
     protected void doPost(HttpServletRequest request, HttpServletResponse response)
         throws ServletException, IOException
@@ -159,6 +240,10 @@ public class ApiServlet extends HttpServlet
             this.holder.getStream(stream.name).disable();
             break;
             
+        case "prewarm":        // Read the stream source before viewers arrive
+            this.prewarm(request, response, stream);
+            break;
+            
         default:
             this.logger.info("Unknown operation " + operation);
             response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
@@ -193,6 +278,43 @@ public class ApiServlet extends HttpServlet
         }
     }
     
+    /**
+     * Prewarms a stream, such as before a scheduled session that will view it.
+     * 
+     * @param request request with optional duration parameter in milliseconds
+     * @param response request response
+     * @param stream stream to prewarm
+     */
+    private void prewarm(HttpServletRequest request, HttpServletResponse response, Stream stream)
+    {
+        long duration = DEFAULT_PREWARM;
+        String param = request.getParameter("duration");
+        if (param != null)
+        {
+            try
+            {
+                duration = Long.parseLong(param);
+            }
+            catch (NumberFormatException e)
+            {
+                duration = -1;
+            }
+            
+            if (duration <= 0)
+            {
+                this.logger.info("Invalid prewarm duration " + param + " for " + stream.name);
+                response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+                return;
+            }
+        }
+        
+        if (!this.holder.getStream(stream.name).prewarm(duration))
+        {
+            this.logger.info("Cannot prewarm " + stream.name + " because it is disabled.");
+            response.setStatus(HttpServletResponse.SC_PRECONDITION_FAILED);
+        }
+    }
+    
     /**
      * Gets the stream from the request parameter.
      * 
@@ -0,0 +1,162 @@
+/**
+ * MJPEG streaming application.
+ *
+ * @author Michael Diponio <michael.diponio@uts.edu.au>
+ * @date 19th October 2026
+ */
+
+package au.edu.remotelabs.mjpeg;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import javax.websocket.EndpointConfig;
+import javax.websocket.OnClose;
+import javax.websocket.OnError;
+import javax.websocket.OnMessage;
+import javax.websocket.OnOpen;
+import javax.websocket.Session;
+import javax.websocket.server.ServerEndpoint;
+
+import au.edu.remotelabs.mjpeg.StreamerConfig.Stream;
+import au.edu.remotelabs.mjpeg.dest.AdmissionController;
+import au.edu.remotelabs.mjpeg.source.SourceStream;
+import au.edu.remotelabs.mjpeg.ws.MultiplexOutput;
+import au.edu.remotelabs.mjpeg.ws.WebSocketOutput;
+
+/**
+ * Web socket end point that streams frames from several streams on a single
+ * connection. Streams are subscribed to and unsubscribed from with control
+ * messages and frames are sent as binary envelopes tagged with the channel
+ * they were subscribed on.
+ */
+@ServerEndpoint("/wsmux")
+public class MultiplexEndpoint
+{
+    /** Holder of streamer objects. */
+    private final StreamerHolder holder;
+
+    /** Currently open connections. */
+    private final Map<String, MultiplexOutput> connections;
+
+    /** Logger. */
+    private final Logger logger;
+
+    public MultiplexEndpoint()
+    {
+        this.logger = Logger.getLogger(getClass().getName());
+        this.holder = StreamerHolder.get();
+        this.connections = new HashMap<>();
+    }
+
+    @OnOpen
+    public void start(Session session, EndpointConfig config)
+    {
+        this.logger.fine("Accepting multiplexed web socket session " + session.getId());
+        this.connections.put(session.getId(), new MultiplexOutput(session));
+    }
+
+    @OnMessage
+    public void incoming(String message, Session session)
+    {
+        MultiplexOutput out = this.connections.get(session.getId());
+        if (out == null) return;
+
+        /*
+         * Messages are:
+         *  s <channel> <stream>[?<params>] - subscribe channel to stream with transform parameters
+         *  u <channel>                     - unsubscribe channel
+         *  c<N>                            - grant credit to send the next N frames
+         * Failed subscriptions are reported with 'e <channel> <reason>'.
+         */
+        try
+        {
+            String parts[] = message.trim().split(" ", 3);
+            switch (parts[0].charAt(0))
+            {
+            case 's':
+                if (parts.length < 3) break;
+                String error = this.subscribe(out, Integer.parseInt(parts[1]), parts[2]);
+                if (error != null) out.reply("e " + parts[1] + ' ' + error);
+                break;
+
+            case 'u':
+                if (parts.length < 2) break;
+                out.unsubscribe(Integer.parseInt(parts[1]));
+                break;
+
+            case 'c':
+                out.grant(Integer.parseInt(parts[0].substring(1)));
+                break;
+            }
+        }
+        catch (NumberFormatException | StringIndexOutOfBoundsException e)
+        {
+            this.logger.fine("Ignoring malformed message for session " + session.getId() + ": " + message);
+        }
+    }
+
+    /**
+     * Subscribes a channel to a stream.
+     *
+     * @param out connection output
+     * @param channel channel identifier
+     * @param request stream name and optional query string of parameters
+     * @return null if successful, otherwise reason subscription failed
+     */
+    private String subscribe(MultiplexOutput out, int channel, String request)
+    {
+        if (channel < 0 || channel > 0xFFFF) return "Invalid channel";
+
+        int q = request.indexOf('?');
+        Map<String, String> params = q > 0 ? WebSocketOutput.parseParams(request.substring(q + 1)) :
+                Collections.emptyMap();
+
+        Stream stream = this.holder.getStreamConfig(q > 0 ? request.substring(0, q) : request);
+        if (stream == null) return "Stream not found";
+
+        if (!this.holder.getAuthenticator().authenticate(stream, params.get("pw"))) return "Auth failed";
+
+        SourceStream source = this.holder.getStream(stream.name);
+        if (source.isDisabled()) return "Stream disabled";
+
+        /* Each subscription is a viewer so is admitted like a separate connection. Any
+         * existing subscription of the channel is replaced so its viewer is released first. */
+        out.unsubscribe(channel);
+        AdmissionController.Ticket ticket = AdmissionController.get().admit(source, params);
+        if (!ticket.isAdmitted()) return "Over capacity, retry after " + ticket.getRetryAfter() + "s";
+
+        /* A failed subscription releases its ticket. */
+        if (!out.subscribe(channel, source, ticket)) return "Stream disabled";
+
+        return null;
+    }
+
+    @OnClose
+    public void end(Session session)
+    {
+        this.logger.fine("Closing multiplexed session " + session.getId());
+        this.release(session);
+    }
+
+    @OnError
+    public void error(Session session, Throwable thr)
+    {
+        this.logger.fine("Error for multiplexed session " + session.getId() + ", error " +
+                thr.getClass().getName() + ": " + thr.getMessage());
+        this.release(session);
+    }
+
+    /**
+     * Close the session.
+     *
+     * @param session session that has been closed
+     */
+    private void release(Session session)
+    {
+        MultiplexOutput out = this.connections.remove(session.getId());
+        if (out != null) out.close();
+    }
+}
@@ -0,0 +1,236 @@
+/**
+ * MJPEG streaming application.
+ *
+ * @author Michael Diponio <michael.diponio@uts.edu.au>
+ * @date 19th October 2026
+ */
+
+package au.edu.remotelabs.mjpeg;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.servlet.ServletException;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import au.edu.remotelabs.mjpeg.StreamerConfig.Stream;
+import au.edu.remotelabs.mjpeg.dest.AdmissionController;
+import au.edu.remotelabs.mjpeg.dest.BandwidthGovernor;
+import au.edu.remotelabs.mjpeg.dest.FrameTransformer;
+import au.edu.remotelabs.mjpeg.source.Frame;
+import au.edu.remotelabs.mjpeg.source.SourceStream;
+
+/**
+ * Servlet that returns the last frame read from many streams in a single
+ * multipart/mixed response. Frames are not waited for, so streams which are not
+ * being read return the last frame they read, if any. Each part has headers
+ * describing how stale the frame is.
+ * <br />
+ * Takes the parameter 'streams', a comma separated list of streams to return,
+ * otherwise all streams are returned. Transforms may be specified as for other
+ * formats. Protected streams are only returned if the request has the API
+ * secret or the password 'pw' of the stream. Each returned frame is admitted
+ * and charged to the bandwidth budget as a viewer of its stream, so parts
+ * over capacity are returned without a frame.
+ */
+@WebServlet(name = "SnapshotServlet",
+            urlPatterns = SnapshotServlet.PATH)
+public class SnapshotServlet extends HttpServlet
+{
+    private static final long serialVersionUID = 1L;
+
+    /** URL pattern for servlet. */
+    public final static String PATH = "/snapshots";
+
+    /** Boundary delimiting each snapshot. */
+    public final static String BOUNDARY = "mjpeg-streamer-snapshot";
+
+    /** Holder for streamer objects. */
+    private final StreamerHolder holder;
+
+    public SnapshotServlet()
+    {
+        super();
+
+        this.holder = StreamerHolder.get();
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException
+    {
+        Map<String, String> params = new LinkedHashMap<>();
+        request.getParameterMap().forEach((String k, String v[]) -> params.put(k, v[0]));
+
+        List<String> names = params.containsKey("streams") ?
+                Arrays.asList(params.get("streams").split(",")) :
+                new ArrayList<>(this.holder.getConfig().getStreams().keySet());
+
+        String secret = this.holder.getConfig().getApiSecret();
+        boolean admin = secret != null && secret.equals(request.getHeader("Authorization"));
+
+        response.setContentType("multipart/mixed;boundary=" + BOUNDARY);
+        response.setHeader("Cache-Control", "no-store");
+        OutputStream out = response.getOutputStream();
+
+        BandwidthGovernor.Client client = BandwidthGovernor.get().open();
+        try
+        {
+            for (String name : names) this.writeSnapshot(out, name.trim(), params, admin, client);
+        }
+        finally
+        {
+            BandwidthGovernor.get().close(client);
+        }
+
+        this.writeln(out, "--" + BOUNDARY + "--");
+    }
+
+    /**
+     * Writes the snapshot part of a stream.
+     *
+     * @param out response output
+     * @param name requested stream name
+     * @param params request parameters
+     * @param admin whether the request has the API secret
+     * @param client bandwidth budget of the request
+     * @throws IOException error writing
+     */
+    private void writeSnapshot(OutputStream out, String name, Map<String, String> params, boolean admin,
+            BandwidthGovernor.Client client) throws IOException
+    {
+        Stream stream = this.holder.getStreamConfig(name);
+        if (stream == null)
+        {
+            /* The name is echoed in the part headers so must not contain line breaks. */
+            this.writePart(out, name.replaceAll("\\p{Cntrl}", ""), "not-found", null, null);
+            return;
+        }
+
+        SourceStream source = this.holder.getStream(stream.name);
+        if (!admin && !this.holder.getAuthenticator().authenticate(stream, params.get("pw")))
+        {
+            this.writePart(out, stream.name, "forbidden", source, null);
+            return;
+        }
+
+        if (source.isDisabled())
+        {
+            this.writePart(out, stream.name, "disabled", source, null);
+            return;
+        }
+
+        Frame frame = source.getLastFrame();
+        String status = source.isErrored() ? "error" : source.isReconnecting() ? "reconnecting" :
+                source.isReading() ? "reading" : "stopped";
+        if (frame == null)
+        {
+            this.writePart(out, stream.name, status, source, null);
+            return;
+        }
+
+        /* Each snapshot is a viewer of its stream, so is subject to the same processing
+         * and viewer budgets as other requests, and may be sent a cheaper rendition. */
+        AdmissionController.Ticket ticket = AdmissionController.get().admit(source, params);
+        if (!ticket.isAdmitted())
+        {
+            this.writePart(out, stream.name, "over-capacity", source, null);
+            return;
+        }
+
+        try
+        {
+            /* Transformed frames are shared through the snapshot cache so repeated
+             * requests for the same thumbnails do not transform again. */
+            FrameTransformer transformer = FrameTransformer.get(source, ticket.getParams());
+            try
+            {
+                frame = transformer.transformSnapshot(frame);
+            }
+            catch (IOException e)
+            {
+                /* A corrupt frame of one stream should not fail the other snapshots. */
+                status = "transform-error";
+                frame = null;
+            }
+            finally
+            {
+                FrameTransformer.unget(transformer);
+            }
+
+            if (frame != null && 
+                    !BandwidthGovernor.get().admit(client, stream.name, frame.getContentLength(), false))
+            {
+                status = "over-budget";
+                frame = null;
+            }
+
+            this.writePart(out, stream.name, status, source, frame);
+        }
+        finally
+        {
+            AdmissionController.get().release(ticket);
+        }
+    }
+
+    /**
+     * Writes a snapshot part. Parts without a frame have no content.
+     *
+     * @param out response output
+     * @param name stream name
+     * @param status status of stream
+     * @param source source stream or null if not found
+     * @param frame frame or null if no frame is available
+     * @throws IOException error writing
+     */
+    private void writePart(OutputStream out, String name, String status, SourceStream source, Frame frame)
+            throws IOException
+    {
+        this.writeln(out, "--" + BOUNDARY);
+        this.writeln(out, "stream-name: " + name);
+        this.writeln(out, "stream-status: " + status);
+
+        if (frame != null)
+        {
+            /* Age is measured on the monotonic clock so it is not affected by clock changes. */
+            this.writeln(out, "Content-Type: " + frame.getContentType());
+            this.writeln(out, "Content-Length: " + frame.getContentLength());
+            this.writeln(out, "frame-sequence: " + frame.getSequence());
+            this.writeln(out, "frame-timestamp: " + frame.getTimestamp());
+            this.writeln(out, "frame-age: " + (System.nanoTime() - frame.getArrivalTime()) / 1000000);
+            this.writeln(out, "frame-interval: " + source.getFrameInterval() / 1000000);
+            this.writeln(out, "");
+            frame.writeTo(out);
+            this.writeln(out, "");
+        }
+        else
+        {
+            this.writeln(out, "Content-Length: 0");
+            this.writeln(out, "");
+            this.writeln(out, "");
+        }
+    }
+
+    /**
+     * Writes a line terminated with a carriage return and new line.
+     *
+     * @param out output
+     * @param line line to write
+     * @throws IOException error writing
+     */
+    private void writeln(OutputStream out, String line) throws IOException
+    {
+        out.write(line.getBytes(StandardCharsets.UTF_8));
+        out.write('\r');
+        out.write('\n');
+    }
+}
@@ -13,8 +13,10 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.logging.Logger;
 
@@ -38,6 +40,24 @@ public class StreamerConfig
     /** API secret. */
     private String secret;
 
+    /** Limit of all clients in kilobits per second, 0 if unlimited. */
+    private int globalBandwidth;
+
+    /** Limit of the clients of each stream in kilobits per second, 0 if unlimited. */
+    private int streamBandwidth;
+
+    /** Limit of each client in kilobits per second, 0 if unlimited. */
+    private int clientBandwidth;
+
+    /** Percentage of processor capacity that may be used transforming frames, 0 if unlimited. */
+    private int cpuBudget;
+
+    /** Maximum number of concurrent viewers, 0 if unlimited. */
+    private int viewerLimit;
+
+    /** Maximum number of concurrent viewers of each stream, 0 if unlimited. */
+    private int streamViewerLimit;
+
     /** Configured streams. */
     private Map<String, Stream> streams = new HashMap<>();
 
@@ -110,6 +130,14 @@ public class StreamerConfig
                         this.parseSecurity(reader);
                         break;
                         
+                    case "bandwidth": // Egress bandwidth limits
+                        this.parseBandwidth(reader);
+                        break;
+                        
+                    case "admission": // Viewer and processing budgets
+                        this.parseAdmission(reader);
+                        break;
+                        
                     case "streams":
                         this.parseStreams(reader);
                         break;
@@ -161,6 +189,83 @@ public class StreamerConfig
         while (reader.hasName() && !"security".equals(reader.getLocalName()));
     }
     
+    /**
+     * Parse bandwidth limits section.
+     * 
+     * @param reader XML reader
+     * @throws XMLStreamException parse error
+     * @throws ServletException invalid limit
+     */
+    private void parseBandwidth(XMLStreamReader reader) throws XMLStreamException, ServletException
+    {
+        do 
+        {
+            if (reader.nextTag() == XMLStreamConstants.START_ELEMENT)            
+            {
+                switch (reader.getLocalName())
+                {
+                case "global":
+                    this.globalBandwidth = this.parseInt(reader);
+                    break;
+                    
+                case "stream":
+                    this.streamBandwidth = this.parseInt(reader);
+                    break;
+                    
+                case "client":
+                    this.clientBandwidth = this.parseInt(reader);
+                    break;
+                }
+            }
+        }
+        while (reader.hasName() && !"bandwidth".equals(reader.getLocalName()));
+        
+        if (this.globalBandwidth < 0 || this.streamBandwidth < 0 || this.clientBandwidth < 0)
+        {
+            this.logger.severe("Error in configuration, bandwidth limits must not be negative.");
+            throw new ServletException("Negative bandwidth limit in configuration file.");
+        }
+    }
+    
+    /**
+     * Parse admission control budgets section.
+     * 
+     * @param reader XML reader
+     * @throws XMLStreamException parse error
+     * @throws ServletException invalid budget
+     */
+    private void parseAdmission(XMLStreamReader reader) throws XMLStreamException, ServletException
+    {
+        do 
+        {
+            if (reader.nextTag() == XMLStreamConstants.START_ELEMENT)            
+            {
+                switch (reader.getLocalName())
+                {
+                case "cpu":
+                    this.cpuBudget = this.parseInt(reader);
+                    break;
+                    
+                case "viewers":
+                    this.viewerLimit = this.parseInt(reader);
+                    break;
+                    
+                case "streamViewers":
+                    this.streamViewerLimit = this.parseInt(reader);
+                    break;
+                }
+            }
+        }
+        while (reader.hasName() && !"admission".equals(reader.getLocalName()));
+        
+        if (this.cpuBudget < 0 || this.cpuBudget > 100 || this.viewerLimit < 0 || this.streamViewerLimit < 0)
+        {
+            this.logger.severe("Error in configuration, admission CPU budget must be a percentage and viewer " +
+                    "limits must not be negative.");
+            throw new ServletException("Invalid admission budget in configuration file.");
+        }
+    }
+    
     /**
      * Parse streams configuration section.
      * 
@@ -206,6 +311,30 @@ public class StreamerConfig
                     builder.setURL(reader.getElementText());
                     break;
                     
+                case "backup":
+                    builder.addBackupURL(reader.getElementText());
+                    break;
+                    
+                case "hedge":
+                    builder.addHedgeURL(reader.getElementText());
+                    break;
+                    
+                case "profile":
+                    this.parseProfile(reader, builder);
+                    break;
+                    
+                case "readTimeout":
+                    builder.setReadTimeout(this.parseInt(reader));
+                    break;
+                    
+                case "retries":
+                    builder.setRetries(this.parseInt(reader));
+                    break;
+                    
+                case "maxFps":
+                    builder.setMaxFps(this.parseInt(reader));
+                    break;
+                    
                 case "access":
                     builder.setPassword(reader.getElementText());
                     break;
@@ -218,6 +347,23 @@ public class StreamerConfig
                     builder.setOnDemand("true".equals(reader.getElementText()));
                     break;
                     
+                case "linger":
+                    builder.setLinger(this.parseInt(reader));
+                    break;
+                    
+                case "prewarm":
+                    /* Presence of the prewarm tag enables prewarming from past viewer arrivals. */
+                    builder.setPrewarm(true);
+                    do
+                    {
+                        if (reader.nextTag() == XMLStreamConstants.START_ELEMENT && "lead".equals(reader.getLocalName()))
+                        {
+                            builder.setPrewarmLead(this.parseInt(reader));
+                        }
+                    }
+                    while (reader.hasNext() && !"prewarm".equals(reader.getLocalName()));
+                    break;
+                    
                 case "protect":
                     builder.setProtected("true".equals(reader.getElementText()));
                     break;
@@ -240,15 +386,66 @@ public class StreamerConfig
                     while (reader.hasNext() && !"auth".equals(reader.getLocalName()));
                     break;
                     
+                case "dejitter":
+                    /* Presence of the de-jitter tag enables de-jittering with default bounds. */
+                    builder.setDejitter(Stream.Builder.DEFAULT_JITTER_FRAMES, Stream.Builder.DEFAULT_JITTER_LATENCY);
+                    do
+                    {
+                        if (reader.nextTag() == XMLStreamConstants.START_ELEMENT)
+                        {
+                            switch (reader.getLocalName())
+                            {
+                            case "frames":
+                                builder.setDejitterFrames(this.parseInt(reader));
+                                break;
+                                
+                            case "latency":
+                                builder.setDejitterLatency(this.parseInt(reader));
+                                break;
+                            }
+                        }
+                    }
+                    while (reader.hasNext() && !"dejitter".equals(reader.getLocalName()));
+                    break;
+                    
+                case "dedupe":
+                    /* Presence of the dedupe tag enables suppressing exact duplicate frames. */
+                    builder.setDedupe(true);
+                    do
+                    {
+                        if (reader.nextTag() == XMLStreamConstants.START_ELEMENT)
+                        {
+                            switch (reader.getLocalName())
+                            {
+                            case "threshold":
+                                builder.setDedupeThreshold(this.parseInt(reader));
+                                break;
+                                
+                            case "keepalive":
+                                builder.setDedupeKeepalive(this.parseInt(reader));
+                                break;
+                            }
+                        }
+                    }
+                    while (reader.hasNext() && !"dedupe".equals(reader.getLocalName()));
+                    break;
+                    
                 case "format":
                     do
                     {
                         if (reader.nextTag() == XMLStreamConstants.START_ELEMENT)
                         {
-                            builder.addFormatParam(reader.getLocalName(), reader.getElementText());
+                            if ("type".equals(reader.getLocalName()))
+                            {
+                                builder.setSourceType(reader.getElementText());
+                            }
+                            else
+                            {
+                                builder.addFormatParam(reader.getLocalName(), reader.getElementText());
+                            }
                         }
                     }
-                    while (reader.hasNext() && "!format".equals(reader.getLocalName()));
+                    while (reader.hasNext() && !"format".equals(reader.getLocalName()));
                     break;
                     
                 default:
@@ -263,6 +460,75 @@ public class StreamerConfig
         this.streams.put(builder.name, builder.build());
     }
 
+    /**
+     * Parses a source profile of a stream.
+     * 
+     * @param reader XML reader
+     * @param builder builder of stream
+     * @throws XMLStreamException parse error
+     * @throws ServletException invalid profile
+     */
+    private void parseProfile(XMLStreamReader reader, Stream.Builder builder) throws XMLStreamException, ServletException
+    {
+        String url = null;
+        int width = 0, height = 0, fps = 0;
+        
+        do
+        {
+            if (reader.nextTag() == XMLStreamConstants.START_ELEMENT)
+            {
+                switch (reader.getLocalName())
+                {
+                case "url":
+                    url = reader.getElementText();
+                    break;
+                    
+                case "width":
+                    width = this.parseInt(reader);
+                    break;
+                    
+                case "height":
+                    height = this.parseInt(reader);
+                    break;
+                    
+                case "fps":
+                    fps = this.parseInt(reader);
+                    break;
+                    
+                default:
+                    this.logger.severe("Error in configuration file, unexpected profile tag: " + reader.getLocalName());
+                    throw new ServletException("Unexpected profile tag reading configuration file.");
+                }
+            }
+        }
+        while (reader.hasNext() && !"profile".equals(reader.getLocalName()));
+        
+        builder.addProfile(new Stream.Profile(url, width, height, fps));
+    }
+
+    /**
+     * Parses the text of the current element as an integer.
+     * 
+     * @param reader XML reader
+     * @return parsed integer
+     * @throws XMLStreamException parse error
+     * @throws ServletException element is not an integer
+     */
+    private int parseInt(XMLStreamReader reader) throws XMLStreamException, ServletException
+    {
+        String name = reader.getLocalName();
+        String text = reader.getElementText();
+        try
+        {
+            return Integer.parseInt(text.trim());
+        }
+        catch (NumberFormatException e)
+        {
+            this.logger.severe("Error in configuration file, value of " + name + " is not a number: " + text);
+            throw new ServletException("Invalid number for " + name + " in configuration file.");
+        }
+    }
+
     public String getAdminUsername() 
     { 
         return this.username; 
@@ -278,6 +544,36 @@ public class StreamerConfig
     {
         return this.secret;
     }
+    
+    public int getGlobalBandwidth()
+    {
+        return this.globalBandwidth;
+    }
+    
+    public int getStreamBandwidth()
+    {
+        return this.streamBandwidth;
+    }
+    
+    public int getClientBandwidth()
+    {
+        return this.clientBandwidth;
+    }
+    
+    public int getCpuBudget()
+    {
+        return this.cpuBudget;
+    }
+    
+    public int getViewerLimit()
+    {
+        return this.viewerLimit;
+    }
+    
+    public int getStreamViewerLimit()
+    {
+        return this.streamViewerLimit;
+    }
   
     public Map<String, Stream> getStreams()
     {
@@ -299,6 +595,12 @@ public class StreamerConfig
             NONE,  // No Authentication 
             BASIC  // HTTP basic authentication
         }
+        
+        /** Supported source stream types. */
+        public enum SourceType {
+            MJPEG,    // Multipart M-JPEG stream
+            SNAPSHOT  // Single JPEG snapshot which is polled
+        }
 
         /** The name of the stream which forms part of access stream URLs. */
         public final String name;
@@ -306,6 +608,26 @@ public class StreamerConfig
         /** URL to source stream. */
         public final URL source;
         
+        /** URLs of equivalent source streams that are read if the source fails. */
+        public final List<URL> backups;
+        
+        /** URLs of equivalent source streams that are read at the same time as the source,
+         *  with each frame taken from whichever delivers it first. */
+        public final List<URL> hedges;
+        
+        /** Alternative profiles of the source with smaller frames or lower frame rates, 
+         *  in order of increasing cost. */
+        public final List<Profile> profiles;
+        
+        /** Maximum time in milliseconds to wait for a frame before the source is considered stalled. */
+        public final int readTimeout;
+        
+        /** Number of consecutive failed connections before the stream is errored, 0 if unlimited. */
+        public final int retries;
+        
+        /** Maximum rate in frames per second frames are read from the source, 0 if unlimited. */
+        public final int maxFps;
+        
         /** Whether this stream is protected by a password. */
         public final boolean protect;
 
@@ -319,6 +641,15 @@ public class StreamerConfig
         
         /** Whether the source stream is accessed on demand or continuously. */
         public final boolean ondemand;
+        
+        /** Time in milliseconds an on demand source is still read after its last destination leaves. */
+        public final int linger;
+        
+        /** Whether an on demand source is read before viewers are expected from their past arrivals. */
+        public final boolean prewarm;
+        
+        /** Time in milliseconds before viewers are expected that a prewarmed source is read. */
+        public final int prewarmLead;
 
         /** Type of authentication to access source stream. */
         public final AuthType authType;
@@ -326,27 +657,50 @@ public class StreamerConfig
         /** Parameters such as username password pair to authenticate to source stream. */
         public final Map<String, String> authParams; 
         
+        /** Type of source stream. */
+        public final SourceType sourceType;
+        
         /** Format specific options that help reading source stream. */
         public final Map<String, String> formatParams;
+        
+        /** Maximum number of frames held to de-jitter the source, 0 if de-jittering is disabled. */
+        public final int jitterFrames;
+        
+        /** Maximum time in milliseconds a frame may be held to de-jitter the source. */
+        public final int jitterLatency;
+        
+        /** Whether frames that duplicate the last published frame are suppressed. */
+        public final boolean dedupe;
+        
+        /** Largest difference in brightness of the downsampled frames for frames to be 
+         *  duplicates, 0 if only exact duplicates are suppressed. */
+        public final int dedupeThreshold;
+        
+        /** Time in milliseconds after which a duplicate frame is published so destinations keep sending. */
+        public final int dedupeKeepalive;
 
-        Stream(String name, String url, String pass, boolean protect, boolean resettable, boolean ondemand, 
-                String type, Map<String, String> auth, Map<String, String> format)
-                throws ServletException
+        /**
+         * Creates a stream configuration from the values set on a builder.
+         * 
+         * @param builder stream builder
+         * @throws ServletException configured values are not valid
+         */
+        Stream(Builder builder) throws ServletException
         {
             Logger lg = Logger.getLogger(getClass().getName());
 
-            if ((this.name = name) == null)
+            if ((this.name = builder.name) == null)
             {
                 lg.severe("Error in configuration, name not set.");
                 throw new ServletException("No name set for stream.");
             }
             
-            this.password = pass;
-            this.resettable = resettable;
-            this.ondemand = ondemand;
-            this.protect = protect;
+            this.password = builder.pass;
+            this.resettable = builder.resettable;
+            this.ondemand = builder.ondemand;
+            this.protect = builder.protect;
 
-            if (url == null)
+            if (builder.url == null)
             {
                 lg.severe("Error in configuration, source stream URL not set.");
                 throw new ServletException("No source stream URL set.");
@@ -354,39 +708,288 @@ public class StreamerConfig
             
             try 
             {
-                this.source = new URL(url);
+                this.source = new URL(builder.url);
             } 
             catch (MalformedURLException e) 
             {
-                lg.severe("Failed configuring stream "  + name + ", URL " + url + " is not valid.");
-                throw new ServletException("Invalid source URL " + url + " for " + name, e);
+                lg.severe("Failed configuring stream "  + builder.name + ", URL " + builder.url + " is not valid.");
+                throw new ServletException("Invalid source URL " + builder.url + " for " + builder.name, e);
+            }
+            
+            this.backups = Stream.parseURLs(builder.name, "backup", builder.backups);
+            this.hedges = Stream.parseURLs(builder.name, "hedge", builder.hedges);
+            
+            if (!builder.profiles.isEmpty() && !this.hedges.isEmpty())
+            {
+                lg.severe("Failed configuring stream " + builder.name + ", source profiles cannot be used with " +
+                        "hedged sources.");
+                throw new ServletException("Profiles and hedges configured for " + builder.name);
+            }
+            
+            List<Profile> sorted = new ArrayList<>(builder.profiles);
+            sorted.sort((Profile a, Profile b) -> a.width * a.height != b.width * b.height ? 
+                    Integer.compare(a.width * a.height, b.width * b.height) : Integer.compare(a.fps, b.fps));
+            this.profiles = Collections.unmodifiableList(sorted);
+
+            try
+            {
+                this.authType = AuthType.valueOf(builder.type);
+            }
+            catch (NullPointerException | IllegalArgumentException e)
+            {
+                lg.severe("Failed configuring stream " + builder.name + ", authentication type " + builder.type + 
+                        " is not supported.");
+                throw new ServletException("Invalid authentication " + builder.type + " for " + builder.name, e);
             }
 
+            this.authParams = Collections.unmodifiableMap(new HashMap<>(builder.auth));
+            
             try
             {
-                this.authType = AuthType.valueOf(type);
+                this.sourceType = SourceType.valueOf(builder.source);
             }
             catch (NullPointerException | IllegalArgumentException e)
             {
-                lg.severe("Failed configuring stream " + name + ", authentication type " + type + " is not supported.");
-                throw new ServletException("Invalid authentication " + type + " for " + name, e);
+                lg.severe("Failed configuring stream " + builder.name + ", source type " + builder.source + 
+                        " is not supported.");
+                throw new ServletException("Invalid source type " + builder.source + " for " + builder.name, e);
+            }
+            
+            this.formatParams = Collections.unmodifiableMap(new HashMap<>(builder.format));
+            
+            if (builder.jitterFrames < 0 || builder.jitterLatency < 0)
+            {
+                lg.severe("Failed configuring stream " + builder.name + ", de-jitter bounds must not be negative.");
+                throw new ServletException("Invalid de-jitter bounds for " + builder.name);
+            }
+            
+            this.jitterFrames = builder.jitterFrames;
+            this.jitterLatency = builder.jitterLatency;
+            
+            if (builder.readTimeout <= 0 || builder.retries < 0)
+            {
+                lg.severe("Failed configuring stream " + builder.name + ", read timeout must be positive and retries " +
+                        "must not be negative.");
+                throw new ServletException("Invalid read timeout or retries for " + builder.name);
+            }
+            
+            this.readTimeout = builder.readTimeout;
+            this.retries = builder.retries;
+            
+            if (builder.maxFps < 0)
+            {
+                lg.severe("Failed configuring stream " + builder.name + ", maximum frame rate must not be negative.");
+                throw new ServletException("Invalid maximum frame rate for " + builder.name);
+            }
+            
+            this.maxFps = builder.maxFps;
+            
+            if (builder.dedupeThreshold < 0 || builder.dedupeKeepalive <= 0)
+            {
+                lg.severe("Failed configuring stream " + builder.name + ", dedupe threshold must not be negative and " +
+                        "keepalive must be positive.");
+                throw new ServletException("Invalid dedupe threshold or keepalive for " + builder.name);
+            }
+            
+            this.dedupe = builder.dedupe;
+            this.dedupeThreshold = builder.dedupeThreshold;
+            this.dedupeKeepalive = builder.dedupeKeepalive;
+            
+            if (builder.linger < 0 || builder.prewarmLead < 0)
+            {
+                lg.severe("Failed configuring stream " + builder.name + ", linger and prewarm lead times must not " +
+                        "be negative.");
+                throw new ServletException("Invalid linger or prewarm lead for " + builder.name);
+            }
+            
+            this.linger = builder.linger;
+            this.prewarm = builder.prewarm;
+            this.prewarmLead = builder.prewarmLead;
+        }
+        
+        /**
+         * Parses a list of URLs.
+         * 
+         * @param name stream name
+         * @param type type of URL
+         * @param urls URLs to parse
+         * @return list of URLs
+         * @throws ServletException URL is not valid
+         */
+        private static List<URL> parseURLs(String name, String type, List<String> urls) throws ServletException
+        {
+            List<URL> parsed = new ArrayList<>(urls.size());
+            for (String url : urls)
+            {
+                try
+                {
+                    parsed.add(new URL(url));
+                }
+                catch (MalformedURLException e)
+                {
+                    Logger.getLogger(Stream.class.getName()).severe("Failed configuring stream "  + name + ", " + 
+                            type + " URL " + url + " is not valid.");
+                    throw new ServletException("Invalid " + type + " URL " + url + " for " + name, e);
+                }
             }
+            return Collections.unmodifiableList(parsed);
+        }
+        
+        /**
+         * Gets the source URL followed by the backup URLs.
+         * 
+         * @return list of source URLs in order of preference
+         */
+        public List<URL> getSources()
+        {
+            List<URL> sources = new ArrayList<>(this.backups.size() + 1);
+            sources.add(this.source);
+            sources.addAll(this.backups);
+            return sources;
+        }
+        
+        /**
+         * Checks whether another stream reads the same source in the same way,
+         * so both streams can share a single connection to the source. URLs 
+         * are compared by their text as URL equality resolves host names.
+         * 
+         * @param other other stream configuration
+         * @return true if the source is read the same way
+         */
+        public boolean isSameSource(Stream other)
+        {
+            return Stream.urlText(this.getSources()).equals(Stream.urlText(other.getSources())) &&
+                    Stream.urlText(this.hedges).equals(Stream.urlText(other.hedges)) &&
+                    this.profiles.equals(other.profiles) &&
+                    this.authType == other.authType && this.authParams.equals(other.authParams) &&
+                    this.sourceType == other.sourceType && this.formatParams.equals(other.formatParams) && 
+                    this.readTimeout == other.readTimeout && this.retries == other.retries && 
+                    this.maxFps == other.maxFps;
+        }
+        
+        /**
+         * Converts a list of URLs to their text.
+         * 
+         * @param urls URLs
+         * @return list of URL text
+         */
+        private static List<String> urlText(List<URL> urls)
+        {
+            List<String> text = new ArrayList<>(urls.size());
+            for (URL url : urls) text.add(url.toExternalForm());
+            return text;
+        }
 
-            this.authParams = Collections.unmodifiableMap(auth);
-            this.formatParams = Collections.unmodifiableMap(format);
+        /**
+         * Alternative profile of a source, such as a lower resolution or lower frame
+         * rate stream from the same camera.
+         */
+        public static class Profile
+        {
+            /** URL of the profile stream. */
+            public final URL url;
+            
+            /** Width of frames in pixels. */
+            public final int width;
+            
+            /** Height of frames in pixels. */
+            public final int height;
+            
+            /** Frames per second, or the source frame rate if not configured. */
+            public final int fps;
+            
+            Profile(String url, int width, int height, int fps) throws ServletException
+            {
+                Logger lg = Logger.getLogger(getClass().getName());
+                
+                if (url == null || width <= 0 || height <= 0 || fps < 0)
+                {
+                    lg.severe("Error in configuration, source profile must have a URL, width and height.");
+                    throw new ServletException("Invalid source profile " + url);
+                }
+                
+                try
+                {
+                    this.url = new URL(url);
+                }
+                catch (MalformedURLException e)
+                {
+                    lg.severe("Error in configuration, profile URL " + url + " is not valid.");
+                    throw new ServletException("Invalid profile URL " + url, e);
+                }
+                
+                this.width = width;
+                this.height = height;
+                this.fps = fps == 0 ? Integer.MAX_VALUE : fps;
+            }
+            
+            @Override
+            public boolean equals(Object obj)
+            {
+                if (!(obj instanceof Profile)) return false;
+                
+                Profile p = (Profile) obj;
+                return this.url.toExternalForm().equals(p.url.toExternalForm()) && 
+                        this.width == p.width && this.height == p.height && this.fps == p.fps;
+            }
+            
+            @Override
+            public int hashCode()
+            {
+                return this.url.toExternalForm().hashCode();
+            }
+            
+            @Override
+            public String toString()
+            {
+                return this.width + "x" + this.height + (this.fps == Integer.MAX_VALUE ? "" : "@" + this.fps);
+            }
         }
 
         static class Builder
         {
+            /** Default de-jitter buffer size if not configured. */
+            static final int DEFAULT_JITTER_FRAMES = 5;
+            
+            /** Default de-jitter latency bound in milliseconds if not configured. */
+            static final int DEFAULT_JITTER_LATENCY = 200;
+            
+            /** Default time in milliseconds after which a duplicate frame is published if not configured. */
+            static final int DEFAULT_DEDUPE_KEEPALIVE = 5000;
+            
+            /** Default time in milliseconds a source is prewarmed before viewers are expected if not configured. */
+            static final int DEFAULT_PREWARM_LEAD = 60000;
+            
+            /** Default read timeout in milliseconds if not configured. */
+            static final int DEFAULT_READ_TIMEOUT = 10000;
+            
+            /** Default number of consecutive failed connections before a stream is errored. */
+            static final int DEFAULT_RETRIES = 5;
+            
             private String name;
             private String url;
+            private List<String> backups = new ArrayList<>();
+            private List<String> hedges = new ArrayList<>();
+            private List<Profile> profiles = new ArrayList<>();
             private String pass;
             private String type = "NONE";      // Default source authentication is none 
             private Map<String, String> auth = new HashMap<>();
             private boolean protect = false;   // Default is not to protect streams
             private boolean ondemand = true;   // Default is on demand stream connection management
             private boolean resettable = true; // Default is resettable passwords
+            private String source = "MJPEG";   // Default source type is M-JPEG stream
             private Map<String, String> format = new HashMap<>();
+            private int jitterFrames = 0;      // Default is no de-jittering
+            private int jitterLatency = 0;
+            private int readTimeout = DEFAULT_READ_TIMEOUT;
+            private int retries = DEFAULT_RETRIES;
+            private int maxFps = 0;            // Default is no frame rate limit
+            private boolean dedupe = false;    // Default is no duplicate suppression
+            private int dedupeThreshold = 0;   // Default is only exact duplicates
+            private int dedupeKeepalive = DEFAULT_DEDUPE_KEEPALIVE;
+            private int linger = 0;            // Default is to stop reading as soon as the last viewer leaves
+            private boolean prewarm = false;   // Default is no predictive prewarming
+            private int prewarmLead = DEFAULT_PREWARM_LEAD;
 
             Builder setName(String name)
             {
@@ -400,6 +1003,42 @@ public class StreamerConfig
                 return this;
             }
             
+            Builder addBackupURL(String url)
+            {
+                this.backups.add(url);
+                return this;
+            }
+            
+            Builder addHedgeURL(String url)
+            {
+                this.hedges.add(url);
+                return this;
+            }
+            
+            Builder addProfile(Profile profile)
+            {
+                this.profiles.add(profile);
+                return this;
+            }
+            
+            Builder setReadTimeout(int timeout)
+            {
+                this.readTimeout = timeout;
+                return this;
+            }
+            
+            Builder setRetries(int retries)
+            {
+                this.retries = retries;
+                return this;
+            }
+            
+            Builder setMaxFps(int fps)
+            {
+                this.maxFps = fps;
+                return this;
+            }
+            
             Builder setProtected(boolean protect)
             {
                 this.protect = protect;
@@ -418,6 +1057,24 @@ public class StreamerConfig
                 return this;
             }
             
+            Builder setLinger(int linger)
+            {
+                this.linger = linger;
+                return this;
+            }
+            
+            Builder setPrewarm(boolean prewarm)
+            {
+                this.prewarm = prewarm;
+                return this;
+            }
+            
+            Builder setPrewarmLead(int lead)
+            {
+                this.prewarmLead = lead;
+                return this;
+            }
+            
             Builder setPassword(String password)
             {
                 this.pass = password;
@@ -436,15 +1093,58 @@ public class StreamerConfig
                 return this;
             }
             
+            Builder setSourceType(String type)
+            {
+                this.source = type;
+                return this;
+            }
+            
             Builder addFormatParam(String name, String val)
             {
                 this.format.put(name, val);
                 return this;
             }
 
+            Builder setDejitter(int frames, int latency)
+            {
+                this.jitterFrames = frames;
+                this.jitterLatency = latency;
+                return this;
+            }
+            
+            Builder setDejitterFrames(int frames)
+            {
+                this.jitterFrames = frames;
+                return this;
+            }
+            
+            Builder setDejitterLatency(int latency)
+            {
+                this.jitterLatency = latency;
+                return this;
+            }
+            
+            Builder setDedupe(boolean dedupe)
+            {
+                this.dedupe = dedupe;
+                return this;
+            }
+            
+            Builder setDedupeThreshold(int threshold)
+            {
+                this.dedupeThreshold = threshold;
+                return this;
+            }
+            
+            Builder setDedupeKeepalive(int keepalive)
+            {
+                this.dedupeKeepalive = keepalive;
+                return this;
+            }
+
             public Stream build() throws ServletException
             {
-                return new Stream(name, url, pass, protect, resettable, ondemand, type, auth, format); 
+                return new Stream(this);
             }
         }
     }
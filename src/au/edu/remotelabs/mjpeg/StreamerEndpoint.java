@@ -24,6 +24,7 @@ import javax.websocket.Session;
 import javax.websocket.server.ServerEndpoint;
 
 import au.edu.remotelabs.mjpeg.StreamerConfig.Stream;
+import au.edu.remotelabs.mjpeg.dest.AdmissionController;
 import au.edu.remotelabs.mjpeg.source.SourceStream;
 import au.edu.remotelabs.mjpeg.ws.WebSocketOutput;
 
@@ -41,6 +42,9 @@ public class StreamerEndpoint
     /** Currently open connections. */
     private final Map<String, WebSocketOutput> connections;
     
+    /** Admission tickets of open connections. */
+    private final Map<String, AdmissionController.Ticket> tickets;
+    
     /** Logger. */
     private final Logger logger;
     
@@ -49,6 +53,7 @@ public class StreamerEndpoint
         this.logger = Logger.getLogger(getClass().getName());
         this.holder = StreamerHolder.get();
         this.connections = new HashMap<>();
+        this.tickets = new HashMap<>();
     }
 
     @OnOpen
@@ -88,7 +93,19 @@ public class StreamerEndpoint
             this.logger.fine("Accepting web socket stream request for stream " + stream.name + 
                     ", session " + session.getId());
             
-            WebSocketOutput out = new WebSocketOutput(session, this.holder.getStream(stream.name));
+            /* Sessions that would exceed the processing or viewer budgets are rejected, 
+             * or are sent a cheaper rendition. */
+            AdmissionController.Ticket ticket = AdmissionController.get().admit(source, 
+                    WebSocketOutput.requestParams(session));
+            if (!ticket.isAdmitted())
+            {
+                session.close(new CloseReason(CloseCodes.TRY_AGAIN_LATER, 
+                        "Over capacity, retry after " + ticket.getRetryAfter() + "s"));
+                return;
+            }
+            this.tickets.put(session.getId(), ticket);
+            
+            WebSocketOutput out = new WebSocketOutput(session, source, ticket.getParams());
             out.setup();
             this.connections.put(session.getId(), out);
             
@@ -115,9 +132,49 @@ public class StreamerEndpoint
             if (out == null)
             {
                 session.close(new CloseReason(CloseCodes.UNEXPECTED_CONDITION, "Stream not found"));
+                return;
             }
             
-            if ("p".equals(message)) out.pullFrame();
+            /*
+             * Messages are:
+             *  p     - pull the next frame
+             *  c<N>  - grant credit to push the next N frames
+             *  t <q> - change transforms and frame rate to those in query string q
+             *  k     - send a keyframe next in delta mode
+             */
+            if ("p".equals(message))
+            {
+                out.pullFrame();
+            }
+            else if (message.length() > 1 && message.charAt(0) == 'c')
+            {
+                out.grant(Integer.parseInt(message.substring(1).trim()));
+            }
+            else if ("k".equals(message))
+            {
+                out.requestKeyframe();
+            }
+            else if (message.startsWith("t "))
+            {
+                AdmissionController.Ticket previous = this.tickets.get(session.getId());
+                AdmissionController.Ticket ticket = AdmissionController.get().readmit(previous, 
+                        out.getSource(), WebSocketOutput.parseParams(message.substring(2).trim()));
+                if (ticket.isAdmitted())
+                {
+                    this.tickets.put(session.getId(), ticket);
+                    out.update(ticket.getParams());
+                }
+                else
+                {
+                    /* The current rendition continues. */
+                    this.logger.fine("Rejected transform change for session " + session.getId() + 
+                            ", over capacity.");
+                }
+            }
+        }
+        catch (NumberFormatException e)
+        {
+            this.logger.fine("Ignoring malformed message for session " + session.getId() + ": " + message);
         }
         catch (IOException e)
         {
@@ -156,5 +213,6 @@ public class StreamerEndpoint
     {
         WebSocketOutput out = this.connections.remove(session.getId());
         if (out != null) out.close();
+        AdmissionController.get().release(this.tickets.remove(session.getId()));
     }
 }
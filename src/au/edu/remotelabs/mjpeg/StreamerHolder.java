@@ -7,7 +7,9 @@
 
 package au.edu.remotelabs.mjpeg;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.logging.Logger;
@@ -15,7 +17,10 @@ import java.util.logging.Logger;
 import javax.servlet.ServletException;
 
 import au.edu.remotelabs.mjpeg.StreamerConfig.Stream;
+import au.edu.remotelabs.mjpeg.dest.AdmissionController;
+import au.edu.remotelabs.mjpeg.dest.BandwidthGovernor;
 import au.edu.remotelabs.mjpeg.source.SourceStream;
+import au.edu.remotelabs.mjpeg.source.Upstream;
 
 /**
  * Holder for objects required to process stream requests with both HTTP
@@ -55,13 +60,39 @@ public class StreamerHolder
     {
         this.config = new StreamerConfig(configPath);
         
+        /* Streams reading the same source share a single upstream connection as 
+         * many cameras only support a few concurrent clients. */
+        List<Upstream> upstreams = new ArrayList<>();
         for (Stream stream : this.config.getStreams().values())
         {
             this.logger.fine("Loaded configuration for stream: " + stream.name);
-            this.streams.put(stream.name, new SourceStream(stream));
+            
+            Upstream upstream = null;
+            for (Upstream u : upstreams)
+            {
+                if (u.getConfig().isSameSource(stream)) upstream = u;
+            }
+            
+            if (upstream == null)
+            {
+                upstream = new Upstream(stream);
+                upstreams.add(upstream);
+            }
+            else
+            {
+                this.logger.info("Stream " + stream.name + " shares the source connection of stream " + 
+                        upstream.getConfig().name + '.');
+            }
+            
+            this.streams.put(stream.name, new SourceStream(stream, upstream));
         }
         
         this.authenticator = new Authenticator(this.config);
+        
+        BandwidthGovernor.get().configure(this.config.getGlobalBandwidth(), this.config.getStreamBandwidth(), 
+                this.config.getClientBandwidth());
+        AdmissionController.get().configure(this.config.getCpuBudget(), this.config.getViewerLimit(), 
+                this.config.getStreamViewerLimit());
     }
     
     /**
@@ -113,7 +144,7 @@ public class StreamerHolder
     {
         for (Entry<String, SourceStream> e : this.streams.entrySet())
         {
-            e.getValue().stop();
+            e.getValue().destroy();
         }
         
         this.streams.clear();
@@ -24,7 +24,10 @@ import javax.servlet.http.HttpServletResponse;
 import au.edu.remotelabs.mjpeg.StreamerConfig.Stream;
 import au.edu.remotelabs.mjpeg.dest.JpegOutput;
 import au.edu.remotelabs.mjpeg.dest.MJpegOutput;
+import au.edu.remotelabs.mjpeg.dest.AdmissionController;
 import au.edu.remotelabs.mjpeg.dest.BufferedMJpegOutput;
+import au.edu.remotelabs.mjpeg.dest.BurstOutput;
+import au.edu.remotelabs.mjpeg.dest.SseOutput;
 import au.edu.remotelabs.mjpeg.dest.StreamOutput;
 import au.edu.remotelabs.mjpeg.source.Frame;
 import au.edu.remotelabs.mjpeg.source.SourceStream;
@@ -83,7 +86,7 @@ public class StreamerServlet extends HttpServlet
         
         /*
          * URL format will be: 
-         *  <PATH>/<camera>.[jpeg|mjpg][?<options>]
+         *  <PATH>/<camera>.[jpeg|mjpg|bjpg|sse|burst|last][?<options>]
          */
         
         int s = url.indexOf('.');
@@ -119,46 +122,90 @@ public class StreamerServlet extends HttpServlet
         if (!("jpeg".equalsIgnoreCase(format) || 
               "mjpg".equalsIgnoreCase(format) ||
               "bjpg".equalsIgnoreCase(format) ||
+              "sse".equalsIgnoreCase(format) ||
+              "burst".equalsIgnoreCase(format) ||
               "last".equalsIgnoreCase(format)))
         {
             response.setStatus(HttpServletResponse.SC_NOT_FOUND);
             return;
         }
 
-        StreamOutput out;
-        switch (format)
+        Map<String, String> params = this.getParams(request);
+        if ("last".equals(format)) // Special output format where only the last frame acquired is returned
         {
-        case "jpeg":
-            out = new JpegOutput(response, this.getParams(request), source);
-            break;
+            int after = JpegOutput.getAfter(params);
             
-        case "mjpg":
-            out = new MJpegOutput(response, this.getParams(request), source);
-            break;
-            
-        case "bjpg":
-            out = new BufferedMJpegOutput(response, this.getParams(request), source);
-            break;
-            
-        case "last": // Special output format where only the last frame acquired is returned 
             Frame last = source.getLastFrame();
-            if (last != null)
+            if (after >= 0 && (last == null || last.getSequence() <= after))
+            {
+                /* Client already has the last frame, or no frame has been read yet, so 
+                 * wait for a newer frame. */
+                last = source.frameAfter(after, JpegOutput.getTimeout(params));
+                if (last == null) response.setStatus(HttpServletResponse.SC_NO_CONTENT);
+            }
+            
+            if (last != null && JpegOutput.writeFrameHeaders(request, response, last, source))
             {
-                response.setContentType(last.getContentType());
-                response.setContentLength(last.getContentLength());
                 last.writeTo(response.getOutputStream());
             }
             return;
-            
-        default:
-            /* Whatever format was requested was not understood, return bad request. */
-            response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+        }
+        
+        /* Requests that would exceed the processing or viewer budgets are rejected, or 
+         * are served a cheaper rendition. */
+        AdmissionController.Ticket ticket = AdmissionController.get().admit(source, params);
+        if (!ticket.isAdmitted())
+        {
+            response.setHeader("Retry-After", String.valueOf(ticket.getRetryAfter()));
+            response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
             return;
         }
         
-        /* Handle response. */
-        out.handle();
-        out.cleanup();
+        params = ticket.getParams();
+        if (!ticket.getRemoved().isEmpty())
+        {
+            response.setHeader("rendition-downgraded", String.join(",", ticket.getRemoved()));
+        }
+
+        try
+        {
+            StreamOutput out;
+            switch (format)
+            {
+            case "jpeg":
+                out = new JpegOutput(request, response, params, source);
+                break;
+                
+            case "mjpg":
+                out = new MJpegOutput(response, params, source);
+                break;
+                
+            case "bjpg":
+                out = new BufferedMJpegOutput(response, params, source);
+                break;
+                
+            case "sse":
+                out = new SseOutput(request, response, params, source);
+                break;
+                
+            case "burst":
+                out = new BurstOutput(response, params, source);
+                break;
+                
+            default:
+                /* Whatever format was requested was not understood, return bad request. */
+                response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+                return;
+            }
+            
+            /* Handle response. */
+            out.handle();
+            out.cleanup();
+        }
+        finally
+        {
+            AdmissionController.get().release(ticket);
+        }
     }
 
     @Override
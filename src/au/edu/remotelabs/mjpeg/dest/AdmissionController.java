@@ -0,0 +1,481 @@
+/**
+ * MJPEG streaming application.
+ *
+ * @author Michael Diponio <michael.diponio@uts.edu.au>
+ * @date 19th October 2026
+ */
+
+package au.edu.remotelabs.mjpeg.dest;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import au.edu.remotelabs.mjpeg.source.Frame;
+import au.edu.remotelabs.mjpeg.source.JpegInfo;
+import au.edu.remotelabs.mjpeg.source.SourceStream;
+
+/**
+ * Decides whether requests for streams may be served within the configured
+ * processing and viewer budgets. The processing cost of a request is estimated
+ * from the measured cost of each transform of its rendition and the frame rate
+ * of the source. Requests for a rendition that is already being generated cost
+ * nothing more to transform.
+ * <br />
+ * Requests that would exceed the processing budget are downgraded by removing
+ * their most expensive transforms until the rendition fits the budget, unless the
+ * request has the parameter 'downgrade=f'. The size and quality transforms are
+ * never removed. Requests that cannot be served are
+ * rejected and should be retried after the period given by the ticket.
+ * <br />
+ * The load is measured from the time spent transforming. Because a new rendition
+ * takes time to show in the measurement, its estimated cost is reserved for the
+ * measurement window after it is admitted. A budget of 0 is unlimited.
+ */
+public class AdmissionController
+{
+    /** Time constant of load measurements in nanoseconds. */
+    private static final double LOAD_WINDOW = 5e9;
+
+    /** Time in nanoseconds the cost of admitted renditions is reserved. */
+    private static final long RESERVATION = 10000000000L;
+
+    /** Seconds rejected clients should wait before retrying. */
+    public static final int RETRY_AFTER = 10;
+
+    /** Number of pixels assumed for streams whose frame size is not known. */
+    private static final int DEFAULT_PIXELS = 640 * 480;
+
+    /** Frame rate assumed for streams that have not been read. */
+    private static final double DEFAULT_RATE = 10;
+
+    /** Transforms that are never removed when downgrading, because removing them
+     *  sends larger frames that cost the client more than they save the server. */
+    private static final Set<String> KEPT_TRANSFORMS = new HashSet<>(Arrays.asList("size", "quality"));
+
+    /** Singleton instance. */
+    private static final AdmissionController controller = new AdmissionController();
+
+    /** Processing budget in nanoseconds of processing per second, 0 if unlimited. */
+    private double cpuBudget;
+
+    /** Maximum number of viewers, 0 if unlimited. */
+    private int viewerLimit;
+
+    /** Maximum number of viewers of each stream, 0 if unlimited. */
+    private int streamViewerLimit;
+
+    /** Exponentially decaying measurement of processing time per second. */
+    private double load;
+
+    /** Time the load was last updated. */
+    private long loadUpdated;
+
+    /** Costs of recently admitted renditions which may not yet be measured. */
+    private final List<Reservation> reservations;
+
+    /** Number of pixels of frames of each stream. */
+    private final Map<String, Integer> pixels;
+
+    /** Number of viewers of each stream. */
+    private final Map<String, Integer> viewers;
+
+    /** Total number of viewers. */
+    private int totalViewers;
+
+    /** Number of requests admitted. */
+    private long admitted;
+
+    /** Number of requests admitted with a cheaper rendition. */
+    private long downgraded;
+
+    /** Number of requests rejected. */
+    private long rejected;
+
+    private AdmissionController()
+    {
+        this.reservations = new ArrayList<>();
+        this.pixels = new HashMap<>();
+        this.viewers = new HashMap<>();
+        this.loadUpdated = System.nanoTime();
+    }
+
+    /**
+     * Configures the budgets.
+     *
+     * @param cpu percentage of processor capacity that may be used transforming
+     * @param viewers limit of all viewers
+     * @param streamViewers limit of viewers of each stream
+     */
+    public synchronized void configure(int cpu, int viewers, int streamViewers)
+    {
+        this.cpuBudget = cpu / 100.0 * Runtime.getRuntime().availableProcessors() * 1e9;
+        this.viewerLimit = viewers;
+        this.streamViewerLimit = streamViewers;
+    }
+
+    /**
+     * Decides whether a request may be served. Admitted requests must be released
+     * when the viewer disconnects.
+     *
+     * @param source source stream requested
+     * @param params request parameters
+     * @return ticket with the decision
+     */
+    public synchronized Ticket admit(SourceStream source, Map<String, String> params)
+    {
+        return this.decide(source, params, null);
+    }
+
+    /**
+     * Decides whether a viewer that is already admitted may change to another
+     * rendition of the same stream. If admitted, the new ticket replaces the
+     * previous ticket, otherwise the previous ticket remains valid.
+     *
+     * @param previous ticket of the current rendition
+     * @param source source stream
+     * @param params request parameters of the new rendition
+     * @return ticket with the decision
+     */
+    public synchronized Ticket readmit(Ticket previous, SourceStream source, Map<String, String> params)
+    {
+        return this.decide(source, params, previous);
+    }
+
+    /**
+     * Decides whether a request may be served.
+     *
+     * @param source source stream requested
+     * @param params request parameters
+     * @param previous ticket of a viewer changing rendition, null if a new viewer
+     * @return ticket with the decision
+     */
+    private Ticket decide(SourceStream source, Map<String, String> params, Ticket previous)
+    {
+        String name = source.getName();
+        int streamViewers = this.viewers.getOrDefault(name, 0);
+
+        if (previous == null && (this.viewerLimit > 0 && this.totalViewers >= this.viewerLimit ||
+            this.streamViewerLimit > 0 && streamViewers >= this.streamViewerLimit))
+        {
+            this.rejected++;
+            return new Ticket(name, null, Collections.emptyList());
+        }
+
+        Map<String, String> rendition = params;
+        List<String> removed = new ArrayList<>();
+
+        if (this.cpuBudget > 0)
+        {
+            long now = System.nanoTime();
+            double available = this.cpuBudget - this.getLoad(now);
+
+            /* Renditions that are not transformed cost nothing, so always fit. */
+            double cost;
+            while ((cost = this.marginalCost(source, rendition)) > 0 && cost > available)
+            {
+                if ("f".equals(params.get("downgrade")))
+                {
+                    this.rejected++;
+                    return new Ticket(name, null, Collections.emptyList());
+                }
+
+                /* Removing the most expensive transform first keeps as much of the
+                 * requested rendition as the budget allows. Size and quality are never
+                 * removed as they reduce the frames sent to the client, so if only they
+                 * remain the request is rejected. */
+                String expensive = null;
+                for (String p : rendition.keySet())
+                {
+                    if (FrameTransformer.isTransform(p) && !KEPT_TRANSFORMS.contains(p) &&
+                        (expensive == null || FrameTransformer.getCost(p) > FrameTransformer.getCost(expensive)))
+                    {
+                        expensive = p;
+                    }
+                }
+
+                if (expensive == null)
+                {
+                    this.rejected++;
+                    return new Ticket(name, null, Collections.emptyList());
+                }
+
+                rendition = new LinkedHashMap<>(rendition);
+                rendition.remove(expensive);
+                removed.add(expensive);
+            }
+
+            if (cost > 0) this.reservations.add(new Reservation(cost, now + RESERVATION));
+        }
+
+        if (removed.isEmpty())
+        {
+            this.admitted++;
+        }
+        else
+        {
+            this.downgraded++;
+        }
+
+        if (previous != null && previous.isAdmitted() && !previous.released)
+        {
+            /* Viewer is transferred to the new ticket. */
+            previous.released = true;
+        }
+        else
+        {
+            this.viewers.put(name, streamViewers + 1);
+            this.totalViewers++;
+        }
+        return new Ticket(name, rendition, removed);
+    }
+
+    /**
+     * Releases the viewer of an admitted request.
+     *
+     * @param ticket ticket of admitted request
+     */
+    public synchronized void release(Ticket ticket)
+    {
+        if (ticket == null || !ticket.isAdmitted() || ticket.released) return;
+        ticket.released = true;
+
+        int num = this.viewers.getOrDefault(ticket.stream, 0);
+        if (num > 1)
+        {
+            this.viewers.put(ticket.stream, num - 1);
+        }
+        else
+        {
+            this.viewers.remove(ticket.stream);
+        }
+        this.totalViewers--;
+    }
+
+    /**
+     * Estimates the processing time per second needed to serve a rendition in
+     * addition to the current load.
+     *
+     * @param source source stream
+     * @param params rendition parameters
+     * @return processing time in nanoseconds per second
+     */
+    private double marginalCost(SourceStream source, Map<String, String> params)
+    {
+        if (FrameTransformer.isRunning(source, params)) return 0;
+
+        /* Frames are only transformed as fast as the source and the client frame rate. */
+        double rate = source.getFrameInterval() > 0 ? 1e9 / source.getFrameInterval() : DEFAULT_RATE;
+        String fr = params.containsKey("fr") ? params.get("fr") : params.get("frame_rate");
+        if (fr != null)
+        {
+            try
+            {
+                double requested = Double.parseDouble(fr);
+                if (requested > 0) rate = Math.min(rate, requested);
+            }
+            catch (NumberFormatException e)
+            { }
+        }
+
+        /* Until the stream has been transformed, the frame size is read from the header of its last frame. */
+        Integer pixels = this.pixels.get(source.getName());
+        if (pixels == null)
+        {
+            Frame last = source.getLastFrame();
+            JpegInfo info = last == null ? null : last.getJpegInfo();
+            pixels = info != null ? info.getPixels() : DEFAULT_PIXELS;
+        }
+
+        return FrameTransformer.estimateCost(params, pixels) * rate;
+    }
+
+    /**
+     * Records the time taken to transform a frame.
+     *
+     * @param stream name of source stream
+     * @param pixels number of pixels of the source frame
+     * @param nanos time taken in nanoseconds
+     */
+    public synchronized void recordTransform(String stream, int pixels, long nanos)
+    {
+        long now = System.nanoTime();
+        this.load = this.decayedLoad(now) + nanos * 1e9 / LOAD_WINDOW;
+        this.loadUpdated = now;
+        this.pixels.put(stream, pixels);
+    }
+
+    /**
+     * Gets the measured load decayed to the current time.
+     *
+     * @param now current monotonic time
+     * @return processing time in nanoseconds per second
+     */
+    private double decayedLoad(long now)
+    {
+        return this.load * Math.exp(-(now - this.loadUpdated) / LOAD_WINDOW);
+    }
+
+    /**
+     * Gets the load including the reserved cost of recently admitted renditions.
+     *
+     * @param now current monotonic time
+     * @return processing time in nanoseconds per second
+     */
+    private double getLoad(long now)
+    {
+        double total = this.decayedLoad(now);
+
+        Iterator<Reservation> it = this.reservations.iterator();
+        while (it.hasNext())
+        {
+            Reservation r = it.next();
+            if (now - r.expiry > 0)
+            {
+                it.remove();
+            }
+            else
+            {
+                total += r.cost;
+            }
+        }
+
+        return total;
+    }
+
+    /**
+     * Gets the utilisation of the budgets and the measured transform costs.
+     * Processing load and budget are percentages of one processor, transform
+     * costs are in nanoseconds per pixel.
+     *
+     * @return map of metric name to value
+     */
+    public synchronized Map<String, Number> getStats()
+    {
+        long now = System.nanoTime();
+        Map<String, Number> stats = new LinkedHashMap<>();
+        stats.put("cpuBudget", Math.round(this.cpuBudget / 1e7));
+        stats.put("cpuLoad", Math.round(this.decayedLoad(now) / 1e7));
+        stats.put("cpuReserved", Math.round((this.getLoad(now) - this.decayedLoad(now)) / 1e7));
+        stats.put("viewerLimit", this.viewerLimit);
+        stats.put("streamViewerLimit", this.streamViewerLimit);
+        stats.put("viewers", this.totalViewers);
+        stats.put("admitted", this.admitted);
+        stats.put("downgraded", this.downgraded);
+        stats.put("rejected", this.rejected);
+
+        for (Entry<String, Integer> e : this.viewers.entrySet())
+        {
+            stats.put(e.getKey() + "Viewers", e.getValue());
+        }
+
+        for (Entry<String, Double> e : FrameTransformer.getCosts().entrySet())
+        {
+            stats.put(e.getKey() + "Cost", Math.round(e.getValue() * 100) / 100.0);
+        }
+
+        return stats;
+    }
+
+    /**
+     * Gets the admission controller.
+     *
+     * @return controller
+     */
+    public static AdmissionController get()
+    {
+        return controller;
+    }
+
+    /**
+     * Decision of whether a request is admitted.
+     */
+    public static class Ticket
+    {
+        /** Name of stream requested. */
+        private final String stream;
+
+        /** Parameters of admitted rendition, null if rejected. */
+        private final Map<String, String> params;
+
+        /** Transforms removed from the requested rendition. */
+        private final List<String> removed;
+
+        /** Whether the viewer has been released. */
+        private boolean released;
+
+        Ticket(String stream, Map<String, String> params, List<String> removed)
+        {
+            this.stream = stream;
+            this.params = params;
+            this.removed = Collections.unmodifiableList(removed);
+        }
+
+        /**
+         * Whether the request is admitted.
+         *
+         * @return true if admitted
+         */
+        public boolean isAdmitted()
+        {
+            return this.params != null;
+        }
+
+        /**
+         * Gets the parameters of the admitted rendition, which may have fewer
+         * transforms than requested.
+         *
+         * @return request parameters
+         */
+        public Map<String, String> getParams()
+        {
+            return this.params;
+        }
+
+        /**
+         * Gets the transforms removed from the requested rendition.
+         *
+         * @return parameter names of removed transforms, empty if not downgraded
+         */
+        public List<String> getRemoved()
+        {
+            return this.removed;
+        }
+
+        /**
+         * Gets the number of seconds before a rejected request should be retried.
+         *
+         * @return seconds
+         */
+        public int getRetryAfter()
+        {
+            return RETRY_AFTER;
+        }
+    }
+
+    /**
+     * Cost reserved for a recently admitted rendition.
+     */
+    private static class Reservation
+    {
+        /** Processing time in nanoseconds per second. */
+        final double cost;
+
+        /** Time the reservation expires. */
+        final long expiry;
+
+        Reservation(double cost, long expiry)
+        {
+            this.cost = cost;
+            this.expiry = expiry;
+        }
+    }
+}
@@ -0,0 +1,293 @@
+/**
+ * MJPEG streaming application.
+ *
+ * @author Michael Diponio <michael.diponio@uts.edu.au>
+ * @date 19th October 2026
+ */
+
+package au.edu.remotelabs.mjpeg.dest;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * Limits the rate frames are sent to clients with token buckets for each client,
+ * each stream and globally. Frames that would exceed a budget are dropped rather
+ * than delaying the write, so clients receive a lower frame rate instead of
+ * increasing latency.
+ * <br />
+ * Frames are dropped in order of priority. Essential frames, such as the first
+ * frame sent to a client, are always sent. Clients sending less than their fair
+ * share of the global budget may use all of it, but clients sending more than
+ * their fair share may only use the budget while it is more than half full,
+ * so a few clients of high resolution streams cannot starve the other clients.
+ * <br />
+ * Buckets may go into debt so frames larger than a bucket are still sent, with
+ * following frames dropped until the debt is repaid. A limit of 0 is unlimited.
+ */
+public class BandwidthGovernor
+{
+    /** Time constant of rate measurements in nanoseconds. */
+    private static final double RATE_WINDOW = 1e9;
+
+    /** Singleton instance. */
+    private static final BandwidthGovernor governor = new BandwidthGovernor();
+
+    /** Limit of each client in bytes per second. */
+    private long clientLimit;
+
+    /** Limit of each stream in bytes per second. */
+    private long streamLimit;
+
+    /** Global bucket. */
+    private Bucket global;
+
+    /** Stream buckets keyed by stream name. */
+    private final Map<String, Bucket> streams;
+
+    /** Number of clients currently open. */
+    private int clients;
+
+    /** Number of frames admitted. */
+    private long admitted;
+
+    /** Number of frames dropped. */
+    private long dropped;
+
+    private BandwidthGovernor()
+    {
+        this.streams = new HashMap<>();
+        this.global = new Bucket(0);
+    }
+
+    /**
+     * Configures the limits.
+     *
+     * @param global global limit in kilobits per second
+     * @param stream limit of each stream in kilobits per second
+     * @param client limit of each client in kilobits per second
+     */
+    public synchronized void configure(int global, int stream, int client)
+    {
+        this.global = new Bucket(global * 125L);
+        this.streamLimit = stream * 125L;
+        this.clientLimit = client * 125L;
+        this.streams.clear();
+    }
+
+    /**
+     * Opens a client receiving frames.
+     *
+     * @return client
+     */
+    public synchronized Client open()
+    {
+        this.clients++;
+        return new Client(new Bucket(this.clientLimit));
+    }
+
+    /**
+     * Closes a client.
+     *
+     * @param client client that is no longer receiving frames
+     */
+    public synchronized void close(Client client)
+    {
+        this.clients--;
+    }
+
+    /**
+     * Decides whether a frame may be sent to a client and if so charges the
+     * frame to the client, stream and global budgets.
+     *
+     * @param client client frame is for
+     * @param stream stream frame is from
+     * @param bytes size of frame
+     * @param essential whether the frame must be sent
+     * @return true if the frame may be sent
+     */
+    public synchronized boolean admit(Client client, String stream, int bytes, boolean essential)
+    {
+        long now = System.nanoTime();
+        Bucket sb = this.streamBucket(stream);
+
+        if (!essential)
+        {
+            if (!client.bucket.available(now, 0) || !sb.available(now, 0))
+            {
+                this.dropped++;
+                return false;
+            }
+
+            /* Clients using more than their fair share may not drain the global budget. */
+            boolean fair = this.global.limit == 0 || this.clients == 0 ||
+                    client.bucket.rate.get(now) <= (double) this.global.limit / this.clients;
+            if (!this.global.available(now, fair ? 0 : this.global.limit / 2))
+            {
+                this.dropped++;
+                return false;
+            }
+        }
+
+        client.bucket.charge(now, bytes);
+        sb.charge(now, bytes);
+        this.global.charge(now, bytes);
+        this.admitted++;
+        return true;
+    }
+
+    /**
+     * Gets the bucket of a stream, creating it if needed.
+     *
+     * @param stream stream name
+     * @return bucket
+     */
+    private Bucket streamBucket(String stream)
+    {
+        Bucket b = this.streams.get(stream);
+        if (b == null) this.streams.put(stream, b = new Bucket(this.streamLimit));
+        return b;
+    }
+
+    /**
+     * Gets the utilisation of the budgets. Limits and rates are in kilobits per
+     * second.
+     *
+     * @return map of metric name to value
+     */
+    public synchronized Map<String, Number> getStats()
+    {
+        long now = System.nanoTime();
+        Map<String, Number> stats = new LinkedHashMap<>();
+        stats.put("globalLimit", this.global.limit / 125);
+        stats.put("globalRate", Math.round(this.global.rate.get(now) / 125));
+        stats.put("streamLimit", this.streamLimit / 125);
+        stats.put("clientLimit", this.clientLimit / 125);
+        stats.put("clients", this.clients);
+        stats.put("admitted", this.admitted);
+        stats.put("dropped", this.dropped);
+
+        for (Entry<String, Bucket> e : this.streams.entrySet())
+        {
+            stats.put(e.getKey() + "Rate", Math.round(e.getValue().rate.get(now) / 125));
+        }
+
+        return stats;
+    }
+
+    /**
+     * Gets the bandwidth governor.
+     *
+     * @return governor
+     */
+    public static BandwidthGovernor get()
+    {
+        return governor;
+    }
+
+    /**
+     * Client receiving frames.
+     */
+    public static class Client
+    {
+        /** Client bucket. */
+        private final Bucket bucket;
+
+        Client(Bucket bucket)
+        {
+            this.bucket = bucket;
+        }
+    }
+
+    /**
+     * Token bucket holding up to a second of tokens.
+     */
+    private static class Bucket
+    {
+        /** Rate tokens are added in bytes per second, 0 if unlimited. */
+        final long limit;
+
+        /** Tokens in bytes, may be negative if in debt. */
+        double tokens;
+
+        /** Time tokens were last added. */
+        long updated;
+
+        /** Rate tokens are used. */
+        final Rate rate;
+
+        Bucket(long limit)
+        {
+            this.limit = limit;
+            this.tokens = limit;
+            this.updated = System.nanoTime();
+            this.rate = new Rate();
+        }
+
+        /**
+         * Checks whether more than the reserve tokens are available.
+         *
+         * @param now current monotonic time
+         * @param reserve tokens that must remain
+         * @return true if available
+         */
+        boolean available(long now, long reserve)
+        {
+            if (this.limit == 0) return true;
+
+            this.tokens = Math.min(this.limit, this.tokens + (now - this.updated) * this.limit / 1e9);
+            this.updated = now;
+            return this.tokens > reserve;
+        }
+
+        /**
+         * Uses tokens.
+         *
+         * @param now current monotonic time
+         * @param bytes number of tokens used
+         */
+        void charge(long now, int bytes)
+        {
+            this.available(now, 0);
+            this.tokens -= bytes;
+            this.rate.add(now, bytes);
+        }
+    }
+
+    /**
+     * Exponentially decaying measurement of a byte rate.
+     */
+    private static class Rate
+    {
+        /** Rate in bytes per second. */
+        double rate;
+
+        /** Time the rate was last updated. */
+        long updated = System.nanoTime();
+
+        /**
+         * Adds bytes sent.
+         *
+         * @param now current monotonic time
+         * @param bytes number of bytes
+         */
+        void add(long now, int bytes)
+        {
+            this.rate = this.get(now) + bytes * 1e9 / RATE_WINDOW;
+            this.updated = now;
+        }
+
+        /**
+         * Gets the current rate.
+         *
+         * @param now current monotonic time
+         * @return bytes per second
+         */
+        double get(long now)
+        {
+            return this.rate * Math.exp(-(now - this.updated) / RATE_WINDOW);
+        }
+    }
+}
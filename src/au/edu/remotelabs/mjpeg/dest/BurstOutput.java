@@ -0,0 +1,167 @@
+/**
+ * MJPEG streaming application.
+ *
+ * @author Michael Diponio <michael.diponio@uts.edu.au>
+ * @date 19th October 2026
+ */
+
+package au.edu.remotelabs.mjpeg.dest;
+
+import java.io.IOException;
+import java.util.Map;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletResponse;
+
+import au.edu.remotelabs.mjpeg.source.Frame;
+import au.edu.remotelabs.mjpeg.source.SourceStream;
+
+/**
+ * Stream output format that returns a fixed number of frames read after the
+ * request in a single multipart/mixed response. Each part has the frame
+ * sequence number and timestamp headers so the timing between frames can be
+ * measured.
+ * <br />
+ * Takes the parameter 'n', the number of frames returned, and 'step', which
+ * returns every step-th frame up to the number of frames retained by the 
+ * source. Frames are consecutive unless the source drops frames or the 
+ * response falls further behind than the frames retained by the source, in 
+ * which case the sequence numbers show the frames skipped. If no frame
+ * is read within 'timeout' milliseconds, the response ends early.
+ */
+public class BurstOutput extends StreamOutput
+{
+    /** Boundary delimiting each frame. */
+    public static final String BOUNDARY = "mjpeg-streamer-burst";
+
+    /** Default number of frames returned. */
+    public static final int DEFAULT_FRAMES = 10;
+
+    /** Maximum number of frames that may be returned. */
+    public static final int MAX_FRAMES = 300;
+
+    /** Number of frames to return. */
+    private final int frames;
+
+    /** Number of source frames between returned frames. */
+    private final int step;
+
+    /** Time in milliseconds to wait for each frame. */
+    private final long timeout;
+
+    /** Sequence number of the next frame to return. */
+    private int next;
+
+    /** Number of frames returned. */
+    private int sent;
+
+    public BurstOutput(HttpServletResponse resp, Map<String, String> params, SourceStream source)
+    {
+        super(resp, params, source);
+
+        this.frames = Math.max(1, Math.min(BurstOutput.getInt(params, "n", DEFAULT_FRAMES), MAX_FRAMES));
+
+        /* A step longer than the retained frames could not return consecutive steps. */
+        this.step = Math.max(1, Math.min(BurstOutput.getInt(params, "step", 1), SourceStream.HISTORY));
+        this.timeout = JpegOutput.getTimeout(params);
+
+        /* Frames are those read after the request. */
+        Frame latest = source.getLastFrame();
+        this.next = latest == null ? 0 : latest.getSequence() + 1;
+    }
+
+    @Override
+    protected void writeHeaders() throws ServletException, IOException
+    {
+        this.response.setContentType("multipart/mixed;boundary=" + BOUNDARY);
+        this.response.setHeader("Cache-Control", "no-store");
+    }
+
+    @Override
+    protected Frame acquireFrame()
+    {
+        Frame frame = this.source.frameFollowing(this.next - 1, this.timeout);
+        if (frame == null)
+        {
+            /* Source is not delivering frames, end the response with the frames already sent. */
+            try
+            {
+                this.finish();
+            }
+            catch (IOException e)
+            { }
+            return null;
+        }
+
+        this.next = frame.getSequence() + this.step;
+        return frame;
+    }
+
+    @Override
+    protected boolean willWrite(Frame frame)
+    {
+        return true;
+    }
+
+    @Override
+    protected boolean isEssential(Frame frame)
+    {
+        /* Dropping frames would break the requested sequence, a burst is bounded so is always sent. */
+        return true;
+    }
+
+    @Override
+    protected boolean writeFrame(Frame frame) throws ServletException, IOException
+    {
+        this.writeln("--", BOUNDARY);
+        this.writeln("Content-Type: ", frame.getContentType());
+        this.writeln("Content-Length: ", frame.getContentLength());
+        this.writeln("frame-sequence: ", frame.getSequence());
+        this.writeln("frame-timestamp: ", frame.getTimestamp());
+        this.writeln();
+        frame.writeTo(this.output);
+        this.writeln();
+
+        if (++this.sent < this.frames) return true;
+
+        this.finish();
+        return false;
+    }
+
+    /**
+     * Writes the closing boundary.
+     *
+     * @throws IOException error writing
+     */
+    private void finish() throws IOException
+    {
+        this.writeln("--", BOUNDARY, "--");
+        this.output.flush();
+    }
+
+    /**
+     * Gets an integer parameter.
+     *
+     * @param params request parameters
+     * @param name parameter name
+     * @param def default value if not specified or not valid
+     * @return parameter value
+     */
+    private static int getInt(Map<String, String> params, String name, int def)
+    {
+        try
+        {
+            return params.containsKey(name) ? Integer.parseInt(params.get(name)) : def;
+        }
+        catch (NumberFormatException e)
+        {
+            return def;
+        }
+    }
+
+    @Override
+    public String getSuffix()
+    {
+        return "burst";
+    }
+}
@@ -48,17 +48,20 @@ public class CropOp implements TransformOp
     @Override
     public BufferedImage apply(BufferedImage image, Frame frame) throws IOException
     {
-        if (this.offsetX + this.width > image.getWidth())
+        /* The region is clipped to each image without changing the configured region 
+         * as the source size may change. */
+        int wid = this.width, hei = this.height;
+        if (this.offsetX + wid > image.getWidth())
         {
-            this.width = image.getWidth() - this.offsetX;
+            wid = image.getWidth() - this.offsetX;
         }
         
-        if (this.offsetY + this.height > image.getHeight())
+        if (this.offsetY + hei > image.getHeight())
         {
-            this.height = image.getHeight() - this.offsetY;
+            hei = image.getHeight() - this.offsetY;
         }
         
-        return image.getSubimage(this.offsetX, this.offsetY, this.width, this.height);
+        return image.getSubimage(this.offsetX, this.offsetY, wid, hei);
     }
 
 }
@@ -0,0 +1,251 @@
+/**
+ * MJPEG streaming application.
+ *
+ * @author Michael Diponio <michael.diponio@uts.edu.au>
+ * @date 19th October 2026
+ */
+
+package au.edu.remotelabs.mjpeg.dest;
+
+import au.edu.remotelabs.mjpeg.source.Frame;
+import au.edu.remotelabs.mjpeg.source.SourceStream;
+
+/**
+ * Paces frames to a target frame rate. Each output has an ideal emission time
+ * for each of its frames, spaced exactly by the frame period from the first frame
+ * sent. The pacer sleeps on the shared timing wheel until the ideal time and then
+ * selects the source frame which was, or is expected to be, read closest to that
+ * time. Fractional rates are supported, for example 0.2 frames a second sends a
+ * frame every 5 seconds.
+ */
+public class FramePacer
+{
+    /** Source stream frames are selected from. */
+    private final SourceStream source;
+
+    /** Target frame rate in frames per second. */
+    private final double rate;
+
+    /** Timing wheel to wait for emission times on. */
+    private final TimingWheel wheel;
+
+    /** Monotonic time of the first ideal emission time. */
+    private long origin;
+
+    /** Number of frame periods since origin of the next emission. */
+    private long count;
+
+    /** Sequence number of the last frame selected. */
+    private int sequence;
+
+    /** Whether the ideal emission time has been reached. */
+    private boolean due;
+
+    /** Interval in nanoseconds to wait for a frame before checking the source is still reading. */
+    private static final long POLL = 1000000000L;
+
+    public FramePacer(SourceStream source, double rate)
+    {
+        this(source, rate, TimingWheel.get());
+    }
+
+    public FramePacer(SourceStream source, double rate, TimingWheel wheel)
+    {
+        this.source = source;
+        this.rate = rate;
+        this.wheel = wheel;
+        this.sequence = -1;
+    }
+
+    /**
+     * Blocks until the next ideal emission time and then returns the frame
+     * closest to that time. If the source has stopped or errored, or the
+     * thread is interrupted, null is returned.
+     *
+     * @return next frame or null if source not available
+     */
+    public Frame nextFrame()
+    {
+        if (this.sequence < 0)
+        {
+            /* First frame is sent as soon as it is available and sets the phase of
+             * the following emission times. */
+            Frame frame = this.awaitFrame(-1);
+            if (frame == null) return null;
+
+            this.origin = frame.getArrivalTime();
+            this.count = 1;
+            this.sequence = frame.getSequence();
+            return frame;
+        }
+
+        long ideal = this.idealTime();
+        long now = System.nanoTime();
+        if (now < ideal)
+        {
+            this.sleepUntil(ideal);
+        }
+        else if (now - ideal > this.period())
+        {
+            /* We have fallen more than a frame behind, probably because the client
+             * is slow to read. Skip the missed emission times rather than bursting
+             * to catch up. */
+            this.count = (long)Math.ceil((now - this.origin) * this.rate / 1e9);
+            ideal = this.idealTime();
+            this.sleepUntil(ideal);
+        }
+
+        Frame frame = this.select(ideal);
+        if (frame == null) return null;
+
+        this.count++;
+        this.sequence = frame.getSequence();
+        return frame;
+    }
+
+    /**
+     * Gets the time until the next ideal emission time.
+     *
+     * @return time in nanoseconds, 0 if the next frame is due now
+     */
+    public synchronized long getDelay()
+    {
+        return this.sequence < 0 ? 0 : Math.max(this.idealTime() - System.nanoTime(), 0);
+    }
+
+    /**
+     * Decides whether a frame should be sent, for outputs which are notified 
+     * of frames as they are read rather than waiting for frames. A frame is sent
+     * if it is the first frame read within half a frame interval of the ideal 
+     * emission time, so it is the frame closest to the ideal time.
+     *
+     * @param frame frame that has been read
+     * @return true if the frame should be sent
+     */
+    public synchronized boolean admit(Frame frame)
+    {
+        if (this.sequence < 0)
+        {
+            this.origin = frame.getArrivalTime();
+            this.count = 1;
+            this.sequence = frame.getSequence();
+            return true;
+        }
+
+        long ideal = this.idealTime();
+        if (frame.getArrivalTime() < ideal - this.source.getFrameInterval() / 2) return false;
+
+        /* Skip any emission times that have been missed entirely. */
+        this.count = Math.max(this.count + 1, (long)Math.ceil((frame.getArrivalTime() - this.origin) * this.rate / 1e9));
+        this.sequence = frame.getSequence();
+        return true;
+    }
+
+    /**
+     * Selects the frame closest to the ideal emission time. The latest frame
+     * is used if it was read within half a frame interval of the ideal time,
+     * otherwise the next frame is expected to be closer so is waited on.
+     *
+     * @param ideal ideal emission time
+     * @return selected frame or null if source not available
+     */
+    private Frame select(long ideal)
+    {
+        Frame latest = this.source.getLastFrame();
+        long interval = this.source.getFrameInterval();
+
+        if (latest == null || latest.getSequence() <= this.sequence)
+        {
+            /* Already sent latest frame so the next frame is the closest. */
+            return this.awaitFrame(this.sequence);
+        }
+
+        if (interval == 0 || ideal - latest.getArrivalTime() <= interval / 2) return latest;
+
+        /* The next frame is expected closer to the ideal time, but if it is late
+         * fall back to the latest frame. */
+        long wait = latest.getArrivalTime() + interval * 2 - System.nanoTime();
+        Frame next = wait > 0 ? this.source.frameAfter(latest.getSequence(), Math.max(wait / 1000000, 1)) : null;
+        return next != null ? next : latest;
+    }
+
+    /**
+     * Waits for a frame newer than the specified sequence number.
+     *
+     * @param after sequence number frame must be newer than
+     * @return frame or null if source not available or interrupted
+     */
+    private Frame awaitFrame(int after)
+    {
+        Frame frame;
+        while ((frame = this.source.frameAfter(after, POLL / 1000000)) == null)
+        {
+            /* Waiting for frames returns at once while interrupted, so interrupts end waiting. */
+            if (this.source.isErrored() || !this.source.isReading() || 
+                    Thread.currentThread().isInterrupted()) return null;
+        }
+        return frame;
+    }
+
+    /**
+     * Sleeps on the timing wheel until the deadline.
+     *
+     * @param deadline monotonic time to sleep until
+     */
+    private void sleepUntil(long deadline)
+    {
+        synchronized (this)
+        {
+            this.due = false;
+            TimingWheel.Timeout timeout = this.wheel.schedule(deadline, () -> {
+                synchronized (this)
+                {
+                    this.due = true;
+                    this.notifyAll();
+                }
+            });
+
+            try
+            {
+                while (!this.due) this.wait();
+            }
+            catch (InterruptedException e)
+            {
+                timeout.cancel();
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Gets the ideal emission time of the next frame.
+     *
+     * @return monotonic time in nanoseconds
+     */
+    private long idealTime()
+    {
+        /* Computed from the origin rather than accumulated so rounding errors
+         * do not drift the rate. */
+        return this.origin + Math.round(this.count * 1e9 / this.rate);
+    }
+
+    /**
+     * Gets the frame period.
+     *
+     * @return period in nanoseconds
+     */
+    private long period()
+    {
+        return Math.round(1e9 / this.rate);
+    }
+
+    /**
+     * Gets the target frame rate.
+     *
+     * @return frames per second
+     */
+    public double getRate()
+    {
+        return this.rate;
+    }
+}
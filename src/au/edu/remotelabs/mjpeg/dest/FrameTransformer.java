@@ -16,6 +16,8 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Logger;
 
 import javax.imageio.IIOImage;
@@ -24,6 +26,7 @@ import javax.imageio.ImageWriteParam;
 import javax.imageio.ImageWriter;
 import javax.imageio.stream.MemoryCacheImageOutputStream;
 
+import au.edu.remotelabs.mjpeg.source.Demand;
 import au.edu.remotelabs.mjpeg.source.Frame;
 import au.edu.remotelabs.mjpeg.source.SourceStream;
 
@@ -44,15 +47,49 @@ public class FrameTransformer
         TRANSFORMS.put("frameSeq",    SequenceOp.class);
     }
     
+    /** Name of the decode step in cost measurements. */
+    public static final String DECODE = "decode";
+    
+    /** Name of the encode step in cost measurements. */
+    public static final String ENCODE = "encode";
+    
+    /** Weight of each new sample in the cost averages. */
+    private static final double COST_WEIGHT = 0.1;
+    
+    /** Average cost of each step in nanoseconds per pixel, initially rough estimates until
+     *  the steps have been measured on this machine. */
+    private static final Map<String, Double> COSTS = new ConcurrentHashMap<>();
+    static {
+        COSTS.put(DECODE,        15.0);
+        COSTS.put(ENCODE,        20.0);
+        COSTS.put("debarrel",    60.0);
+        COSTS.put("perspective", 60.0);
+        COSTS.put("rotate",      10.0);
+        COSTS.put("size",        10.0);
+        COSTS.put("crop",         1.0);
+        COSTS.put("quality",      0.0);
+        COSTS.put("timestamp",    2.0);
+        COSTS.put("frameSeq",     2.0);
+    }
+    
+    /** Identifier of this transformer which is unique within the application. */
+    private final int id;
+    
     /** Name of source stream that is being transformed. */
     private final String name;
     
     /** Params list. */
     private final Map<String, String> params;
     
+    /** Key which identifies the stream and transform chain. */
+    private final String key;
+    
     /** Operations list. */
     private final List<TransformOp> ops;
     
+    /** Parameter names of operations, in the same order as the operations list. */
+    private final List<String> opNames;
+    
     /** Encode quality of transformed frame. */
     private float encodeQuality;
     
@@ -65,8 +102,12 @@ public class FrameTransformer
     /** Frame transformer instances. */
     private static Map<FrameTransformer, Integer> instances = new HashMap<>();
     
+    /** Identifier of the next transformer created. */
+    private static int nextId = 1;
+    
     private FrameTransformer(String name, Map<String, String> request)
     {
+        this.id = nextId++;
         this.name = name;
         
         /* Default encode quality is source quality. */
@@ -74,6 +115,7 @@ public class FrameTransformer
         
         List<TransformOp> opsList = new ArrayList<>();
         Map<String, String> paramMap = new HashMap<>();
+        StringBuilder chain = new StringBuilder(name);
         
         for (Entry<String, String> p : request.entrySet())
         {
@@ -89,6 +131,7 @@ public class FrameTransformer
                     /* Store the params parameter to allow transformer instances to
                      * be reused across identical params. */
                     paramMap.put(p.getKey(), p.getValue());
+                    chain.append(paramMap.size() == 1 ? '?' : '&').append(p.getKey()).append('=').append(p.getValue());
                 }
                 catch (InstantiationException | IllegalAccessException e)
                 {
@@ -114,8 +157,19 @@ public class FrameTransformer
             }
         }
         
+        List<String> names = new ArrayList<>(opsList.size());
+        for (TransformOp op : opsList)
+        {
+            for (Entry<String, Class<? extends TransformOp>> t : TRANSFORMS.entrySet())
+            {
+                if (t.getValue().equals(op.getClass())) names.add(t.getKey());
+            }
+        }
+        
         this.ops = Collections.unmodifiableList(opsList);
+        this.opNames = Collections.unmodifiableList(names);
         this.params = Collections.unmodifiableMap(paramMap);
+        this.key = chain.toString();
     }
     
     /**
@@ -135,7 +189,35 @@ public class FrameTransformer
      * @return transformed frame
      * @throws IOException error transforming
      */
-    public synchronized Frame transform(Frame frame) throws IOException
+    public Frame transform(Frame frame) throws IOException
+    {
+        return this.transform(frame, false);
+    }
+    
+    /**
+     * Apply all transforms to a frame requested as a snapshot. Snapshot clients
+     * typically get a new transformer each request, so the transformed frame is
+     * shared with other snapshot requests through the snapshot cache. Streamed
+     * renditions keep their transformer so do not use the cache.
+     * 
+     * @param frame frame to transform
+     * @return transformed frame
+     * @throws IOException error transforming
+     */
+    public Frame transformSnapshot(Frame frame) throws IOException
+    {
+        return this.transform(frame, true);
+    }
+    
+    /**
+     * Apply all transforms.
+     * 
+     * @param frame frame to transform
+     * @param snapshot whether to use the snapshot cache
+     * @return transformed frame
+     * @throws IOException error transforming
+     */
+    private synchronized Frame transform(Frame frame, boolean snapshot) throws IOException
     {
         /* If nothing to do no need to decode source. */
         if (!this.isTransforming()) return frame;
@@ -147,15 +229,54 @@ public class FrameTransformer
             return this.cachedFrame;
         }
         
-        BufferedImage image = frame.decodeImage();
-        
-        for (TransformOp op : this.ops)
+        /* Another transformer instance may have recently transformed the frame. */
+        Frame transformed = snapshot ? SnapshotCache.get(this.key, frame.getSequence()) : null;
+        if (transformed == null)
         {
-            image = op.apply(image, frame);
+            /* Each step is timed so the cost of requests can be estimated for admission control. */
+            long start = System.nanoTime();
+            BufferedImage image = frame.decodeImage();
+            int sourcePixels = image.getWidth() * image.getHeight();
+            long time = FrameTransformer.measure(DECODE, start, sourcePixels);
+            
+            for (int i = 0; i < this.ops.size(); i++)
+            {
+                int pixels = image.getWidth() * image.getHeight();
+                image = this.ops.get(i).apply(image, frame);
+                time = FrameTransformer.measure(this.opNames.get(i), time, pixels);
+            }
+            
+            transformed = this.encode(frame, image);
+            time = FrameTransformer.measure(ENCODE, time, image.getWidth() * image.getHeight());
+            if (snapshot) SnapshotCache.put(this.key, transformed);
+            
+            AdmissionController.get().recordTransform(this.name, sourcePixels, time - start);
         }
         
         this.timestamp = frame.getTimestamp();
-        return this.cachedFrame = this.encode(frame, image);
+        return this.cachedFrame = transformed;
+    }
+    
+    /**
+     * Gets the identifier of this transformer, which identifies the rendition 
+     * of the stream it generates.
+     * 
+     * @return transformer identifier
+     */
+    public int getId()
+    {
+        return this.id;
+    }
+    
+    /**
+     * Gets the key which identifies the stream and transform chain of this 
+     * transformer.
+     * 
+     * @return transform key
+     */
+    public String getKey()
+    {
+        return this.key;
     }
     
     /**
@@ -191,7 +312,148 @@ public class FrameTransformer
         writer.setOutput(new MemoryCacheImageOutputStream(out));
         writer.write(null, new IIOImage(image, null, null), param);
 
-        return new Frame("image/jpeg", out.toByteArray(), orig.getSequence());
+        return new Frame(orig, "image/jpeg", out.toByteArray());
+    }
+    
+    /**
+     * Records the time taken by a step in the cost average of the step.
+     * 
+     * @param step name of step
+     * @param start time the step started
+     * @param pixels number of pixels the step processed
+     * @return time the step finished
+     */
+    private static long measure(String step, long start, int pixels)
+    {
+        long end = System.nanoTime();
+        if (pixels > 0)
+        {
+            double sample = (double)(end - start) / pixels;
+            COSTS.merge(step, sample, (avg, s) -> avg + COST_WEIGHT * (s - avg));
+        }
+        return end;
+    }
+    
+    /**
+     * Estimates the time needed to transform a frame with the transforms of 
+     * the request parameters, using the measured costs of each step. Frames 
+     * that are not transformed have no cost.
+     * 
+     * @param params request parameters
+     * @param pixels number of pixels of source frames
+     * @return estimated time in nanoseconds
+     */
+    public static double estimateCost(Map<String, String> params, int pixels)
+    {
+        if (!FrameTransformer.isTransforming(params)) return 0;
+        
+        double cost = 0;
+        for (String p : params.keySet())
+        {
+            if (TRANSFORMS.containsKey(p)) cost += COSTS.getOrDefault(p, 0.0);
+        }
+        
+        /* Sizes change through the transform chain but the source size is a close
+         * enough bound for the comparatively expensive steps. */
+        return (cost + COSTS.get(DECODE) + COSTS.get(ENCODE)) * pixels;
+    }
+    
+    /**
+     * Gets the measured cost of a step.
+     * 
+     * @param step transform parameter name, or decode or encode
+     * @return cost in nanoseconds per pixel
+     */
+    public static double getCost(String step)
+    {
+        return COSTS.getOrDefault(step, 0.0);
+    }
+    
+    /**
+     * Gets the measured costs of all steps.
+     * 
+     * @return map of step name to cost in nanoseconds per pixel
+     */
+    public static Map<String, Double> getCosts()
+    {
+        return new TreeMap<>(COSTS);
+    }
+    
+    /**
+     * Gets the frame size and rate a request needs from its source. Requests
+     * that are not resized need the full source size, as do requests with
+     * transforms whose parameters are in source pixel coordinates.
+     * 
+     * @param params request parameters
+     * @return source demand
+     */
+    public static Demand demand(Map<String, String> params)
+    {
+        int rate = Integer.MAX_VALUE;
+        String fr = params.containsKey("fr") ? params.get("fr") : params.get("frame_rate");
+        if (fr != null)
+        {
+            try
+            {
+                double requested = Double.parseDouble(fr);
+                if (requested > 0) rate = (int) Math.ceil(requested);
+            }
+            catch (NumberFormatException e)
+            { }
+        }
+        
+        ResizeOp resize = new ResizeOp();
+        if (params.containsKey("crop") || params.containsKey("perspective") || 
+            !params.containsKey("size") || !resize.configure(params.get("size")))
+        {
+            return new Demand(Integer.MAX_VALUE, Integer.MAX_VALUE, rate);
+        }
+        
+        return new Demand(resize.getWidth(), resize.getHeight(), rate);
+    }
+    
+    /**
+     * Checks whether request parameters specify any transforms.
+     * 
+     * @param params request parameters
+     * @return true if transforming
+     */
+    public static boolean isTransforming(Map<String, String> params)
+    {
+        for (String p : params.keySet())
+        {
+            if (TRANSFORMS.containsKey(p)) return true;
+        }
+        return false;
+    }
+    
+    /**
+     * Checks whether a request parameter specifies a transform.
+     * 
+     * @param param parameter name
+     * @return true if a transform
+     */
+    public static boolean isTransform(String param)
+    {
+        return TRANSFORMS.containsKey(param);
+    }
+    
+    /**
+     * Checks whether a transformer generating the rendition of the request is 
+     * already running, in which case another client of the rendition costs no
+     * more to transform.
+     * 
+     * @param source source stream
+     * @param params request parameters
+     * @return true if running
+     */
+    public static synchronized boolean isRunning(SourceStream source, Map<String, String> params)
+    {
+        for (FrameTransformer tr : instances.keySet())
+        {
+            if (tr.match(source.getName(), params)) return true;
+        }
+        return false;
     }
     
     /**
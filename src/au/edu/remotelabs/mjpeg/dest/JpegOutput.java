@@ -10,6 +10,7 @@ package au.edu.remotelabs.mjpeg.dest;
 import java.io.IOException;
 import java.util.Map;
 
+import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import au.edu.remotelabs.mjpeg.source.Frame;
@@ -17,13 +18,40 @@ import au.edu.remotelabs.mjpeg.source.SourceStream;
 
 /**
  * Stream output format that returns a single JPEG frame. 
+ * <br />
+ * Takes the parameter 'after', which specifies a frame sequence number the 
+ * returned frame must be newer than. If such a frame has already been read
+ * it is returned immediately, otherwise the request waits up to 'timeout' 
+ * milliseconds for one to be read.
+ * <br />
+ * Responses include cache validators so a conditional request for a frame the
+ * client already has returns 304 Not Modified.
  */
 public class JpegOutput extends StreamOutput
 {
+    /** Default time in milliseconds to wait for a frame newer than requested. */
+    public static final long DEFAULT_TIMEOUT = 10000;
+    
+    /** Maximum time in milliseconds a request may wait for a newer frame. */
+    public static final long MAX_TIMEOUT = 60000;
+    
+    /** Sequence number the returned frame must be newer than or -1 to return the next frame. */
+    private final int after;
+    
+    /** Time in milliseconds to wait for a newer frame. */
+    private final long timeout;
+    
+    /** Request for frame. */
+    private final HttpServletRequest request;
 
-    public JpegOutput(HttpServletResponse resp, Map<String, String> params, SourceStream source)
+    public JpegOutput(HttpServletRequest req, HttpServletResponse resp, Map<String, String> params, 
+            SourceStream source)
     {
         super(resp, params, source);
+        
+        this.request = req;        
+        this.after = JpegOutput.getAfter(params);
+        this.timeout = JpegOutput.getTimeout(params);
     }
     
     @Override 
@@ -31,13 +59,35 @@ public class JpegOutput extends StreamOutput
     {
         /* Content type and length headers will be set once frame is received. */
     }
+    
+    @Override
+    protected Frame acquireFrame()
+    {
+        if (this.after < 0) return this.source.nextFrame();
+        
+        Frame frame = this.source.frameAfter(this.after, this.timeout);
+        if (frame == null)
+        {
+            /* No newer frame was read in time, the client should poll again. */
+            this.response.setStatus(HttpServletResponse.SC_NO_CONTENT);
+        }
+        return frame;
+    }
+
+    @Override
+    protected boolean isSnapshot()
+    {
+        /* Polling clients share transforms of the same frame. */
+        return true;
+    }
 
     @Override
     public boolean writeFrame(Frame frame) throws IOException
     {
-        response.setContentType(frame.getContentType());
-        response.setContentLength(frame.getContentLength());
-        frame.writeTo(this.output);
+        if (JpegOutput.writeFrameHeaders(this.request, this.response, frame, this.source))
+        {
+            frame.writeTo(this.output);
+        }
         
         /* In a JPEG request we are only returning a single frame. */
         return false;
@@ -56,5 +106,128 @@ public class JpegOutput extends StreamOutput
         return "jpeg";
     }
 
+    /**
+     * Writes the response headers describing a single frame response. The frame
+     * sequence number and read time are included so clients can request the 
+     * following frame. Cache validators are added and if the request is 
+     * conditional on a frame the client already has, the response status is set
+     * to 304 Not Modified.
+     * 
+     * @param request request for frame
+     * @param response response to frame request
+     * @param frame frame being returned
+     * @param source source of frame
+     * @return true if the frame should be written, false if not modified
+     */
+    public static boolean writeFrameHeaders(HttpServletRequest request, HttpServletResponse response, 
+            Frame frame, SourceStream source)
+    {
+        String etag = "\"" + frame.getSequence() + '-' + Long.toHexString(frame.getTimestamp()) + '"';
+        
+        response.setHeader("ETag", etag);
+        response.setDateHeader("Last-Modified", frame.getTimestamp());
+        response.setHeader("frame-sequence", String.valueOf(frame.getSequence()));
+        response.setHeader("frame-timestamp", String.valueOf(frame.getTimestamp()));
+        
+        /* The frame is fresh until the next frame is expected to be read. Max age only
+         * has a resolution of seconds, so if frames are read more than once a second, or 
+         * the rate is not yet known, caches must revalidate with the ETag each request. */
+        long maxAge = source.getFrameInterval() / 1000000000L;
+        response.setHeader("Cache-Control", (source.isProtected() ? "private" : "public") + 
+                (maxAge > 0 ? ", max-age=" + maxAge : ", no-cache"));
+        
+        String match = request.getHeader("If-None-Match");
+        if (match != null ? JpegOutput.matchesETag(match, etag) : 
+                JpegOutput.getModifiedSince(request) / 1000 > frame.getTimestamp() / 1000)
+        {
+            /* Client already has this frame. */
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return false;
+        }
+        
+        response.setContentType(frame.getContentType());
+        response.setContentLength(frame.getContentLength());
+        return true;
+    }
     
+    /**
+     * Checks whether an If-None-Match header matches an entity tag. The header
+     * is a comma separated list of entity tags, or '*' to match any. Tags are
+     * compared exactly, except a weak tag ('W/' prefix) matches the same strong
+     * tag as the comparison is weak.
+     * 
+     * @param header If-None-Match header value
+     * @param etag entity tag of the frame
+     * @return true if the client has the frame
+     */
+    static boolean matchesETag(String header, String etag)
+    {
+        for (String tag : header.split(","))
+        {
+            tag = tag.trim();
+            if (tag.equals("*")) return true;
+            if (tag.startsWith("W/")) tag = tag.substring(2);
+            if (tag.equals(etag)) return true;
+        }
+        return false;
+    }
+    
+    /**
+     * Gets the time of the If-Modified-Since header. Last modified only has a 
+     * resolution of seconds and there are usually many frames a second, so it 
+     * only matches frames strictly older than the client's frame.
+     * 
+     * @param request request for frame
+     * @return time in milliseconds since the epoch, or -1 if not specified or malformed
+     */
+    private static long getModifiedSince(HttpServletRequest request)
+    {
+        try
+        {
+            return request.getDateHeader("If-Modified-Since");
+        }
+        catch (IllegalArgumentException e)
+        {
+            /* A malformed date is ignored so the frame is returned. */
+            return -1;
+        }
+    }
+    
+    /**
+     * Gets the sequence number requested frames must be newer than.
+     * 
+     * @param params request parameters
+     * @return sequence number or -1 if not specified or not valid
+     */
+    public static int getAfter(Map<String, String> params)
+    {
+        try
+        {
+            return params.containsKey("after") ? Math.max(-1, Integer.parseInt(params.get("after"))) : -1;
+        }
+        catch (NumberFormatException e)
+        {
+            return -1;
+        }
+    }
+    
+    /**
+     * Gets the time to wait for a frame newer than requested.
+     * 
+     * @param params request parameters
+     * @return timeout in milliseconds, the default if not specified or not valid
+     */
+    public static long getTimeout(Map<String, String> params)
+    {
+        long timeout;
+        try
+        {
+            timeout = params.containsKey("timeout") ? Long.parseLong(params.get("timeout")) : DEFAULT_TIMEOUT;
+        }
+        catch (NumberFormatException e)
+        {
+            timeout = DEFAULT_TIMEOUT;
+        }
+        return Math.max(0, Math.min(timeout, MAX_TIMEOUT));
+    }
 }
@@ -24,11 +24,8 @@ public class MJpegOutput extends StreamOutput
     /** Boundary this application uses to delimit each frame. */
     public static String BOUNDARY = "mjpeg-streamer";
     
-    /** Delay in milliseconds between frames to maintain target frame rate. */
-    protected final int delay;
-    
-    /** Timestamp when a frame was last sent. */
-    protected long sent;
+    /** Pacer to maintain target frame rate, null if every frame is sent. */
+    protected final FramePacer pacer;
     
     /** Whether to send sequence number. */
     protected final boolean sendSequence;
@@ -40,22 +37,16 @@ public class MJpegOutput extends StreamOutput
     {
         super(resp, params, source);
         
-        int rate = 0;
-        if (params.containsKey("fr")) rate = Integer.parseInt(params.get("fr"));
-        if (params.containsKey("frame_rate")) rate = Integer.parseInt(params.get("frame_rate"));
+        double rate = 0;
+        if (params.containsKey("fr")) rate = Double.parseDouble(params.get("fr"));
+        if (params.containsKey("frame_rate")) rate = Double.parseDouble(params.get("frame_rate"));
         
         /* Sequence specifies a number for each frame starting at 0. */
         this.sendSequence = params.containsKey("sequence") || params.containsKey("seq");
         
-        if (rate > 0)
-        {
-            /* No frame rate has been specified so every frame will be 
-             * returned as it read from the source. */
-            rate = 1000 / rate;
-        }
-        
-        this.delay = rate;
-        this.sent = System.currentTimeMillis();
+        /* If no frame rate has been specified every frame will be 
+         * returned as it read from the source. */
+        this.pacer = rate > 0 ? new FramePacer(source, rate) : null;
     }
 
     @Override
@@ -64,13 +55,18 @@ public class MJpegOutput extends StreamOutput
         this.response.setContentType("multipart/x-mixed-replace;boundary=" + BOUNDARY);
     }
     
+    @Override
+    protected Frame acquireFrame()
+    {
+        /* If acquisition is faster than target frame rate, the pacer selects
+         * which frames are sent. */
+        return this.pacer != null ? this.pacer.nextFrame() : this.source.nextFrame();
+    }
+    
     @Override
     protected boolean willWrite(Frame frame)
     {
-        /* If acquisition is faster than target framerate, drop frames. */
-        if (this.sent + this.delay > System.currentTimeMillis()) return false;
         if (this.sequenceOffset < 0) this.sequenceOffset = frame.getSequence();
-        this.sent = System.currentTimeMillis();
         return true;
     }
     
@@ -32,6 +32,18 @@ public class ResizeOp implements TransformOp
 
     /** The transform configured to scale image by desired scaling factor. */
     private AffineTransform transform;
+    
+    /** Width of output image. */
+    private int outWidth;
+    
+    /** Height of output image. */
+    private int outHeight;
+    
+    /** Width of the source image the transform was configured for. */
+    private int sourceWidth;
+    
+    /** Height of the source image the transform was configured for. */
+    private int sourceHeight;
 
     @Override
     public boolean configure(String param)
@@ -67,9 +79,14 @@ public class ResizeOp implements TransformOp
     @Override
     public BufferedImage apply(BufferedImage image, Frame frame) throws IOException
     {
-        if (this.transform == null)
+        /* The source size may change such as when the source profile is switched. */
+        if (this.transform == null || image.getWidth() != this.sourceWidth || image.getHeight() != this.sourceHeight)
         {
             this.transform = new AffineTransform();
+            this.sourceWidth = image.getWidth();
+            this.sourceHeight = image.getHeight();
+            this.outWidth = this.width;
+            this.outHeight = this.height;
             
             double wid = this.width, hei = this.height;
             if (this.preserveAspect)
@@ -80,8 +97,8 @@ public class ResizeOp implements TransformOp
                 double scale = wid / image.getWidth() < hei / image.getHeight() ?
                         wid / image.getWidth() : hei / image.getHeight();
                 this.transform.setToScale(scale, scale);
-                this.width = (int)Math.floor(image.getWidth() * scale);
-                this.height= (int)Math.floor(image.getHeight() * scale); 
+                this.outWidth = (int)Math.floor(image.getWidth() * scale);
+                this.outHeight = (int)Math.floor(image.getHeight() * scale); 
             }
             else
             {
@@ -89,7 +106,7 @@ public class ResizeOp implements TransformOp
             }
         }
         
-        BufferedImage sizedImage = new BufferedImage(this.width, this.height, image.getType());
+        BufferedImage sizedImage = new BufferedImage(this.outWidth, this.outHeight, image.getType());
         Graphics2D canvas = sizedImage.createGraphics();
         canvas.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
         canvas.drawImage(image, this.transform, null);
@@ -97,5 +114,25 @@ public class ResizeOp implements TransformOp
         
         return sizedImage;
     }
+    
+    /**
+     * Gets the configured width of output images.
+     * 
+     * @return width in pixels
+     */
+    public int getWidth()
+    {
+        return this.width;
+    }
+    
+    /**
+     * Gets the configured height of output images.
+     * 
+     * @return height in pixels
+     */
+    public int getHeight()
+    {
+        return this.height;
+    }
 
 }
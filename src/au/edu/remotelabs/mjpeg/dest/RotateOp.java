@@ -36,6 +36,12 @@ public class RotateOp implements TransformOp
     /** Transform to rotate image. */
     private AffineTransform transform;
     
+    /** Width of the source image the transform was configured for. */
+    private int sourceWidth;
+    
+    /** Height of the source image the transform was configured for. */
+    private int sourceHeight;
+    
     @Override
     public boolean configure(String param)
     {
@@ -64,8 +70,11 @@ public class RotateOp implements TransformOp
     @Override
     public BufferedImage apply(BufferedImage image, Frame frame) throws IOException
     {
-        if (this.transform == null)
+        /* The source size may change such as when the source profile is switched. */
+        if (this.transform == null || image.getWidth() != this.sourceWidth || image.getHeight() != this.sourceHeight)
         {
+            this.sourceWidth = image.getWidth();
+            this.sourceHeight = image.getHeight();
             
             if (this.clip)
             {
@@ -0,0 +1,107 @@
+/**
+ * MJPEG streaming application.
+ *
+ * @author Michael Diponio <michael.diponio@uts.edu.au>
+ * @date 19th October 2026
+ */
+
+package au.edu.remotelabs.mjpeg.dest;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import au.edu.remotelabs.mjpeg.source.Frame;
+
+/**
+ * Micro-cache of recently transformed frames keyed by stream, transform chain
+ * and frame sequence. Transformer instances are released when no request is
+ * using them, so clients that poll for snapshots typically get a new transformer
+ * each request. This cache allows those requests to reuse the result of the
+ * previous transform of the same frame.
+ */
+public class SnapshotCache
+{
+    /** Maximum number of frames cached. */
+    private static final int MAX_ENTRIES = 64;
+
+    /** Maximum time in nanoseconds a frame is cached. */
+    private static final long MAX_AGE = 5000000000L;
+
+    /** Cached frames in access order. */
+    private static final Map<String, Entry> cache = new LinkedHashMap<>(MAX_ENTRIES, 0.75f, true);
+
+    /**
+     * Gets a cached transformed frame.
+     *
+     * @param key transform chain key
+     * @param sequence source frame sequence
+     * @return transformed frame or null if not cached
+     */
+    public static Frame get(String key, int sequence)
+    {
+        synchronized (cache)
+        {
+            Entry e = cache.get(key + '#' + sequence);
+            if (e == null) return null;
+
+            if (System.nanoTime() - e.cached > MAX_AGE)
+            {
+                cache.remove(key + '#' + sequence);
+                return null;
+            }
+
+            return e.frame;
+        }
+    }
+
+    /**
+     * Adds a transformed frame to the cache.
+     *
+     * @param key transform chain key
+     * @param frame transformed frame
+     */
+    public static void put(String key, Frame frame)
+    {
+        synchronized (cache)
+        {
+            cache.put(key + '#' + frame.getSequence(), new Entry(frame));
+
+            /* Evict the least recently used frames and any that have expired. */
+            long now = System.nanoTime();
+            Iterator<Entry> it = cache.values().iterator();
+            int size = cache.size();
+            while (it.hasNext())
+            {
+                Entry e = it.next();
+                if (size > MAX_ENTRIES || now - e.cached > MAX_AGE)
+                {
+                    it.remove();
+                    size--;
+                }
+                else
+                {
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Cached frame.
+     */
+    private static class Entry
+    {
+        /** Transformed frame. */
+        final Frame frame;
+
+        /** Monotonic time frame was cached. */
+        final long cached;
+
+        Entry(Frame frame)
+        {
+            this.frame = frame;
+            this.cached = System.nanoTime();
+        }
+    }
+}
@@ -0,0 +1,186 @@
+/**
+ * MJPEG streaming application.
+ *
+ * @author Michael Diponio <michael.diponio@uts.edu.au>
+ * @date 19th October 2026
+ */
+
+package au.edu.remotelabs.mjpeg.dest;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import au.edu.remotelabs.mjpeg.source.Frame;
+import au.edu.remotelabs.mjpeg.source.SourceStream;
+
+/**
+ * Stream output format providing frames as Server-Sent Events. Each frame is
+ * a 'frame' event with the frame data URL as its data and an identifier of the
+ * frame sequence number and timestamp. When the client reconnects with the
+ * identifier of the last event it received, the output resumes from the frame
+ * following it if it is retained by the source. Comment lines are sent while
+ * waiting for frames so idle connections are not closed by proxies.
+ * <br />
+ * Frame rate and transforms are the same as the M-Jpeg format.
+ */
+public class SseOutput extends MJpegOutput
+{
+    /** Interval between heartbeats in milliseconds if no frames are sent. */
+    public static final long HEARTBEAT = 15000;
+
+    /** Time in milliseconds the client should wait before reconnecting. */
+    private static final int RETRY = 1000;
+
+    /** Sequence number of the last frame sent or resumed from, -1 if none. */
+    private int last;
+
+    /** Whether frames are being resent from the resumed position. */
+    private boolean resuming;
+
+    public SseOutput(HttpServletRequest req, HttpServletResponse resp, Map<String, String> params, SourceStream source)
+    {
+        super(resp, params, source);
+
+        /* Browsers send the header on reconnect, polyfills commonly use a parameter. */
+        String id = req.getHeader("Last-Event-ID");
+        if (id == null) id = params.get("lastEventId");
+
+        this.last = SseOutput.parseId(id);
+        this.resuming = this.last >= 0;
+    }
+
+    @Override
+    protected void writeHeaders() throws ServletException, IOException
+    {
+        this.response.setContentType("text/event-stream");
+        this.response.setHeader("Cache-Control", "no-cache");
+
+        /* Disables response buffering in nginx reverse proxies. */
+        this.response.setHeader("X-Accel-Buffering", "no");
+
+        this.writeln("retry: ", RETRY);
+        this.writeln();
+        this.output.flush();
+    }
+
+    @Override
+    protected Frame acquireFrame()
+    {
+        try
+        {
+            if (this.resuming)
+            {
+                /* Retained frames following the last received frame are sent in order until
+                 * the latest frame is reached. When paced, only the nearest frame is sent. */
+                Frame frame = this.awaitFrame(true);
+                if (frame != null)
+                {
+                    this.resuming = this.pacer == null && frame != this.source.getLastFrame();
+                }
+                return frame;
+            }
+
+            if (this.pacer == null) return this.awaitFrame(false);
+
+            long delay;
+            while ((delay = this.pacer.getDelay() / 1000000) > HEARTBEAT)
+            {
+                /* Low frame rates may not send a frame before idle connections are closed. */
+                Thread.sleep(HEARTBEAT);
+                this.heartbeat();
+            }
+            return this.pacer.nextFrame();
+        }
+        catch (IOException | InterruptedException e)
+        {
+            /* Client has disconnected. */
+            return null;
+        }
+    }
+
+    /**
+     * Waits for the next frame, sending heartbeats while waiting.
+     *
+     * @param following whether the frame following the last sent is returned
+     *        rather than the latest frame
+     * @return frame or null if source not available
+     * @throws IOException error sending heartbeat
+     */
+    private Frame awaitFrame(boolean following) throws IOException
+    {
+        Frame frame;
+        while ((frame = following ? this.source.frameFollowing(this.last, HEARTBEAT) :
+                this.source.frameAfter(this.last, HEARTBEAT)) == null)
+        {
+            if (this.source.isErrored() || !this.source.isReading()) return null;
+            this.heartbeat();
+        }
+        return frame;
+    }
+
+    @Override
+    protected boolean willWrite(Frame frame)
+    {
+        this.last = frame.getSequence();
+        return super.willWrite(frame);
+    }
+
+    @Override
+    public boolean writeFrame(Frame frame) throws IOException
+    {
+        this.writeln("id: ", frame.getSequence(), '-', frame.getTimestamp());
+        this.writeln("event: frame");
+
+        /* Data URL is ASCII, shared with other outputs sending data URLs. */
+        this.output.write("data: ".getBytes(StandardCharsets.US_ASCII));
+        this.output.write(frame.getDataUrl());
+        this.writeln();
+        this.writeln();
+        this.output.flush();
+        return true;
+    }
+
+    /**
+     * Sends a comment so the connection does not appear idle.
+     *
+     * @throws IOException error sending
+     */
+    private void heartbeat() throws IOException
+    {
+        this.writeln(": heartbeat");
+        this.writeln();
+        this.output.flush();
+    }
+
+    /**
+     * Parses the frame sequence number from an event identifier.
+     *
+     * @param id event identifier of the form sequence-timestamp
+     * @return sequence number or -1 if not valid
+     */
+    private static int parseId(String id)
+    {
+        if (id == null) return -1;
+
+        try
+        {
+            int d = id.indexOf('-');
+            return Integer.parseInt((d > 0 ? id.substring(0, d) : id).trim());
+        }
+        catch (NumberFormatException e)
+        {
+            return -1;
+        }
+    }
+
+    @Override
+    public String getSuffix()
+    {
+        return "sse";
+    }
+}
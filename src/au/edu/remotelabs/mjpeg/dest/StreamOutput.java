@@ -43,6 +43,9 @@ public abstract class StreamOutput
     /** Whether to stop the output. */
     private boolean stop;
     
+    /** Whether no frame has been written yet. */
+    private boolean first;
+    
     /** Logger. */
     protected final Logger logger;
     
@@ -56,6 +59,7 @@ public abstract class StreamOutput
         this.source = source;
         
         this.transformer = FrameTransformer.get(this.source, this.requestParams);
+        this.first = true;
     }
     
     /**
@@ -63,9 +67,12 @@ public abstract class StreamOutput
      */
     public void handle()
     {
+        BandwidthGovernor governor = BandwidthGovernor.get();
+        BandwidthGovernor.Client client = governor.open();
+        
         try
         {
-            if (!this.source.register(this)) return;
+            if (!this.source.register(this, FrameTransformer.demand(this.requestParams))) return;
             
             this.response.addHeader("Server", "MJpeg-Streamer/1.0; UTS");
             this.response.setCharacterEncoding("UTF-8");
@@ -82,15 +89,26 @@ public abstract class StreamOutput
             {
                 /* Acquire and stream loop which may be terminated if an
                  * error occurs reading source stream. */
-                if ((frame = this.source.nextFrame()) == null) return;
+                if ((frame = this.acquireFrame()) == null) return;
                 
                 /* Output will drop this frame so short continue acquisition. */
                 if (!this.willWrite(frame)) continue;
                 
                 /* There may be transforms on frame such as size or quality. 
                  * If they are common we transform frame here. */
-                if (this.transformer.isTransforming()) frame = transformer.transform(frame);
+                if (this.transformer.isTransforming())
+                {
+                    frame = this.isSnapshot() ? this.transformer.transformSnapshot(frame) : 
+                            this.transformer.transform(frame);
+                }
+                
+                /* Frames over the bandwidth budget are dropped rather than delaying the write. */
+                if (!governor.admit(client, this.source.getName(), frame.getContentLength(), this.isEssential(frame))) 
+                {
+                    continue;
+                }
                 
+                this.first = false;
                 cont = this.writeFrame(frame);
             }
             while (cont && !this.stop);
@@ -109,8 +127,34 @@ public abstract class StreamOutput
         finally
         {
             this.source.unregister(this);
+            governor.close(client);
         }
     }
+    
+    /**
+     * Checks whether the output returns a single snapshot frame, so its
+     * transformed frames are shared with other snapshot requests through the
+     * snapshot cache. By default outputs stream frames so do not.
+     * 
+     * @return true if a snapshot output
+     */
+    protected boolean isSnapshot()
+    {
+        return false;
+    }
+
+    /**
+     * Checks whether a frame must be written even if it exceeds the bandwidth
+     * budget. By default only the first frame is essential so the client always
+     * receives an image.
+     * 
+     * @param frame frame to write
+     * @return true if the frame must be written
+     */
+    protected boolean isEssential(Frame frame)
+    {
+        return this.first;
+    }
 
     /**
      * Writes response headers required for the returned response to be 
@@ -121,6 +165,16 @@ public abstract class StreamOutput
      */
     protected abstract void writeHeaders() throws ServletException, IOException;
     
+    /**
+     * Blocks until the next frame that may be written is available. 
+     * 
+     * @return frame or null if the source is no longer available
+     */
+    protected Frame acquireFrame()
+    {
+        return this.source.nextFrame();
+    }
+    
     /** 
      * Checks whether will write to the output or discard the frame.
      * 
@@ -0,0 +1,247 @@
+/**
+ * MJPEG streaming application.
+ *
+ * @author Michael Diponio <michael.diponio@uts.edu.au>
+ * @date 19th October 2026
+ */
+
+package au.edu.remotelabs.mjpeg.dest;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Logger;
+
+/**
+ * Hashed timing wheel which runs scheduled tasks on a single shared thread.
+ * Deadlines are measured with the monotonic clock ({@link System#nanoTime()})
+ * so wall clock adjustments do not affect scheduling. Tasks should be short
+ * as they run on the wheel thread, typically they just wake another thread.
+ */
+public class TimingWheel implements Runnable
+{
+    /** Duration of a tick in nanoseconds. */
+    private final long tick;
+
+    /** Wheel slots, each containing the timeouts that hash to the slot. */
+    private final List<List<Timeout>> wheel;
+
+    /** Timeouts added since the last tick which are yet to be placed in the wheel. */
+    private final Queue<Timeout> pending;
+
+    /** Monotonic time the wheel was started. */
+    private final long origin;
+
+    /** Number of ticks processed since the wheel was started. */
+    private long ticks;
+
+    /** Number of timeouts that are scheduled. */
+    private int scheduled;
+
+    /** Thread which advances the wheel. */
+    private Thread thread;
+
+    /** Logger. */
+    private final Logger logger;
+
+    /** Instance shared by all outputs. */
+    private static final TimingWheel shared = new TimingWheel(1000000, 512);
+
+    /**
+     * Creates a timing wheel.
+     *
+     * @param tick duration of a tick in nanoseconds
+     * @param slots number of slots in the wheel
+     */
+    public TimingWheel(long tick, int slots)
+    {
+        this.logger = Logger.getLogger(getClass().getName());
+
+        this.tick = tick;
+        this.wheel = new ArrayList<>(slots);
+        for (int i = 0; i < slots; i++) this.wheel.add(new ArrayList<>());
+
+        this.pending = new ConcurrentLinkedQueue<>();
+        this.origin = System.nanoTime();
+    }
+
+    /**
+     * Schedules a task to be run when the deadline has passed.
+     *
+     * @param deadline monotonic time in nanoseconds to run task
+     * @param task task to run
+     * @return timeout handle which may be used to cancel the task
+     */
+    public Timeout schedule(long deadline, Runnable task)
+    {
+        Timeout timeout = new Timeout(deadline, task);
+        this.pending.add(timeout);
+
+        synchronized (this)
+        {
+            this.scheduled++;
+
+            if (this.thread == null || !this.thread.isAlive())
+            {
+                this.thread = new Thread(this);
+                this.thread.setName("Timing wheel");
+                this.thread.setDaemon(true);
+                this.thread.start();
+            }
+            else if (this.scheduled == 1)
+            {
+                /* Wheel thread is idle, waiting for something to do. */
+                this.notifyAll();
+            }
+        }
+
+        return timeout;
+    }
+
+    @Override
+    public void run()
+    {
+        while (!Thread.interrupted())
+        {
+            synchronized (this)
+            {
+                try
+                {
+                    if (this.scheduled == 0)
+                    {
+                        while (this.scheduled == 0) this.wait();
+
+                        /* The wheel is empty while idle, so rather than walking every tick
+                         * missed while idle the wheel jumps to the current tick. */
+                        this.ticks = (System.nanoTime() - this.origin) / this.tick;
+                    }
+                }
+                catch (InterruptedException e)
+                {
+                    return;
+                }
+            }
+
+            /* Sleep until the start of the next tick. */
+            long next = this.origin + (this.ticks + 1) * this.tick;
+            long now;
+            while ((now = System.nanoTime()) < next) LockSupport.parkNanos(next - now);
+
+            /* If the thread has fallen behind, catch up all the missed ticks. */
+            long target = (now - this.origin) / this.tick;
+            while (this.ticks < target)
+            {
+                this.ticks++;
+                this.transferPending();
+                this.expire(this.wheel.get((int)(this.ticks % this.wheel.size())), now);
+            }
+        }
+    }
+
+    /**
+     * Moves newly scheduled timeouts into their wheel slot.
+     */
+    private void transferPending()
+    {
+        Timeout timeout;
+        while ((timeout = this.pending.poll()) != null)
+        {
+            /* Deadlines in the past are run on the current tick. */
+            long at = Math.max((timeout.deadline - this.origin + this.tick - 1) / this.tick, this.ticks);
+            timeout.rounds = (at - this.ticks) / this.wheel.size();
+            this.wheel.get((int)(at % this.wheel.size())).add(timeout);
+        }
+    }
+
+    /**
+     * Runs the timeouts in a slot whose deadlines have expired.
+     *
+     * @param slot wheel slot
+     * @param now current monotonic time
+     */
+    private void expire(List<Timeout> slot, long now)
+    {
+        Iterator<Timeout> it = slot.iterator();
+        while (it.hasNext())
+        {
+            Timeout timeout = it.next();
+            if (timeout.cancelled)
+            {
+                it.remove();
+                this.release();
+            }
+            else if (timeout.rounds > 0)
+            {
+                timeout.rounds--;
+            }
+            else
+            {
+                it.remove();
+                this.release();
+
+                try
+                {
+                    timeout.task.run();
+                }
+                catch (RuntimeException e)
+                {
+                    this.logger.warning("Error running scheduled task, error " + e.getClass().getName() +
+                            ": " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Accounts for a timeout that has been removed from the wheel.
+     */
+    private synchronized void release()
+    {
+        this.scheduled--;
+    }
+
+    /**
+     * Gets the timing wheel instance that is shared across the application.
+     *
+     * @return shared timing wheel
+     */
+    public static TimingWheel get()
+    {
+        return shared;
+    }
+
+    /**
+     * Handle to a scheduled task.
+     */
+    public static class Timeout
+    {
+        /** Monotonic time in nanoseconds task is to run. */
+        public final long deadline;
+
+        /** Task to run. */
+        private final Runnable task;
+
+        /** Number of wheel revolutions remaining before the task is due. */
+        private long rounds;
+
+        /** Whether this timeout has been cancelled. */
+        private volatile boolean cancelled;
+
+        Timeout(long deadline, Runnable task)
+        {
+            this.deadline = deadline;
+            this.task = task;
+        }
+
+        /**
+         * Cancels the task if it has not yet run.
+         */
+        public void cancel()
+        {
+            this.cancelled = true;
+        }
+    }
+}
@@ -0,0 +1,132 @@
+/**
+ * MJPEG streaming application.
+ *
+ * @author Michael Diponio <michael.diponio@uts.edu.au>
+ * @date 19th October 2026
+ */
+
+package au.edu.remotelabs.mjpeg.source;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.Arrays;
+
+/**
+ * Weekly pattern of viewers arriving at a stream, used to predict when viewers
+ * will arrive, such as for lab sessions that are scheduled at the same time
+ * each week. The week is divided into slots of local time, and each slot
+ * scores the weeks in which viewers arrived during it, with the score of each
+ * week decaying as the week gets older. A slot is expected to have viewers if
+ * viewers arrived in it in at least the two most recent weeks, or in most of
+ * the recent weeks. The history is held in memory so is relearnt after a
+ * restart.
+ */
+class AccessHistory
+{
+    /** Length of a slot in milliseconds. */
+    static final long SLOT = 15 * 60 * 1000;
+
+    /** Number of slots in a week. */
+    private static final int SLOTS = 7 * 24 * 4;
+
+    /** Factor the score of a slot decays by each week. */
+    private static final double DECAY = 0.75;
+
+    /** Score of a slot for it to be expected to have viewers. */
+    private static final double THRESHOLD = 1.0;
+
+    /** Time zone of the slots. */
+    private final ZoneId zone;
+
+    /** Score of each slot as of the week it was last scored. */
+    private final double scores[];
+
+    /** Week each slot was last scored, -1 if never. */
+    private final long weeks[];
+
+    AccessHistory()
+    {
+        this(ZoneId.systemDefault());
+    }
+
+    AccessHistory(ZoneId zone)
+    {
+        this.zone = zone;
+        this.scores = new double[SLOTS];
+        this.weeks = new long[SLOTS];
+        Arrays.fill(this.weeks, -1);
+    }
+
+    /**
+     * Records viewers arriving. Each slot is scored at most once a week.
+     *
+     * @param time time of arrival in milliseconds since the epoch
+     */
+    synchronized void recordArrival(long time)
+    {
+        ZonedDateTime date = Instant.ofEpochMilli(time).atZone(this.zone);
+        int slot = AccessHistory.slotOf(date);
+        long week = AccessHistory.weekOf(date);
+
+        if (this.weeks[slot] == week) return;
+
+        this.scores[slot] = this.scoreAt(slot, week) + 1;
+        this.weeks[slot] = week;
+    }
+
+    /**
+     * Checks whether viewers are expected at a time from the weeks before the
+     * week of the time.
+     *
+     * @param time time in milliseconds since the epoch
+     * @return true if viewers are expected
+     */
+    synchronized boolean isExpected(long time)
+    {
+        ZonedDateTime date = Instant.ofEpochMilli(time).atZone(this.zone);
+        int slot = AccessHistory.slotOf(date);
+        long week = AccessHistory.weekOf(date);
+
+        /* Only past weeks predict, so viewers arriving this week are not counted. */
+        double score = this.scoreAt(slot, week);
+        if (this.weeks[slot] == week) score -= 1;
+        return score >= THRESHOLD;
+    }
+
+    /**
+     * Gets the score of a slot decayed to a week.
+     *
+     * @param slot slot index
+     * @param week week index
+     * @return score
+     */
+    private double scoreAt(int slot, long week)
+    {
+        if (this.weeks[slot] < 0) return 0;
+        return this.scores[slot] * Math.pow(DECAY, week - this.weeks[slot]);
+    }
+
+    /**
+     * Gets the slot of the week of a time.
+     *
+     * @param date local time
+     * @return slot index
+     */
+    private static int slotOf(ZonedDateTime date)
+    {
+        return (date.getDayOfWeek().getValue() - 1) * 96 + date.getHour() * 4 + date.getMinute() / 15;
+    }
+
+    /**
+     * Gets the week of a time, counted in weeks starting on Monday.
+     *
+     * @param date local time
+     * @return week index
+     */
+    private static long weekOf(ZonedDateTime date)
+    {
+        /* The epoch day was a Thursday. */
+        return Math.floorDiv(date.toLocalDate().toEpochDay() + 3, 7);
+    }
+}
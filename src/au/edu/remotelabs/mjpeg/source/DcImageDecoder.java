@@ -0,0 +1,671 @@
+/**
+ * MJPEG streaming application.
+ *
+ * @author Michael Diponio <michael.diponio@uts.edu.au>
+ * @date 19th October 2026
+ */
+
+package au.edu.remotelabs.mjpeg.source;
+
+import java.util.Arrays;
+
+import javax.imageio.plugins.jpeg.JPEGHuffmanTable;
+
+/**
+ * Decodes the DC coefficients of the luminance component of a baseline JPEG
+ * image to a small brightness image. Each DC coefficient is the mean of an 8x8
+ * block, so the DC image is the image downsampled by 8 without the inverse DCT,
+ * which is further averaged into a grid of at most {@link #GRID} cells along
+ * each side. The entropy coded data is still Huffman decoded to step over the
+ * AC coefficients, but this is a fraction of the cost of decoding the image.
+ * Images that omit their Huffman tables, as many M-JPEG sources do, are decoded
+ * with the standard tables. Progressive, arithmetic coded and 12-bit images
+ * are not decoded.
+ */
+class DcImageDecoder
+{
+    /** Maximum number of grid cells along each side. */
+    static final int GRID = 32;
+
+    /** Maximum number of frame components. */
+    private static final int MAX_COMPONENTS = 4;
+
+    /** Standard DC tables, luminance then chrominance. */
+    private static final Huffman STD_DC[] = {
+        new Huffman(JPEGHuffmanTable.StdDCLuminance), new Huffman(JPEGHuffmanTable.StdDCChrominance)
+    };
+
+    /** Standard AC tables, luminance then chrominance. */
+    private static final Huffman STD_AC[] = {
+        new Huffman(JPEGHuffmanTable.StdACLuminance), new Huffman(JPEGHuffmanTable.StdACChrominance)
+    };
+
+    /** DC tables by identifier for the image being decoded. */
+    private final Huffman dcTables[] = new Huffman[4];
+
+    /** AC tables by identifier for the image being decoded. */
+    private final Huffman acTables[] = new Huffman[4];
+
+    /** Tables defined by images, DC tables then AC tables, reused between images. */
+    private final Huffman defined[] = new Huffman[8];
+
+    /** DC quantization value of each quantization table, 0 if not defined. */
+    private final int dcQuant[] = new int[4];
+
+    /** Image width in pixels. */
+    private int width;
+
+    /** Image height in pixels. */
+    private int height;
+
+    /** Number of frame components. */
+    private int components;
+
+    /** Horizontal sampling factor of each component. */
+    private final int compH[] = new int[MAX_COMPONENTS];
+
+    /** Vertical sampling factor of each component. */
+    private final int compV[] = new int[MAX_COMPONENTS];
+
+    /** Identifier of each component. */
+    private final int compId[] = new int[MAX_COMPONENTS];
+
+    /** Quantization table of each component. */
+    private final int compTq[] = new int[MAX_COMPONENTS];
+
+    /** Restart interval in MCUs, 0 if not defined. */
+    private int restartInterval;
+
+    /** Frame component index of each scan component. */
+    private final int scanComp[] = new int[MAX_COMPONENTS];
+
+    /** DC table of each scan component. */
+    private final Huffman scanDc[] = new Huffman[MAX_COMPONENTS];
+
+    /** AC table of each scan component. */
+    private final Huffman scanAc[] = new Huffman[MAX_COMPONENTS];
+
+    /** DC predictor of each scan component. */
+    private final int pred[] = new int[MAX_COMPONENTS];
+
+    /** Image being decoded. */
+    private byte jpeg[];
+
+    /** Position of the next byte of entropy coded data. */
+    private int bp;
+
+    /** Bit buffer, with the next bit in the most significant bit. */
+    private long bits;
+
+    /** Number of bits in the bit buffer. */
+    private int bitCount;
+
+    /** Whether a marker has been reached, after which zero bits are read. */
+    private boolean hitMarker;
+
+    /** Number of zero bytes read into the bit buffer since the entropy coded data ran out. */
+    private int padded;
+
+    /** Sum of the dequantized DC coefficients of each cell. */
+    private final long sums[] = new long[GRID * GRID];
+
+    /** Number of blocks of each cell. */
+    private final int counts[] = new int[GRID * GRID];
+
+    /** Mean brightness of each cell of the last decoded image. */
+    private final int grid[] = new int[GRID * GRID];
+
+    /** Number of cells along the width of the last decoded image. */
+    private int gridWidth;
+
+    /** Number of cells along the height of the last decoded image. */
+    private int gridHeight;
+
+    /**
+     * Decodes the DC image of a JPEG.
+     *
+     * @param image image bytes
+     * @return true if decoded, false if the image is not a baseline JPEG or is corrupt
+     */
+    boolean decode(byte image[])
+    {
+        this.jpeg = image;
+        this.gridWidth = this.gridHeight = 0;
+        this.components = 0;
+        this.restartInterval = 0;
+        for (int i = 0; i < 4; i++)
+        {
+            this.dcTables[i] = STD_DC[i == 0 ? 0 : 1];
+            this.acTables[i] = STD_AC[i == 0 ? 0 : 1];
+            this.dcQuant[i] = 0;
+        }
+
+        try
+        {
+            return this.decodeHeaders();
+        }
+        finally
+        {
+            this.jpeg = null;
+        }
+    }
+
+    /**
+     * Reads the marker segments of the image up to the first scan, then
+     * decodes the scan.
+     *
+     * @return true if decoded
+     */
+    private boolean decodeHeaders()
+    {
+        byte b[] = this.jpeg;
+        int len = b.length;
+        if (len < 4 || b[0] != (byte) 0xFF || b[1] != (byte) 0xD8) return false;
+
+        int pos = 2;
+        while (pos + 4 <= len)
+        {
+            if (b[pos] != (byte) 0xFF) return false;
+
+            int marker = b[pos + 1] & 0xFF;
+            if (marker == 0xFF)
+            {
+                pos++;
+                continue;
+            }
+
+            if (marker == 0x01 || marker >= 0xD0 && marker <= 0xD7)
+            {
+                pos += 2;
+                continue;
+            }
+
+            int length = (b[pos + 2] & 0xFF) << 8 | b[pos + 3] & 0xFF;
+            int start = pos + 4, end = pos + 2 + length;
+            if (length < 2 || end > len) return false;
+
+            switch (marker)
+            {
+            case 0xC0: // Baseline
+            case 0xC1: // Extended sequential, Huffman coded
+                if (!this.parseFrameHeader(start, end)) return false;
+                break;
+
+            case 0xC4:
+                if (!this.parseHuffmanTables(start, end)) return false;
+                break;
+
+            case 0xDB:
+                this.parseQuantTables(start, end);
+                break;
+
+            case 0xDD:
+                if (length >= 4) this.restartInterval = (b[start] & 0xFF) << 8 | b[start + 1] & 0xFF;
+                break;
+
+            case 0xDA:
+                return this.components > 0 && this.decodeScan(start, end);
+
+            case 0xD9:
+                return false;
+
+            default:
+                /* Other coding processes are not decoded. */
+                if (marker >= 0xC2 && marker <= 0xCF && marker != 0xC4 && marker != 0xC8 && marker != 0xCC) return false;
+            }
+
+            pos = end;
+        }
+
+        return false;
+    }
+
+    /**
+     * Parses the frame header.
+     *
+     * @param start offset of segment contents
+     * @param end offset after segment
+     * @return true if the frame can be decoded
+     */
+    private boolean parseFrameHeader(int start, int end)
+    {
+        byte b[] = this.jpeg;
+        if (end - start < 6 || (b[start] & 0xFF) != 8) return false;
+
+        this.height = (b[start + 1] & 0xFF) << 8 | b[start + 2] & 0xFF;
+        this.width = (b[start + 3] & 0xFF) << 8 | b[start + 4] & 0xFF;
+        this.components = b[start + 5] & 0xFF;
+        if (this.width == 0 || this.height == 0 || this.components == 0 || this.components > MAX_COMPONENTS ||
+                start + 6 + 3 * this.components > end) return false;
+
+        for (int c = 0, p = start + 6; c < this.components; c++, p += 3)
+        {
+            this.compId[c] = b[p] & 0xFF;
+            this.compH[c] = (b[p + 1] & 0xFF) >> 4;
+            this.compV[c] = b[p + 1] & 0x0F;
+            this.compTq[c] = b[p + 2] & 0x03;
+            if (this.compH[c] == 0 || this.compV[c] == 0) return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Parses a segment of Huffman tables.
+     *
+     * @param start offset of segment contents
+     * @param end offset after segment
+     * @return true if the tables are valid
+     */
+    private boolean parseHuffmanTables(int start, int end)
+    {
+        byte b[] = this.jpeg;
+        int p = start;
+        while (p + 17 <= end)
+        {
+            int tc = (b[p] & 0xFF) >> 4, th = b[p] & 0x03;
+            if (tc > 1) return false;
+
+            int symbols = 0;
+            for (int i = 1; i <= 16; i++) symbols += b[p + i] & 0xFF;
+            if (p + 17 + symbols > end) return false;
+
+            int slot = tc * 4 + th;
+            if (this.defined[slot] == null) this.defined[slot] = new Huffman();
+            if (!this.defined[slot].build(b, p + 1, p + 17, symbols)) return false;
+            (tc == 0 ? this.dcTables : this.acTables)[th] = this.defined[slot];
+
+            p += 17 + symbols;
+        }
+        return true;
+    }
+
+    /**
+     * Parses a segment of quantization tables, keeping the DC value of each.
+     *
+     * @param start offset of segment contents
+     * @param end offset after segment
+     */
+    private void parseQuantTables(int start, int end)
+    {
+        byte b[] = this.jpeg;
+        int p = start;
+        while (p < end)
+        {
+            int pq = (b[p] & 0xFF) >> 4, tq = b[p] & 0x03;
+            int size = pq == 0 ? 64 : 128;
+            if (p + 1 + size > end) break;
+
+            this.dcQuant[tq] = pq == 0 ? b[p + 1] & 0xFF : (b[p + 1] & 0xFF) << 8 | b[p + 2] & 0xFF;
+            p += 1 + size;
+        }
+    }
+
+    /**
+     * Decodes the scan that starts at the segment, accumulating the DC
+     * coefficients of luminance blocks into the grid.
+     *
+     * @param start offset of scan header contents
+     * @param end offset of entropy coded data
+     * @return true if decoded
+     */
+    private boolean decodeScan(int start, int end)
+    {
+        byte b[] = this.jpeg;
+        int ns = b[start] & 0xFF;
+        if (ns == 0 || ns > this.components || start + 1 + 2 * ns + 3 > end) return false;
+
+        /* The luminance component is the first frame component. */
+        int luma = -1;
+        for (int s = 0, p = start + 1; s < ns; s++, p += 2)
+        {
+            int id = b[p] & 0xFF, c = 0;
+            while (c < this.components && this.compId[c] != id) c++;
+            if (c == this.components) return false;
+
+            this.scanComp[s] = c;
+            this.scanDc[s] = this.dcTables[(b[p + 1] & 0xFF) >> 4 & 0x03];
+            this.scanAc[s] = this.acTables[b[p + 1] & 0x03];
+            this.pred[s] = 0;
+            if (c == 0) luma = s;
+        }
+
+        /* Only a full sequential scan has the DC coefficients. */
+        int p = start + 1 + 2 * ns;
+        if (luma < 0 || b[p] != 0 || (b[p + 1] & 0xFF) != 63 || b[p + 2] != 0) return false;
+
+        int q = this.dcQuant[this.compTq[0]];
+        if (q == 0) return false;
+
+        int hmax = 1, vmax = 1;
+        for (int c = 0; c < this.components; c++)
+        {
+            hmax = Math.max(hmax, this.compH[c]);
+            vmax = Math.max(vmax, this.compV[c]);
+        }
+
+        /* Blocks of the luminance component that are within the image. */
+        int lumaX = ((this.width * this.compH[0] + hmax - 1) / hmax + 7) / 8;
+        int lumaY = ((this.height * this.compV[0] + vmax - 1) / vmax + 7) / 8;
+
+        /* A scan of one component is not interleaved, each MCU is a single block. */
+        int mcusX, mcusY;
+        if (ns == 1)
+        {
+            mcusX = lumaX;
+            mcusY = lumaY;
+        }
+        else
+        {
+            mcusX = (this.width + 8 * hmax - 1) / (8 * hmax);
+            mcusY = (this.height + 8 * vmax - 1) / (8 * vmax);
+        }
+
+        int gw = Math.min(GRID, lumaX), gh = Math.min(GRID, lumaY);
+        Arrays.fill(this.sums, 0, gw * gh, 0);
+        Arrays.fill(this.counts, 0, gw * gh, 0);
+
+        this.bp = end;
+        this.bits = 0;
+        this.bitCount = 0;
+        this.hitMarker = false;
+        this.padded = 0;
+
+        int total = mcusX * mcusY;
+        for (int m = 0; m < total; m++)
+        {
+            if (this.restartInterval > 0 && m > 0 && m % this.restartInterval == 0) this.restart(ns);
+
+            /* The frame size is untrusted, so decoding stops once the previous MCU read
+             * past the end of the entropy coded data rather than decoding padding. */
+            if (this.padded * 8 > this.bitCount) return false;
+
+            int mx = m % mcusX, my = m / mcusX;
+            for (int s = 0; s < ns; s++)
+            {
+                int c = this.scanComp[s];
+                int bh = ns == 1 ? 1 : this.compH[c], bv = ns == 1 ? 1 : this.compV[c];
+                for (int v = 0; v < bv; v++)
+                {
+                    for (int h = 0; h < bh; h++)
+                    {
+                        int t = this.decodeHuffman(this.scanDc[s]);
+                        if (t < 0 || t > 11) return false;
+                        this.pred[s] += this.receiveExtend(t);
+
+                        if (!this.skipAc(this.scanAc[s])) return false;
+
+                        if (s == luma)
+                        {
+                            int bx = mx * bh + h, by = my * bv + v;
+                            if (bx < lumaX && by < lumaY)
+                            {
+                                int cell = by * gh / lumaY * gw + bx * gw / lumaX;
+                                this.sums[cell] += this.pred[s] * q;
+                                this.counts[cell]++;
+                            }
+                        }
+                    }
+                }
+            }
+        }
+
+        /* A dequantized DC coefficient is 8 times the mean level shifted block value. */
+        for (int i = 0; i < gw * gh; i++)
+        {
+            this.grid[i] = this.counts[i] == 0 ? 0 : (int) (this.sums[i] / this.counts[i] / 8) + 128;
+        }
+        this.gridWidth = gw;
+        this.gridHeight = gh;
+        return true;
+    }
+
+    /**
+     * Steps over the AC coefficients of a block.
+     *
+     * @param table AC table
+     * @return true if valid
+     */
+    private boolean skipAc(Huffman table)
+    {
+        for (int k = 1; k < 64; k++)
+        {
+            int rs = this.decodeHuffman(table);
+            if (rs < 0) return false;
+
+            int r = rs >> 4, s = rs & 0x0F;
+            if (s == 0)
+            {
+                /* End of block, unless a run of 16 zeros. */
+                if (r != 15) break;
+                k += 15;
+            }
+            else
+            {
+                k += r;
+                this.fill();
+                this.consume(s);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Moves past a restart marker, resetting the bit buffer and predictors.
+     *
+     * @param ns number of scan components
+     */
+    private void restart(int ns)
+    {
+        byte b[] = this.jpeg;
+        while (this.bp + 1 < b.length && !(b[this.bp] == (byte) 0xFF && (b[this.bp + 1] & 0xF8) == 0xD0)) this.bp++;
+        this.bp += 2;
+
+        this.bits = 0;
+        this.bitCount = 0;
+        this.hitMarker = false;
+        this.padded = 0;
+        for (int s = 0; s < ns; s++) this.pred[s] = 0;
+    }
+
+    /**
+     * Decodes a Huffman coded symbol.
+     *
+     * @param table Huffman table
+     * @return symbol or -1 if the code is not in the table
+     */
+    private int decodeHuffman(Huffman table)
+    {
+        this.fill();
+
+        int e = table.lookup[(int) (this.bits >>> (64 - Huffman.LOOKAHEAD))];
+        if (e != 0)
+        {
+            this.consume(e >> 8);
+            return e & 0xFF;
+        }
+
+        /* Longer codes are found by their length. */
+        int code = (int) (this.bits >>> 48);
+        for (int l = Huffman.LOOKAHEAD + 1; l <= 16; l++)
+        {
+            int c = code >>> (16 - l);
+            if (c <= table.maxcode[l])
+            {
+                this.consume(l);
+                return table.values[table.valptr[l] + c - table.mincode[l]] & 0xFF;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Reads a signed value of the given number of bits.
+     *
+     * @param s number of bits
+     * @return value
+     */
+    private int receiveExtend(int s)
+    {
+        if (s == 0) return 0;
+
+        this.fill();
+        int v = (int) (this.bits >>> (64 - s));
+        this.consume(s);
+        return v < 1 << (s - 1) ? v - (1 << s) + 1 : v;
+    }
+
+    /**
+     * Fills the bit buffer from the entropy coded data, removing stuffed bytes.
+     * Once a marker is reached zero bits are read.
+     */
+    private void fill()
+    {
+        byte b[] = this.jpeg;
+        while (this.bitCount <= 56)
+        {
+            int v = 0;
+            if (!this.hitMarker && this.bp < b.length)
+            {
+                v = b[this.bp] & 0xFF;
+                if (v == 0xFF)
+                {
+                    if (this.bp + 1 < b.length && b[this.bp + 1] == 0)
+                    {
+                        this.bp += 2;
+                    }
+                    else
+                    {
+                        this.hitMarker = true;
+                        this.padded++;
+                        v = 0;
+                    }
+                }
+                else
+                {
+                    this.bp++;
+                }
+            }
+            else
+            {
+                this.padded++;
+            }
+
+            this.bits |= (long) v << (56 - this.bitCount);
+            this.bitCount += 8;
+        }
+    }
+
+    /**
+     * Removes bits from the bit buffer.
+     *
+     * @param n number of bits
+     */
+    private void consume(int n)
+    {
+        this.bits <<= n;
+        this.bitCount -= n;
+    }
+
+    /**
+     * Gets the mean brightness of each cell of the last decoded image, in rows.
+     * The array is reused by the next decode.
+     *
+     * @return cells, of which the first width times height are valid
+     */
+    int[] getGrid()
+    {
+        return this.grid;
+    }
+
+    int getGridWidth()
+    {
+        return this.gridWidth;
+    }
+
+    int getGridHeight()
+    {
+        return this.gridHeight;
+    }
+
+    /**
+     * Huffman table with a lookup table for short codes.
+     */
+    private static class Huffman
+    {
+        /** Number of bits of codes found by lookup. */
+        static final int LOOKAHEAD = 9;
+
+        /** Length and symbol of codes by their first bits, 0 if longer. */
+        final int lookup[] = new int[1 << LOOKAHEAD];
+
+        /** Largest code of each length, -1 if none. */
+        final int maxcode[] = new int[17];
+
+        /** Smallest code of each length. */
+        final int mincode[] = new int[17];
+
+        /** Index of the first symbol of each length. */
+        final int valptr[] = new int[17];
+
+        /** Symbols in order of code. */
+        byte values[] = new byte[256];
+
+        Huffman()
+        {
+        }
+
+        Huffman(JPEGHuffmanTable table)
+        {
+            short lengths[] = table.getLengths(), symbols[] = table.getValues();
+            byte b[] = new byte[16 + symbols.length];
+            for (int i = 0; i < 16; i++) b[i] = (byte) lengths[i];
+            for (int i = 0; i < symbols.length; i++) b[16 + i] = (byte) symbols[i];
+            this.build(b, 0, 16, symbols.length);
+        }
+
+        /**
+         * Builds the table from the code length counts and symbols of a table
+         * definition.
+         *
+         * @param b bytes of the definition
+         * @param counts offset of the 16 code length counts
+         * @param symbols offset of the symbols
+         * @param n number of symbols
+         * @return true if the table is valid
+         */
+        boolean build(byte b[], int counts, int symbols, int n)
+        {
+            if (n > 256) return false;
+            System.arraycopy(b, symbols, this.values, 0, n);
+            Arrays.fill(this.lookup, 0);
+
+            int code = 0, k = 0;
+            for (int l = 1; l <= 16; l++)
+            {
+                int count = b[counts + l - 1] & 0xFF;
+                this.valptr[l] = k;
+                this.mincode[l] = code;
+                this.maxcode[l] = count == 0 ? -1 : code + count - 1;
+
+                for (int i = 0; i < count; i++, code++, k++)
+                {
+                    /* Codes of a length must fit in that many bits. */
+                    if (code >= 1 << l) return false;
+
+                    if (l <= LOOKAHEAD)
+                    {
+                        int shift = LOOKAHEAD - l;
+                        for (int f = 0; f < 1 << shift; f++)
+                        {
+                            this.lookup[code << shift | f] = l << 8 | this.values[k] & 0xFF;
+                        }
+                    }
+                }
+
+                code <<= 1;
+            }
+            return true;
+        }
+    }
+}
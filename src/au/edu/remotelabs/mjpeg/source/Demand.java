@@ -0,0 +1,99 @@
+/**
+ * MJPEG streaming application.
+ *
+ * @author Michael Diponio <michael.diponio@uts.edu.au>
+ * @date 19th October 2026
+ */
+
+package au.edu.remotelabs.mjpeg.source;
+
+/**
+ * The frame size and rate a destination needs from its source, used to
+ * choose the cheapest source profile that satisfies all destinations.
+ */
+public class Demand
+{
+    /** Demand of a destination that needs the full source size and rate. */
+    public static final Demand FULL = new Demand(Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE);
+
+    /** Demand when there are no destinations. */
+    public static final Demand NONE = new Demand(0, 0, 0);
+
+    /** Width in pixels of frames needed. */
+    private final int width;
+
+    /** Height in pixels of frames needed. */
+    private final int height;
+
+    /** Frames per second needed. */
+    private final int rate;
+
+    public Demand(int width, int height, int rate)
+    {
+        this.width = width;
+        this.height = height;
+        this.rate = rate;
+    }
+
+    /**
+     * Combines this demand with another into a demand that satisfies both.
+     *
+     * @param other other demand
+     * @return combined demand
+     */
+    public Demand max(Demand other)
+    {
+        return new Demand(Math.max(this.width, other.width), Math.max(this.height, other.height),
+                Math.max(this.rate, other.rate));
+    }
+
+    /**
+     * Checks whether frames of a size and rate satisfy this demand.
+     *
+     * @param w frame width
+     * @param h frame height
+     * @param r frame rate
+     * @return true if satisfied
+     */
+    public boolean isSatisfiedBy(int w, int h, int r)
+    {
+        return w >= this.width && h >= this.height && r >= this.rate;
+    }
+
+    public int getWidth()
+    {
+        return this.width;
+    }
+
+    public int getHeight()
+    {
+        return this.height;
+    }
+
+    public int getRate()
+    {
+        return this.rate;
+    }
+
+    @Override
+    public boolean equals(Object obj)
+    {
+        if (!(obj instanceof Demand)) return false;
+
+        Demand d = (Demand) obj;
+        return this.width == d.width && this.height == d.height && this.rate == d.rate;
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return (this.width * 31 + this.height) * 31 + this.rate;
+    }
+
+    @Override
+    public String toString()
+    {
+        return (this.width == Integer.MAX_VALUE ? "full" : this.width + "x" + this.height) + '@' +
+                (this.rate == Integer.MAX_VALUE ? "full" : String.valueOf(this.rate));
+    }
+}
@@ -12,7 +12,13 @@ import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
 
 import javax.imageio.ImageIO;
 
@@ -27,12 +33,24 @@ public class Frame
     /** Timestamp of when the frame was read. */
     private final long timestamp;
     
+    /** Monotonic time in nanoseconds of when the frame was read. */
+    private long arrival;
+    
     /** MIME type of buf. */
     private final String mime;
     
     /** Sequence number of frame. */
     private final int sequence;
     
+    /** Encoded representations of this frame shared by outputs, created on demand. */
+    private Map<String, Object> encodings;
+    
+    /** JPEG header metadata, null if not parsed or not a JPEG. */
+    private JpegInfo jpegInfo;
+    
+    /** Whether the JPEG header metadata has been parsed. */
+    private boolean jpegParsed;
+    
     /**
      * Creates the frame with the specified content size.
      * 
@@ -45,6 +63,43 @@ public class Frame
         this.mime = mime.trim();
         this.buf = data;
         this.timestamp = System.currentTimeMillis();
+        this.arrival = System.nanoTime();
+        this.sequence = seq;
+    }
+
+    /**
+     * Creates a frame derived from another frame, such as a transformed frame. 
+     * The derived frame keeps the sequence number and read times of the
+     * original frame.
+     * 
+     * @param orig frame derived from
+     * @param mime buf mime type
+     * @param data buf data bytes
+     */
+    public Frame(Frame orig, String mime, byte data[])
+    {
+        this.mime = mime.trim();
+        this.buf = data;
+        this.timestamp = orig.timestamp;
+        this.arrival = orig.arrival;
+        this.sequence = orig.sequence;
+    }
+
+    /**
+     * Creates a repeat of a frame with a new sequence number, such as to keep
+     * destinations sending while duplicate frames are suppressed. The repeat
+     * has the bytes and timestamp of the original frame, so renditions cached
+     * by timestamp are reused, but is read now.
+     * 
+     * @param orig frame repeated
+     * @param seq sequence number of repeat
+     */
+    Frame(Frame orig, int seq)
+    {
+        this.mime = orig.mime;
+        this.buf = orig.buf;
+        this.timestamp = orig.timestamp;
+        this.arrival = System.nanoTime();
         this.sequence = seq;
     }
 
@@ -58,6 +113,23 @@ public class Frame
         return ImageIO.read(new ByteArrayInputStream(this.buf));
     }
     
+    /**
+     * Gets the JPEG header metadata of this frame, such as its size and 
+     * component layout, without decoding the image. The metadata is parsed 
+     * once when first requested.
+     * 
+     * @return metadata or null if the frame is not a JPEG with a frame header
+     */
+    public synchronized JpegInfo getJpegInfo()
+    {
+        if (!this.jpegParsed)
+        {
+            this.jpegInfo = JpegInfo.parse(this.buf, this.buf.length);
+            this.jpegParsed = true;
+        }
+        return this.jpegInfo;
+    }
+    
     /**
      * Write the buf bytes to the output stream. 
      * 
@@ -71,13 +143,129 @@ public class Frame
     }
     
     /**
-     * Write a Base64 encoded string to the stream.
+     * Returns a buffer wrapping the frame bytes. The buffer must not be 
+     * modified as it is shared with all other users of the frame.
+     * 
+     * @return buffer of frame bytes
+     */
+    public ByteBuffer getBuffer()
+    {
+        return ByteBuffer.wrap(this.buf);
+    }
+    
+    /**
+     * Gets an encoded representation of this frame, such as an output specific 
+     * envelope. The encoding is computed once when first requested and shared 
+     * by all outputs sending this frame.
+     * 
+     * @param key name of encoding
+     * @param encoder function to compute encoding if not already computed
+     * @return encoding
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized <T> T getEncoding(String key, Function<Frame, T> encoder)
+    {
+        if (this.encodings == null) this.encodings = new HashMap<>(4);
+        
+        Object encoding = this.encodings.get(key);
+        if (encoding == null)
+        {
+            encoding = encoder.apply(this);
+            this.encodings.put(key, encoding);
+        }
+        return (T) encoding;
+    }
+    
+    /**
+     * Write a Base64 encoded string to the stream. The encoding is shared 
+     * with other writers of this frame.
      * 
      * @param stream writer stream to output to
      */
     public void writeTo(Writer stream) throws IOException
     {
-        stream.write(Base64.getMimeEncoder().encodeToString(this.buf));
+        /* Skip the data URL prefix to only write the Base64 encoding. */
+        String url = this.getDataUrlText();
+        int len = Frame.encodedLength(this.buf.length);
+        stream.write(url, url.length() - len, len);
+    }
+    
+    /**
+     * Gets the frame as data URL text, for outputs that can only send text as
+     * a String, such as asynchronous web socket sends. The text is encoded once
+     * when first requested and shared by all outputs sending this frame. It is
+     * held separately from the {@link #getDataUrl()} bytes, so the URL is only 
+     * held as text for frames sent by outputs that require text.
+     * 
+     * @return data URL text
+     */
+    public String getDataUrlText()
+    {
+        return this.getEncoding("data-url-text", (Frame f) -> 
+                new String(Frame.encodeDataUrl(f), StandardCharsets.US_ASCII));
+    }
+    
+    /**
+     * Gets the frame as a data URL, 'data:&lt;mime&gt;;base64,&lt;Base64 bytes&gt;'.
+     * The URL is encoded once when first requested and shared by all outputs 
+     * sending this frame. The returned bytes are ASCII and must not be modified.
+     * 
+     * @return data URL bytes
+     */
+    public byte[] getDataUrl()
+    {
+        return this.getEncoding("data-url", Frame::encodeDataUrl);
+    }
+    
+    /**
+     * Encodes a frame as a data URL, streaming the Base64 encoding directly 
+     * into the URL bytes.
+     * 
+     * @param frame frame to encode
+     * @return data URL bytes
+     */
+    private static byte[] encodeDataUrl(Frame frame)
+    {
+        byte prefix[] = ("data:" + frame.mime + ";base64,").getBytes(StandardCharsets.US_ASCII);
+        byte url[] = Arrays.copyOf(prefix, prefix.length + Frame.encodedLength(frame.buf.length));
+        
+        try (OutputStream out = Base64.getEncoder().wrap(new OutputStream() {
+                private int pos = prefix.length;
+                
+                @Override
+                public void write(int b)
+                {
+                    url[this.pos++] = (byte) b;
+                }
+                
+                @Override
+                public void write(byte b[], int off, int len)
+                {
+                    System.arraycopy(b, off, url, this.pos, len);
+                    this.pos += len;
+                }
+            }))
+        {
+            out.write(frame.buf);
+        }
+        catch (IOException e)
+        {
+            /* Not possible writing to memory. */
+            throw new IllegalStateException(e);
+        }
+        
+        return url;
+    }
+    
+    /**
+     * Returns the length of the Base64 encoding of bytes.
+     * 
+     * @param len number of bytes
+     * @return number of encoded characters
+     */
+    private static int encodedLength(int len)
+    {
+        return (len + 2) / 3 * 4;
     }
     
     /**
@@ -110,6 +298,29 @@ public class Frame
         return this.timestamp;
     }
     
+    /**
+     * Gets the monotonic time in nanoseconds of when this frame was read. This
+     * is only meaningful compared against other {@link System#nanoTime()} values.
+     * 
+     * @return monotonic time of read
+     */
+    public long getArrivalTime()
+    {
+        return this.arrival;
+    }
+    
+    /**
+     * Sets the monotonic read time of the frame. This is used by stages that
+     * delay frames before publishing, so the frame appears to have been read when
+     * it was published.
+     * 
+     * @param arrival monotonic time in nanoseconds
+     */
+    void setArrivalTime(long arrival)
+    {
+        this.arrival = arrival;
+    }
+    
     /**
      * Sequence number of frame which is relative from the first frame read.
      * 
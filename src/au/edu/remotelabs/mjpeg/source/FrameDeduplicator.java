@@ -0,0 +1,235 @@
+/**
+ * MJPEG streaming application.
+ *
+ * @author Michael Diponio <michael.diponio@uts.edu.au>
+ * @date 19th October 2026
+ */
+
+package au.edu.remotelabs.mjpeg.source;
+
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * Detects frames that duplicate the last frame published by a stream, such as
+ * the frames of a static scene, so they are suppressed before destinations
+ * transform or send them. Exact duplicates are found by a hash of the entropy
+ * coded data, ignoring header segments such as timestamp comments which some
+ * cameras change in every frame. If a threshold is configured, frames that
+ * differ only by sensor noise are found by comparing their DC images, which
+ * are the frames downsampled to a small grid of mean brightness. Frames are
+ * compared against the last published frame rather than the last read frame,
+ * so slow changes accumulate until a frame is published. Once no frame has
+ * been published for the keepalive time a duplicate is let through, so
+ * destinations keep sending.
+ * <br />
+ * Each frame is fingerprinted once when it is ingested and the fingerprint is
+ * shared by the streams reading the source, which each compare it against the
+ * last frame they published.
+ */
+class FrameDeduplicator
+{
+    /** Outcome of checking a frame. */
+    enum Result {
+        UNIQUE,    // Frame differs from the last published frame
+        DUPLICATE, // Frame duplicates the last published frame so is suppressed
+        KEEPALIVE  // Frame duplicates the last published frame but the keepalive time has passed
+    }
+
+    /** Largest difference in brightness of any DC image cell for frames to be similar, 0 if
+     *  only exact duplicates are suppressed. */
+    private final int threshold;
+
+    /** Time in nanoseconds after the last published frame that a duplicate is let through. */
+    private final long keepalive;
+
+    /** Fingerprint of the last published frame, null if no frame has been published. */
+    private Fingerprint last;
+
+    /** Monotonic time in nanoseconds the last frame was published. */
+    private long lastPublished;
+
+    /** Number of frames checked. */
+    private volatile long checked;
+
+    /** Number of exact duplicates suppressed. */
+    private volatile long exact;
+
+    /** Number of similar frames suppressed. */
+    private volatile long similar;
+
+    /** Number of duplicates let through as keepalives. */
+    private volatile long keepalives;
+
+    /**
+     * Creates a deduplicator.
+     *
+     * @param threshold largest brightness difference of similar frames, 0 for exact only
+     * @param keepalive time in milliseconds after which a duplicate is let through
+     */
+    FrameDeduplicator(int threshold, int keepalive)
+    {
+        this.threshold = threshold;
+        this.keepalive = keepalive * 1000000L;
+    }
+
+    /**
+     * Fingerprints a frame for checking by deduplicators.
+     *
+     * @param image frame bytes
+     * @param decoder decoder of the DC image, null if only exact duplicates are suppressed
+     * @return fingerprint
+     */
+    static Fingerprint fingerprint(byte image[], DcImageDecoder decoder)
+    {
+        int start = FrameDeduplicator.entropyStart(image);
+        CRC32 crc = new CRC32();
+        crc.update(image, start, image.length - start);
+
+        int grid[] = null, width = 0, height = 0;
+        if (decoder != null && decoder.decode(image))
+        {
+            width = decoder.getGridWidth();
+            height = decoder.getGridHeight();
+            grid = Arrays.copyOf(decoder.getGrid(), width * height);
+        }
+
+        return new Fingerprint(crc.getValue(), image.length - start, grid, width, height);
+    }
+
+    /**
+     * Checks whether a frame duplicates the last published frame. Frames that
+     * are not suppressed become the frame later frames are compared against.
+     *
+     * @param frame fingerprint of the frame
+     * @return outcome
+     */
+    synchronized Result check(Fingerprint frame)
+    {
+        this.checked++;
+        long now = System.nanoTime();
+
+        boolean exactDuplicate = this.last != null && frame.hash == this.last.hash && 
+                frame.length == this.last.length;
+        boolean similarDuplicate = !exactDuplicate && this.threshold > 0 && this.last != null && 
+                this.isSimilar(frame);
+
+        if (exactDuplicate || similarDuplicate)
+        {
+            if (now - this.lastPublished < this.keepalive)
+            {
+                if (exactDuplicate) this.exact++;
+                else this.similar++;
+                return Result.DUPLICATE;
+            }
+
+            /* The keepalive repeats the last published frame so it remains the reference. */
+            this.lastPublished = now;
+            this.keepalives++;
+            return Result.KEEPALIVE;
+        }
+
+        this.lastPublished = now;
+        this.last = frame;
+        return Result.UNIQUE;
+    }
+
+    /**
+     * Compares the DC image of a frame with the DC image of the last published
+     * frame.
+     *
+     * @param frame fingerprint of the frame
+     * @return true if both were decoded and every cell is within the threshold
+     */
+    private boolean isSimilar(Fingerprint frame)
+    {
+        Fingerprint last = this.last;
+        if (frame.grid == null || last.grid == null || frame.gridWidth != last.gridWidth || 
+                frame.gridHeight != last.gridHeight) return false;
+
+        for (int i = 0; i < frame.grid.length; i++)
+        {
+            if (Math.abs(frame.grid[i] - last.grid[i]) > this.threshold) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Finds the start of the entropy coded data of a JPEG, which follows the
+     * first start of scan segment.
+     *
+     * @param image image bytes
+     * @return offset of entropy coded data, or 0 if the image is not structured as a JPEG
+     */
+    static int entropyStart(byte image[])
+    {
+        if (image.length < 4 || image[0] != (byte) 0xFF || image[1] != (byte) 0xD8) return 0;
+
+        int pos = 2;
+        while (pos + 4 <= image.length && image[pos] == (byte) 0xFF)
+        {
+            int marker = image[pos + 1] & 0xFF;
+            if (marker == 0xFF || marker == 0x01 || marker >= 0xD0 && marker <= 0xD7)
+            {
+                pos += marker == 0xFF ? 1 : 2;
+                continue;
+            }
+
+            int end = pos + 2 + ((image[pos + 2] & 0xFF) << 8 | image[pos + 3] & 0xFF);
+            if (end > image.length) return 0;
+            if (marker == 0xDA) return end;
+            pos = end;
+        }
+        return 0;
+    }
+
+    long getChecked()
+    {
+        return this.checked;
+    }
+
+    long getExact()
+    {
+        return this.exact;
+    }
+
+    long getSimilar()
+    {
+        return this.similar;
+    }
+
+    long getKeepalives()
+    {
+        return this.keepalives;
+    }
+
+    /**
+     * Hash and DC image of a frame, computed once per ingested frame.
+     */
+    static class Fingerprint
+    {
+        /** Hash of the entropy coded data. */
+        final long hash;
+
+        /** Length of the entropy coded data. */
+        final int length;
+
+        /** DC image, null if not decoded. */
+        final int grid[];
+
+        /** Number of cells along the width of the DC image. */
+        final int gridWidth;
+
+        /** Number of cells along the height of the DC image. */
+        final int gridHeight;
+
+        Fingerprint(long hash, int length, int grid[], int gridWidth, int gridHeight)
+        {
+            this.hash = hash;
+            this.length = length;
+            this.grid = grid;
+            this.gridWidth = gridWidth;
+            this.gridHeight = gridHeight;
+        }
+    }
+}
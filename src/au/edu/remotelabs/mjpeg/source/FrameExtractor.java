@@ -0,0 +1,454 @@
+/**
+ * MJPEG streaming application.
+ *
+ * @author Michael Diponio <michael.diponio@uts.edu.au>
+ * @date 19th October 2026
+ */
+
+package au.edu.remotelabs.mjpeg.source;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Extracts frames from a multipart stream. Part headers may be in any order
+ * and include headers that are not understood. If a part has a content length
+ * its body is read by length, otherwise a JPEG body is found by walking its
+ * marker segments and scanning its entropy coded data for the end of image
+ * marker. The stream is buffered by the extractor so scanning works directly
+ * on the buffer rather than a byte at a time through the stream.
+ */
+class FrameExtractor
+{
+    /** Size of the read buffer in bytes. */
+    private static final int BUFFER_SIZE = 65536;
+
+    /** Maximum length of a header line, longer lines are truncated. */
+    private static final int MAX_LINE = 8192;
+
+    /** Maximum size in bytes of a frame found by scanning or read as a snapshot. */
+    static final int MAX_FRAME = 64 * 1024 * 1024;
+
+    /** Stream input. */
+    private final InputStream in;
+
+    /** Read buffer. */
+    private final byte buf[];
+
+    /** Position of the next byte to read in the buffer. */
+    private int pos;
+
+    /** Number of bytes in the buffer. */
+    private int limit;
+
+    /** Position in the buffer from which bytes are copied to the scanned frame
+     *  when the buffer is refilled, -1 if scanned bytes are not kept. */
+    private int mark;
+
+    /** Bytes of the scanned frame. */
+    private byte frame[];
+
+    /** Number of bytes of the scanned frame. */
+    private int frameLen;
+
+    FrameExtractor(InputStream in)
+    {
+        this.in = in;
+        this.buf = new byte[BUFFER_SIZE];
+        this.mark = -1;
+        this.frame = new byte[BUFFER_SIZE];
+    }
+
+    /**
+     * Reads through the stream past the next boundary and reads the part
+     * headers. The boundary line is matched with or without its leading
+     * dashes, as some sources include the dashes in the boundary they declare.
+     *
+     * @param boundary boundary line including leading dashes
+     * @return part headers
+     * @throws IOException error reading stream, end of stream or closing boundary
+     */
+    Part nextPart(String boundary) throws IOException
+    {
+        String bare = boundary.substring(2);
+
+        String line;
+        do
+        {
+            if ((line = this.readLine()) == null) throw new EOFException("Reached end of stream");
+            if (line.equals(boundary + "--")) throw new EOFException("Reached closing boundary");
+        }
+        while (!line.equals(boundary) && !line.equals(bare));
+
+        Map<String, String> headers = new HashMap<>();
+        while ((line = this.readLine()) != null && !line.isEmpty())
+        {
+            int c = line.indexOf(':');
+            if (c > 0) headers.put(line.substring(0, c).trim().toLowerCase(), line.substring(c + 1).trim());
+        }
+
+        if (line == null) throw new EOFException("Reached end of stream");
+        return new Part(headers);
+    }
+
+    /**
+     * Reads a part body of known length.
+     *
+     * @param length body length in bytes
+     * @return body bytes
+     * @throws IOException error reading stream or end of stream
+     */
+    byte[] readBody(int length) throws IOException
+    {
+        byte body[] = new byte[length];
+
+        int read = Math.min(length, this.limit - this.pos);
+        System.arraycopy(this.buf, this.pos, body, 0, read);
+        this.pos += read;
+
+        /* The remainder is read directly into the body rather than through the buffer. */
+        int r;
+        while (read < length)
+        {
+            if ((r = this.in.read(body, read, length - read)) < 0) throw new EOFException("Reached end of stream");
+            read += r;
+        }
+
+        return body;
+    }
+
+    /**
+     * Skips bytes of the stream without keeping them.
+     *
+     * @param length number of bytes to skip
+     * @throws IOException error reading stream or end of stream
+     */
+    void skip(long length) throws IOException
+    {
+        while (length > 0)
+        {
+            if (this.pos == this.limit && !this.fill()) throw new EOFException("Reached end of stream");
+
+            int s = (int) Math.min(length, this.limit - this.pos);
+            this.pos += s;
+            length -= s;
+        }
+    }
+
+    /**
+     * Scans a JPEG image from the stream, ending at its end of image marker.
+     * Marker segments are skipped by their length and entropy coded data is
+     * scanned for the next marker, ignoring stuffed bytes and restart markers,
+     * so bytes that look like markers within segments do not end the image.
+     *
+     * @param keep whether to keep the scanned bytes to be taken as the frame
+     * @return true if the image is structurally valid
+     * @throws IOException error reading stream or end of stream
+     */
+    boolean scanJpeg(boolean keep) throws IOException
+    {
+        /* Line breaks may separate the part headers and the image. */
+        int b;
+        while ((b = this.peek()) == '\r' || b == '\n') this.pos++;
+
+        this.frameLen = 0;
+        this.mark = keep ? this.pos : -1;
+
+        try
+        {
+            if (this.readMarker() != 0xD8) return false;
+
+            int marker = this.readMarker();
+            while (true)
+            {
+                if (marker == 0xD9)
+                {
+                    /* End of image. */
+                    if (this.mark >= 0) this.append(this.mark, this.pos - this.mark);
+                    return true;
+                }
+
+                if (marker < 0 || marker == 0x00 || marker == 0xD8) return false;
+
+                if (marker == 0x01 || marker >= 0xD0 && marker <= 0xD7)
+                {
+                    /* Standalone markers have no segment. */
+                    marker = this.readMarker();
+                    continue;
+                }
+
+                int length = this.read() << 8 | this.read();
+                if (length < 2) return false;
+                this.skip(length - 2);
+
+                /* The start of scan segment is followed by entropy coded data. */
+                marker = marker == 0xDA ? this.scanEntropyData() : this.readMarker();
+            }
+        }
+        finally
+        {
+            this.mark = -1;
+        }
+    }
+
+    /**
+     * Takes the bytes of the last scanned frame.
+     *
+     * @return frame bytes
+     */
+    byte[] takeFrame()
+    {
+        return Arrays.copyOf(this.frame, this.frameLen);
+    }
+
+    /**
+     * Scans entropy coded data for the marker which ends it.
+     *
+     * @return marker code
+     * @throws IOException error reading stream or end of stream
+     */
+    private int scanEntropyData() throws IOException
+    {
+        while (true)
+        {
+            if (this.pos == this.limit && !this.fill()) throw new EOFException("Reached end of stream");
+
+            /* Tight scan of the buffer for the next 0xFF byte. */
+            byte b[] = this.buf;
+            int i = this.pos, end = this.limit;
+            while (i < end && b[i] != (byte) 0xFF) i++;
+            this.pos = i;
+            if (i == end) continue;
+
+            this.pos++;
+            int marker;
+            while ((marker = this.read()) == 0xFF);
+
+            /* Stuffed zero bytes and restart markers are part of the data. */
+            if (marker != 0x00 && (marker < 0xD0 || marker > 0xD7)) return marker;
+        }
+    }
+
+    /**
+     * Reads a marker, skipping fill bytes.
+     *
+     * @return marker code or -1 if the next byte is not a marker
+     * @throws IOException error reading stream or end of stream
+     */
+    private int readMarker() throws IOException
+    {
+        if (this.read() != 0xFF) return -1;
+
+        int marker;
+        while ((marker = this.read()) == 0xFF);
+        return marker;
+    }
+
+    /**
+     * Reads a line of ASCII characters, without the line terminator.
+     *
+     * @return trimmed line or null if the end of stream was reached
+     * @throws IOException error reading stream
+     */
+    private String readLine() throws IOException
+    {
+        StringBuilder line = new StringBuilder();
+        while (true)
+        {
+            if (this.pos == this.limit && !this.fill()) return null;
+
+            int c = this.buf[this.pos++] & 0xFF;
+            if (c == '\n') return line.toString().trim();
+            if (line.length() < MAX_LINE) line.append((char) c);
+        }
+    }
+
+    /**
+     * Reads a byte.
+     *
+     * @return byte value
+     * @throws IOException error reading stream or end of stream
+     */
+    private int read() throws IOException
+    {
+        if (this.pos == this.limit && !this.fill()) throw new EOFException("Reached end of stream");
+        return this.buf[this.pos++] & 0xFF;
+    }
+
+    /**
+     * Gets the next byte without reading it.
+     *
+     * @return byte value
+     * @throws IOException error reading stream or end of stream
+     */
+    private int peek() throws IOException
+    {
+        if (this.pos == this.limit && !this.fill()) throw new EOFException("Reached end of stream");
+        return this.buf[this.pos] & 0xFF;
+    }
+
+    /**
+     * Refills the buffer once it has been read, first keeping the marked bytes
+     * if scanning a frame.
+     *
+     * @return false if the end of stream was reached
+     * @throws IOException error reading stream
+     */
+    private boolean fill() throws IOException
+    {
+        if (this.mark >= 0)
+        {
+            this.append(this.mark, this.limit - this.mark);
+            this.mark = 0;
+        }
+
+        this.pos = 0;
+        this.limit = 0;
+
+        int r = this.in.read(this.buf);
+        if (r <= 0) return false;
+
+        this.limit = r;
+        return true;
+    }
+
+    /**
+     * Appends bytes of the buffer to the scanned frame.
+     *
+     * @param off offset in buffer
+     * @param len number of bytes
+     * @throws IOException frame exceeds maximum size
+     */
+    private void append(int off, int len) throws IOException
+    {
+        if (this.frameLen + len > this.frame.length)
+        {
+            if (this.frameLen + len > MAX_FRAME) throw new IOException("Frame exceeds maximum size");
+            this.frame = Arrays.copyOf(this.frame, Math.min(MAX_FRAME, Math.max(this.frameLen + len, this.frame.length * 2)));
+        }
+
+        System.arraycopy(this.buf, off, this.frame, this.frameLen, len);
+        this.frameLen += len;
+    }
+
+    /**
+     * Checks the structure of a JPEG image. The image must start with the
+     * start of image marker, its marker segments up to the first scan must
+     * chain by their lengths and include a frame header, and it must end with
+     * the end of image marker, allowing trailing line breaks or padding.
+     *
+     * @param image image bytes
+     * @return true if structurally valid
+     */
+    static boolean isValidJpeg(byte image[])
+    {
+        int len = image.length;
+        while (len > 0 && (image[len - 1] == '\r' || image[len - 1] == '\n' || image[len - 1] == 0)) len--;
+
+        if (len < 4 || image[0] != (byte) 0xFF || image[1] != (byte) 0xD8 ||
+                image[len - 2] != (byte) 0xFF || image[len - 1] != (byte) 0xD9) return false;
+
+        boolean frameHeader = false;
+        int i = 2;
+        while (i + 4 <= len)
+        {
+            if (image[i] != (byte) 0xFF) return false;
+
+            int marker = image[i + 1] & 0xFF;
+            if (marker == 0xFF)
+            {
+                /* Fill byte. */
+                i++;
+                continue;
+            }
+
+            if (marker == 0x01 || marker >= 0xD0 && marker <= 0xD7)
+            {
+                i += 2;
+                continue;
+            }
+
+            int length = (image[i + 2] & 0xFF) << 8 | image[i + 3] & 0xFF;
+            if (length < 2 || i + 2 + length > len) return false;
+
+            if (marker == 0xDA) return frameHeader;
+
+            /* Start of frame markers, excluding DHT, JPG and DAC which share the range. */
+            if (marker >= 0xC0 && marker <= 0xCF && marker != 0xC4 && marker != 0xC8 && marker != 0xCC)
+            {
+                frameHeader = true;
+            }
+
+            i += 2 + length;
+        }
+
+        return false;
+    }
+
+    /**
+     * Headers of a part of the stream.
+     */
+    static class Part
+    {
+        /** Headers keyed by lower case name. */
+        private final Map<String, String> headers;
+
+        Part(Map<String, String> headers)
+        {
+            this.headers = Collections.unmodifiableMap(headers);
+        }
+
+        /**
+         * Gets the content type of the part, which is assumed to be JPEG if
+         * not specified.
+         *
+         * @return content type
+         */
+        String getContentType()
+        {
+            String type = this.headers.get("content-type");
+            return type == null || type.isEmpty() ? "image/jpeg" : type;
+        }
+
+        /**
+         * Checks whether the part is a JPEG image.
+         *
+         * @return true if JPEG
+         */
+        boolean isJpeg()
+        {
+            return this.getContentType().toLowerCase().contains("jpeg");
+        }
+
+        /**
+         * Gets the content length of the part.
+         *
+         * @return content length or -1 if not specified or invalid
+         */
+        int getContentLength()
+        {
+            String length = this.headers.get("content-length");
+            if (length == null) return -1;
+
+            try
+            {
+                int l = Integer.parseInt(length);
+                return l >= 0 ? l : -1;
+            }
+            catch (NumberFormatException e)
+            {
+                return -1;
+            }
+        }
+
+        Map<String, String> getHeaders()
+        {
+            return this.headers;
+        }
+    }
+}
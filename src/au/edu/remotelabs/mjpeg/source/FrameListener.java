@@ -0,0 +1,24 @@
+/**
+ * MJPEG streaming application.
+ * 
+ * @author Michael Diponio <michael.diponio@uts.edu.au>
+ * @date 19th October 2026
+ */
+
+package au.edu.remotelabs.mjpeg.source;
+
+/**
+ * Destination that is notified as frames are read from a source stream, 
+ * instead of waiting for frames.
+ */
+public interface FrameListener
+{
+    /**
+     * Notification that a frame has been read. This is called on the source
+     * reading thread so must not block, any work must be handed off to another
+     * thread.
+     * 
+     * @param frame frame that has been read
+     */
+    void frameReceived(Frame frame);
+}
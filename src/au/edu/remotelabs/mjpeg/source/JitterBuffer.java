@@ -0,0 +1,253 @@
+/**
+ * MJPEG streaming application.
+ *
+ * @author Michael Diponio <michael.diponio@uts.edu.au>
+ * @date 19th October 2026
+ */
+
+package au.edu.remotelabs.mjpeg.source;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * De-jitter stage that smooths bursty frame delivery from a source. Frames
+ * are held in a small buffer and released to the source stream at a steady
+ * interval which is estimated from frame arrival times. The time a frame may
+ * be held is bounded, if frames are held longer than the configured latency
+ * the oldest frames are dropped.
+ */
+public class JitterBuffer implements Runnable
+{
+    /** Stream frames are released to. */
+    private final SourceStream source;
+
+    /** Buffered frames in order of arrival. */
+    private final ArrayDeque<Frame> buffer;
+
+    /** Maximum number of frames to buffer. */
+    private final int capacity;
+
+    /** Maximum time in nanoseconds a frame may be buffered. */
+    private final long latency;
+
+    /** Estimated interval between frames in nanoseconds. */
+    private long interval;
+
+    /** Monotonic time the last frame arrived. */
+    private long lastArrival;
+
+    /** Monotonic time the last frame was released. */
+    private long lastRelease;
+
+    /** Monotonic time the next frame is scheduled to be released. */
+    private long nextRelease;
+
+    /** Smoothed deviation of frame arrival intervals in nanoseconds. */
+    private volatile double inputJitter;
+
+    /** Smoothed deviation of frame release intervals in nanoseconds. */
+    private volatile double outputJitter;
+
+    /** Number of frames dropped because they exceeded the latency bound. */
+    private volatile int dropped;
+
+    /** Thread that releases frames, null if stopped. A thread that is replaced by
+     *  a restart stops, so only one thread releases frames. */
+    private volatile Thread thread;
+
+    /**
+     * Creates a jitter buffer.
+     *
+     * @param source stream to release frames to
+     * @param capacity maximum number of frames to buffer
+     * @param latency maximum time in milliseconds to buffer a frame
+     */
+    public JitterBuffer(SourceStream source, int capacity, int latency)
+    {
+        this.source = source;
+        this.capacity = capacity;
+        this.latency = latency * 1000000L;
+        this.buffer = new ArrayDeque<>(capacity);
+    }
+
+    /**
+     * Starts releasing frames.
+     *
+     * @param name name of stream
+     */
+    public synchronized void start(String name)
+    {
+        this.buffer.clear();
+        this.lastArrival = 0;
+        this.nextRelease = 0;
+
+        this.thread = new Thread(this);
+        this.thread.setName("Jitter buffer: " + name);
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Stops releasing frames, discarding buffered frames.
+     */
+    public void stop()
+    {
+        Thread old;
+        synchronized (this)
+        {
+            if ((old = this.thread) == null) return;
+
+            this.thread = null;
+            this.notifyAll();
+        }
+
+        LockSupport.unpark(old);
+    }
+
+    /**
+     * Adds a frame that has been read to the buffer.
+     *
+     * @param frame frame that was read
+     */
+    public synchronized void offer(Frame frame)
+    {
+        long arrival = frame.getArrivalTime();
+        if (this.lastArrival > 0)
+        {
+            long delta = arrival - this.lastArrival;
+
+            /* The interval estimate is averaged over many frames as bursts make
+             * individual arrival intervals meaningless. */
+            this.interval = this.interval == 0 ? delta : (this.interval * 15 + delta) / 16;
+            this.inputJitter += (Math.abs(delta - this.interval) - this.inputJitter) / 16;
+        }
+        this.lastArrival = arrival;
+
+        if (this.buffer.size() == this.capacity)
+        {
+            this.buffer.poll();
+            this.dropped++;
+        }
+
+        this.buffer.add(frame);
+        this.notifyAll();
+    }
+
+    @Override
+    public void run()
+    {
+        while (!this.isStopped())
+        {
+            long wait;
+            synchronized (this)
+            {
+                try
+                {
+                    while (!this.isStopped() && this.buffer.isEmpty()) this.wait();
+                }
+                catch (InterruptedException e)
+                {
+                    return;
+                }
+
+                if (this.isStopped()) return;
+
+                long now = System.nanoTime();
+
+                /* Enforce the latency bound by dropping frames which have been held
+                 * too long, as long as there is a newer frame to release instead. */
+                while (this.buffer.size() > 1 && now - this.buffer.peek().getArrivalTime() > this.latency)
+                {
+                    this.buffer.poll();
+                    this.dropped++;
+                }
+
+                /* If the buffer ran dry or this is the first frame, the release schedule
+                 * restarts from the current frame. */
+                if (this.nextRelease == 0 || now - this.nextRelease > this.interval) this.nextRelease = now;
+
+                wait = this.nextRelease - now;
+            }
+
+            while (wait > 0 && !this.isStopped())
+            {
+                LockSupport.parkNanos(wait);
+                wait = this.nextRelease - System.nanoTime();
+            }
+
+            Frame frame;
+            synchronized (this)
+            {
+                if (this.isStopped() || (frame = this.buffer.poll()) == null) continue;
+
+                long now = System.nanoTime();
+                if (this.lastRelease > 0)
+                {
+                    this.outputJitter += (Math.abs(now - this.lastRelease - this.interval) - this.outputJitter) / 16;
+                }
+                this.lastRelease = now;
+
+                /* If the buffer is filling, release slightly faster so latency does
+                 * not build up. */
+                this.nextRelease += this.buffer.size() > this.capacity / 2 ? this.interval * 9 / 10 : this.interval;
+
+                frame.setArrivalTime(now);
+            }
+
+            this.source.publish(frame);
+        }
+    }
+
+    /**
+     * Checks whether the calling release thread has been stopped, either by
+     * stopping the buffer or by a restart replacing it.
+     *
+     * @return true if stopped
+     */
+    private boolean isStopped()
+    {
+        return this.thread != Thread.currentThread();
+    }
+
+    /**
+     * Gets the jitter of frames arriving from the source.
+     *
+     * @return jitter in milliseconds
+     */
+    public double getInputJitter()
+    {
+        return this.inputJitter / 1e6;
+    }
+
+    /**
+     * Gets the jitter of frames released from the buffer.
+     *
+     * @return jitter in milliseconds
+     */
+    public double getOutputJitter()
+    {
+        return this.outputJitter / 1e6;
+    }
+
+    /**
+     * Gets the number of frames currently buffered.
+     *
+     * @return number of buffered frames
+     */
+    public synchronized int getBuffered()
+    {
+        return this.buffer.size();
+    }
+
+    /**
+     * Gets the number of frames dropped because the buffer was full or frames
+     * were held longer than the latency bound.
+     *
+     * @return number of dropped frames
+     */
+    public int getDropped()
+    {
+        return this.dropped;
+    }
+}
@@ -0,0 +1,362 @@
+/**
+ * MJPEG streaming application.
+ *
+ * @author Michael Diponio <michael.diponio@uts.edu.au>
+ * @date 19th October 2026
+ */
+
+package au.edu.remotelabs.mjpeg.source;
+
+/**
+ * Metadata of a JPEG image read from its header marker segments without
+ * decoding the image. The frame header (SOF) gives the size and component
+ * layout, the quantization tables (DQT) give an estimate of the encoder
+ * quality, the Huffman tables (DHT) are counted as M-JPEG sources often omit
+ * them, and the restart interval (DRI) is read if defined. Segments are read
+ * up to the first scan.
+ */
+public class JpegInfo
+{
+    /** IJG standard luminance quantization table, which encoders scale by quality. */
+    private static final int STD_LUMINANCE[] = {
+        16,  11,  10,  16,  24,  40,  51,  61,
+        12,  12,  14,  19,  26,  58,  60,  55,
+        14,  13,  16,  24,  40,  57,  69,  56,
+        14,  17,  22,  29,  51,  87,  80,  62,
+        18,  22,  37,  56,  68, 109, 103,  77,
+        24,  35,  55,  64,  81, 104, 113,  92,
+        49,  64,  78,  87, 103, 121, 120, 101,
+        72,  92,  95,  98, 112, 100, 103,  99
+    };
+
+    /** Sum of the standard luminance table. */
+    private static final int STD_LUMINANCE_SUM;
+    static
+    {
+        int sum = 0;
+        for (int q : STD_LUMINANCE) sum += q;
+        STD_LUMINANCE_SUM = sum;
+    }
+
+    /** Maximum number of components recorded. */
+    private static final int MAX_COMPONENTS = 4;
+
+    /** Image width in pixels. */
+    private int width;
+
+    /** Image height in pixels. */
+    private int height;
+
+    /** Sample precision in bits. */
+    private int precision;
+
+    /** Start of frame marker code, which identifies the coding process. */
+    private int frameType;
+
+    /** Number of components. */
+    private int components;
+
+    /** Sampling factors of the first four components, a byte each with the horizontal
+     *  factor in the high nibble and the vertical factor in the low nibble. */
+    private int sampling;
+
+    /** Restart interval in MCUs, 0 if not defined. */
+    private int restartInterval;
+
+    /** Number of Huffman tables defined. */
+    private int huffmanTables;
+
+    /** Number of quantization tables defined. */
+    private int quantTables;
+
+    /** Estimated IJG quality factor from 1 to 100, 0 if unknown. */
+    private int quality;
+
+    private JpegInfo()
+    {
+    }
+
+    /**
+     * Parses the header marker segments of a JPEG image.
+     *
+     * @param jpeg image bytes
+     * @param len number of image bytes
+     * @return metadata or null if the image does not have a valid frame header
+     */
+    public static JpegInfo parse(byte jpeg[], int len)
+    {
+        if (len < 4 || jpeg[0] != (byte) 0xFF || jpeg[1] != (byte) 0xD8) return null;
+
+        JpegInfo info = new JpegInfo();
+        int pos = 2;
+        while (pos + 4 <= len)
+        {
+            /* Not at a marker, the JPEG is not structured as expected. */
+            if (jpeg[pos] != (byte) 0xFF) break;
+
+            int marker = jpeg[pos + 1] & 0xFF;
+            if (marker == 0xFF)
+            {
+                /* Fill byte before marker. */
+                pos++;
+                continue;
+            }
+
+            if (marker == 0x01 || marker >= 0xD0 && marker <= 0xD7)
+            {
+                /* Standalone marker without a segment. */
+                pos += 2;
+                continue;
+            }
+
+            /* Start of scan means entropy coded data follows. */
+            if (marker == 0xDA || marker == 0xD9) break;
+
+            int length = (jpeg[pos + 2] & 0xFF) << 8 | jpeg[pos + 3] & 0xFF;
+            int start = pos + 4, end = pos + 2 + length;
+            if (length < 2 || end > len) break;
+
+            switch (marker)
+            {
+            case 0xC4:
+                info.parseHuffmanTables(jpeg, start, end);
+                break;
+
+            case 0xDB:
+                info.parseQuantTables(jpeg, start, end);
+                break;
+
+            case 0xDD:
+                if (length >= 4) info.restartInterval = (jpeg[start] & 0xFF) << 8 | jpeg[start + 1] & 0xFF;
+                break;
+
+            default:
+                /* Start of frame markers, excluding DHT (C4), JPG (C8) and DAC (CC). */
+                if (marker >= 0xC0 && marker <= 0xCF && marker != 0xC8 && marker != 0xCC && length >= 8)
+                {
+                    info.parseFrameHeader(marker, jpeg, start, end);
+                }
+            }
+
+            pos = end;
+        }
+
+        return info.frameType == 0 ? null : info;
+    }
+
+    /**
+     * Parses a frame header segment. Headers that do not describe every
+     * component, or have a component sampling factor outside 1 to 4, are
+     * ignored so the image does not have a valid frame header.
+     *
+     * @param marker start of frame marker
+     * @param jpeg image bytes
+     * @param start offset of segment contents
+     * @param end offset after segment
+     */
+    private void parseFrameHeader(int marker, byte jpeg[], int start, int end)
+    {
+        int components = jpeg[start + 5] & 0xFF;
+        if (components == 0 || start + 6 + 3 * components > end) return;
+
+        /* Each component is its identifier, sampling factors and quantization table. */
+        int sampling = 0;
+        for (int c = 0, p = start + 6; c < components; c++, p += 3)
+        {
+            int hv = jpeg[p + 1] & 0xFF;
+            if (hv >> 4 < 1 || hv >> 4 > 4 || (hv & 0xF) < 1 || (hv & 0xF) > 4) return;
+            if (c < MAX_COMPONENTS) sampling |= hv << (8 * c);
+        }
+
+        this.frameType = marker;
+        this.precision = jpeg[start] & 0xFF;
+        this.height = (jpeg[start + 1] & 0xFF) << 8 | jpeg[start + 2] & 0xFF;
+        this.width = (jpeg[start + 3] & 0xFF) << 8 | jpeg[start + 4] & 0xFF;
+        this.components = components;
+        this.sampling = sampling;
+    }
+
+    /**
+     * Parses a segment of Huffman tables, counting the tables.
+     *
+     * @param jpeg image bytes
+     * @param start offset of segment contents
+     * @param end offset after segment
+     */
+    private void parseHuffmanTables(byte jpeg[], int start, int end)
+    {
+        /* Each table is its class and identifier, 16 code length counts and the symbols. */
+        int p = start;
+        while (p + 17 <= end)
+        {
+            int symbols = 0;
+            for (int i = 1; i <= 16; i++) symbols += jpeg[p + i] & 0xFF;
+
+            p += 17 + symbols;
+            if (p > end) break;
+            this.huffmanTables++;
+        }
+    }
+
+    /**
+     * Parses a segment of quantization tables. The quality is estimated from
+     * the luminance table (identifier 0) by the inverse of the IJG scaling of
+     * the standard table, using the ratio of the table sums so the zigzag
+     * order of the table does not matter.
+     *
+     * @param jpeg image bytes
+     * @param start offset of segment contents
+     * @param end offset after segment
+     */
+    private void parseQuantTables(byte jpeg[], int start, int end)
+    {
+        int p = start;
+        while (p < end)
+        {
+            int pq = (jpeg[p] & 0xFF) >> 4, tq = jpeg[p] & 0x0F;
+            int size = pq == 0 ? 64 : 128;
+            if (p + 1 + size > end) break;
+
+            if (tq == 0)
+            {
+                long sum = 0;
+                for (int i = 0; i < 64; i++)
+                {
+                    sum += pq == 0 ? jpeg[p + 1 + i] & 0xFF :
+                            (jpeg[p + 1 + 2 * i] & 0xFF) << 8 | jpeg[p + 2 + 2 * i] & 0xFF;
+                }
+
+                double scale = sum * 100.0 / STD_LUMINANCE_SUM;
+                double q = scale <= 100 ? (200 - scale) / 2 : 5000 / scale;
+                this.quality = (int) Math.max(1, Math.min(100, Math.round(q)));
+            }
+
+            this.quantTables++;
+            p += 1 + size;
+        }
+    }
+
+    public int getWidth()
+    {
+        return this.width;
+    }
+
+    public int getHeight()
+    {
+        return this.height;
+    }
+
+    /**
+     * Gets the number of pixels of the image.
+     *
+     * @return width multiplied by height
+     */
+    public int getPixels()
+    {
+        return this.width * this.height;
+    }
+
+    public int getPrecision()
+    {
+        return this.precision;
+    }
+
+    public int getComponents()
+    {
+        return this.components;
+    }
+
+    /**
+     * Checks whether the image is progressively coded.
+     *
+     * @return true if progressive
+     */
+    public boolean isProgressive()
+    {
+        return this.frameType == 0xC2 || this.frameType == 0xC6 || this.frameType == 0xCA || this.frameType == 0xCE;
+    }
+
+    /**
+     * Gets the horizontal sampling factor of a component.
+     *
+     * @param component component index, up to 3
+     * @return sampling factor
+     */
+    public int getHorizontalSampling(int component)
+    {
+        return this.sampling >> (8 * component + 4) & 0x0F;
+    }
+
+    /**
+     * Gets the vertical sampling factor of a component.
+     *
+     * @param component component index, up to 3
+     * @return sampling factor
+     */
+    public int getVerticalSampling(int component)
+    {
+        return this.sampling >> (8 * component) & 0x0F;
+    }
+
+    /**
+     * Gets the chroma subsampling of a YCbCr image in J:a:b notation, such as
+     * '4:2:0'.
+     *
+     * @return subsampling, or null if the image does not have three components
+     */
+    public String getSubsampling()
+    {
+        if (this.components != 3) return null;
+
+        int h = this.getHorizontalSampling(0), v = this.getVerticalSampling(0);
+        int ch = this.getHorizontalSampling(1), cv = this.getVerticalSampling(1);
+        if (h == 0 || ch == 0 || cv == 0) return null;
+
+        int a = 4 * ch / h;
+        return "4:" + a + ':' + (v == cv ? a : 0);
+    }
+
+    public int getRestartInterval()
+    {
+        return this.restartInterval;
+    }
+
+    /**
+     * Checks whether the image defines its Huffman tables. Many M-JPEG sources
+     * omit them, relying on the standard tables.
+     *
+     * @return true if Huffman tables are defined
+     */
+    public boolean hasHuffmanTables()
+    {
+        return this.huffmanTables > 0;
+    }
+
+    public int getHuffmanTables()
+    {
+        return this.huffmanTables;
+    }
+
+    public int getQuantTables()
+    {
+        return this.quantTables;
+    }
+
+    /**
+     * Gets the estimated IJG quality factor the image was encoded with.
+     *
+     * @return quality from 1 to 100, 0 if no luminance quantization table
+     */
+    public int getQuality()
+    {
+        return this.quality;
+    }
+
+    @Override
+    public String toString()
+    {
+        return this.width + "x" + this.height + (this.isProgressive() ? " progressive" : "") +
+                " components " + this.components + (this.components == 3 ? " " + this.getSubsampling() : "") +
+                " quality " + this.quality + (this.restartInterval > 0 ? " restart " + this.restartInterval : "");
+    }
+}
@@ -0,0 +1,164 @@
+/**
+ * MJPEG streaming application.
+ *
+ * @author Michael Diponio <michael.diponio@uts.edu.au>
+ * @date 19th October 2026
+ */
+
+package au.edu.remotelabs.mjpeg.source;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+import au.edu.remotelabs.mjpeg.StreamerConfig.Stream;
+
+/**
+ * Reads the frames of a single connection to a multipart M-JPEG source.
+ */
+class MJpegReader extends SourceReader
+{
+    /** Connection to source, null if not connected. */
+    private volatile HttpURLConnection conn;
+
+    /** The boundary to discriminate between frames in M-Jpeg stream. This may
+     *  be configured but will be overridden if boundary is present in the response
+     *  HTTP header as is typically the case. */
+    private String boundary;
+
+    MJpegReader(Upstream upstream, Stream config, URL url)
+    {
+        super(upstream, config, url);
+
+        String configured = config.formatParams.get("boundary");
+        if (configured != null) this.boundary = configured.startsWith("--") ? configured : "--" + configured;
+    }
+
+    @Override
+    void read() throws IOException
+    {
+        this.lastActivity = System.nanoTime();
+
+        /* Open connection. */
+        HttpURLConnection conn = this.open();
+        this.conn = conn;
+
+        try
+        {
+            /* Make sure the response status does not indicate an error. */
+            if (conn.getResponseCode() != HttpURLConnection.HTTP_OK)
+            {
+                throw new IOException("HTTP response code is " + conn.getResponseCode());
+            }
+
+            /* Read boundary from content type header. */
+            String contentType = conn.getContentType();
+            if (contentType != null)
+            {
+                String boundaryTag = "boundary=";
+                int pos = contentType.indexOf(boundaryTag);
+                if (pos > 0)
+                {
+                    this.boundary = "--" + contentType.substring(pos + boundaryTag.length());
+
+                    /* If there are further contain type information, strip from boundary tag. */
+                    int s = this.boundary.indexOf(';');
+                    if (s > 0) this.boundary = this.boundary.substring(0, s);
+
+                    /* The boundary may be quoted. */
+                    this.boundary = this.boundary.replace("\"", "").trim();
+
+                    this.logger.info("Loaded stream " + this.config.name + " boundary as " + boundary);
+                }
+            }
+
+            if (this.boundary == null) throw new IOException("No frame boundary");
+
+            /* Read loop to acquire M-JPEG frames from source stream. */
+            FrameExtractor extractor = new FrameExtractor(conn.getInputStream());
+            while (!this.upstream.isStopping())
+            {
+                /*
+                 * The M-Jpeg stream format is as follows:
+                 * ---
+                 * <boundary>
+                 * <part headers, usually content-type and content-length>
+                 * [blank line]
+                 * FF D8<buf bytes>
+                 * ...
+                 * ...
+                 * <buf bytes>FF D9
+                 * ---
+                 * where FF D8 and FF D9 are start and buf markers respectively.
+                 */
+
+                FrameExtractor.Part part = extractor.nextPart(this.boundary);
+                if (this.upstream.isStopping()) break;
+
+                /* Frames that are not needed are skipped without being read into memory. */
+                this.lastActivity = System.nanoTime();
+                this.frames++;
+                boolean keep = this.upstream.accept(this);
+
+                byte image[];
+                int size = part.getContentLength();
+                if (size < 0)
+                {
+                    /* Without a content length a JPEG frame ends at its end of image marker, 
+                     * other parts are skipped to the next boundary. */
+                    if (!part.isJpeg()) continue;
+
+                    if (!extractor.scanJpeg(keep))
+                    {
+                        this.logger.info("Received JPEG frame for " + this.config.name + " is not a valid JPEG " +
+                                "image, discarding frame as it may be corrupt.");
+                        continue;
+                    }
+
+                    if (!keep) continue;
+                    image = extractor.takeFrame();
+                }
+                else if (!keep)
+                {
+                    extractor.skip(size);
+                    continue;
+                }
+                else
+                {
+                    image = extractor.readBody(size);
+
+                    /* Validate received frame is correct. */
+                    if (part.isJpeg() && !FrameExtractor.isValidJpeg(image))
+                    {
+                        this.logger.info("Received JPEG frame for " + this.config.name + " is not a valid JPEG " +
+                                "image, discarding frame as it may be corrupt.");
+                        continue;
+                    }
+                }
+
+                this.upstream.ingest(this, part.getContentType(), image);
+            }
+        }
+        catch (IOException e)
+        {
+            /* Errors caused by aborting the connection are reported as the abort reason. */
+            if (this.abortReason != null) throw new IOException(this.abortReason, e);
+            throw e;
+        }
+        finally
+        {
+            /* Finished reading, through clean shutdown or otherwise, close connection. */
+            conn.disconnect();
+            this.conn = null;
+        }
+    }
+
+    @Override
+    void abort(String reason)
+    {
+        super.abort(reason);
+
+        HttpURLConnection c = this.conn;
+        if (c != null) c.disconnect();
+    }
+}
@@ -0,0 +1,285 @@
+/**
+ * MJPEG streaming application.
+ *
+ * @author Michael Diponio <michael.diponio@uts.edu.au>
+ * @date 19th October 2026
+ */
+
+package au.edu.remotelabs.mjpeg.source;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import au.edu.remotelabs.mjpeg.StreamerConfig.Stream;
+
+/**
+ * Reads frames from a source that only serves single JPEG snapshots by
+ * polling it. Snapshots are requested at the rate frames are needed by the
+ * upstream, over kept alive connections. Requests are staggered over several
+ * connections so the latency of one request overlaps the transfer of another,
+ * allowing the polling rate to exceed the inverse of the request latency.
+ * Snapshots with the same bytes as the previous snapshot are not published.
+ */
+class SnapshotReader extends SourceReader
+{
+    /** Number of requests that may be in flight at the same time, each on its own connection. */
+    private static final int PIPELINE_DEPTH = 2;
+
+    /** Rate in snapshots per second the source is polled at if destinations need every
+     *  frame and no maximum frame rate is configured. */
+    private static final int MAX_POLL_RATE = 10;
+
+    /** Connections of requests in flight. */
+    private final Set<HttpURLConnection> conns;
+
+    /** Lock held while scheduling requests and publishing snapshots. */
+    private final Object pollLock;
+
+    /** Monotonic time the next request is due to be sent, 0 if none has been sent. */
+    private long nextPoll;
+
+    /** Send time of the request of the last published snapshot, so responses to
+     *  earlier requests that complete later are discarded. */
+    private long newest;
+
+    /** Whether a snapshot has been published. */
+    private boolean published;
+
+    /** Bytes of the last snapshot. */
+    private byte last[];
+
+    /** Whether polling has finished. */
+    private volatile boolean done;
+
+    /** Error that ended polling, null if none. */
+    private IOException failure;
+
+    SnapshotReader(Upstream upstream, Stream config, URL url)
+    {
+        super(upstream, config, url);
+
+        this.conns = ConcurrentHashMap.newKeySet();
+        this.pollLock = new Object();
+    }
+
+    @Override
+    void read() throws IOException
+    {
+        this.lastActivity = System.nanoTime();
+
+        /* Each poller sends its requests on its own kept alive connection. */
+        List<Thread> pollers = new ArrayList<>(PIPELINE_DEPTH - 1);
+        for (int i = 1; i < PIPELINE_DEPTH; i++)
+        {
+            Thread th = new Thread(this::poll, Thread.currentThread().getName() + " poller " + i);
+            th.setDaemon(true);
+            th.start();
+            pollers.add(th);
+        }
+
+        this.poll();
+        this.finish();
+
+        for (Thread th : pollers)
+        {
+            try
+            {
+                th.join();
+            }
+            catch (InterruptedException e)
+            {
+                break;
+            }
+        }
+
+        synchronized (this.pollLock)
+        {
+            /* Errors caused by aborting the connection are reported as the abort reason. */
+            if (this.abortReason != null) throw new IOException(this.abortReason, this.failure);
+            if (this.failure != null) throw this.failure;
+        }
+    }
+
+    /**
+     * Polls the source until stopping or a request fails.
+     */
+    private void poll()
+    {
+        try
+        {
+            while (!this.upstream.isStopping())
+            {
+                long sent = this.schedule();
+                if (this.done) break;
+
+                byte image[] = this.fetch();
+                this.received(sent, image);
+            }
+        }
+        catch (IOException e)
+        {
+            synchronized (this.pollLock)
+            {
+                if (this.failure == null) this.failure = e;
+            }
+            this.finish();
+        }
+    }
+
+    /**
+     * Waits until the next request is due. Requests are spaced by the interval
+     * of the rate frames are needed at, whichever poller sends them.
+     *
+     * @return monotonic time the request is sent
+     */
+    private long schedule()
+    {
+        int rate = this.upstream.getIngestRate();
+        long interval = 1000000000L / (rate == Integer.MAX_VALUE ? MAX_POLL_RATE : rate);
+
+        synchronized (this.pollLock)
+        {
+            long now = System.nanoTime();
+            long due = this.nextPoll == 0 || now - this.nextPoll > 0 ? now : this.nextPoll;
+            this.nextPoll = due + interval;
+
+            try
+            {
+                long wait;
+                while (!this.done && (wait = due - System.nanoTime()) > 0)
+                {
+                    this.pollLock.wait(wait / 1000000, (int) (wait % 1000000));
+                }
+            }
+            catch (InterruptedException e)
+            {
+                this.done = true;
+            }
+
+            return due;
+        }
+    }
+
+    /**
+     * Requests a snapshot. The response is read completely so the connection
+     * is kept alive for the next request.
+     *
+     * @return snapshot bytes
+     * @throws IOException error requesting snapshot
+     */
+    private byte[] fetch() throws IOException
+    {
+        HttpURLConnection conn = this.open();
+        this.conns.add(conn);
+
+        try
+        {
+            if (this.done) throw new IOException("Stopped");
+
+            if (conn.getResponseCode() != HttpURLConnection.HTTP_OK)
+            {
+                throw new IOException("HTTP response code is " + conn.getResponseCode());
+            }
+
+            /* The length is sent by the camera so is bounded like frames read from a stream. */
+            int length = conn.getContentLength();
+            if (length > FrameExtractor.MAX_FRAME) throw new IOException("Snapshot exceeds maximum size");
+
+            try (InputStream in = conn.getInputStream())
+            {
+                if (length < 0)
+                {
+                    ByteArrayOutputStream out = new ByteArrayOutputStream();
+                    byte buf[] = new byte[8192];
+                    int r;
+                    while ((r = in.read(buf)) > 0)
+                    {
+                        if (out.size() + r > FrameExtractor.MAX_FRAME) throw new IOException("Snapshot exceeds maximum size");
+                        out.write(buf, 0, r);
+                    }
+                    return out.toByteArray();
+                }
+
+                byte image[] = new byte[length];
+                int r, read = 0;
+                while (read < length && (r = in.read(image, read, length - read)) > 0) read += r;
+
+                if (read != length)
+                {
+                    this.logger.warning("Failed to fully read snapshot for stream " + this.config.name +
+                            ", read " + read + " of " + length + " bytes.");
+                    throw new IOException("Failed to read snapshot bytes");
+                }
+                return image;
+            }
+        }
+        finally
+        {
+            this.conns.remove(conn);
+        }
+    }
+
+    /**
+     * Publishes a snapshot unless a later snapshot has already been published
+     * or the snapshot is unchanged.
+     *
+     * @param sent time the request for the snapshot was sent
+     * @param image snapshot bytes
+     */
+    private void received(long sent, byte image[])
+    {
+        synchronized (this.pollLock)
+        {
+            this.lastActivity = System.nanoTime();
+            this.frames++;
+
+            if (this.done || this.published && sent - this.newest < 0) return;
+
+            if (!FrameExtractor.isValidJpeg(image))
+            {
+                this.logger.info("Received snapshot for " + this.config.name + " is not a valid JPEG image, " +
+                        "discarding snapshot as it may be corrupt.");
+                return;
+            }
+
+            this.newest = sent;
+            this.published = true;
+
+            /* Unchanged snapshots are still accepted so the upstream knows the source is
+             * delivering. */
+            boolean unchanged = Arrays.equals(image, this.last);
+            this.last = image;
+
+            if (this.upstream.accept(this) && !unchanged) this.upstream.ingest(this, "image/jpeg", image);
+        }
+    }
+
+    /**
+     * Finishes polling, failing requests in flight.
+     */
+    private void finish()
+    {
+        this.done = true;
+        for (HttpURLConnection conn : this.conns) conn.disconnect();
+
+        synchronized (this.pollLock)
+        {
+            this.pollLock.notifyAll();
+        }
+    }
+
+    @Override
+    void abort(String reason)
+    {
+        super.abort(reason);
+        this.finish();
+    }
+}
@@ -0,0 +1,362 @@
+/**
+ * MJPEG streaming application.
+ *
+ * @author Michael Diponio <michael.diponio@uts.edu.au>
+ * @date 19th October 2026
+ */
+
+package au.edu.remotelabs.mjpeg.source;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.logging.Logger;
+
+import au.edu.remotelabs.mjpeg.StreamerConfig.Stream;
+
+/**
+ * A path to read a source, which is a source URL and the equivalent URLs that
+ * are failed over to if it fails. The path is supervised so failed or stalled
+ * connections are reconnected with a jittered exponential backoff. An upstream
+ * may read several paths at the same time.
+ */
+class SourcePath implements Runnable
+{
+    /** Initial time in milliseconds to wait before reconnecting a failed source. */
+    private static final long INITIAL_BACKOFF = 500;
+
+    /** Maximum time in milliseconds to wait before reconnecting a failed source. */
+    private static final long MAX_BACKOFF = 30000;
+
+    /** Minimum time in milliseconds without a frame before a source is considered stalled. */
+    private static final long MIN_STALL = 2000;
+
+    /** Number of frame intervals without a frame before a source is considered stalled. */
+    private static final int STALL_INTERVALS = 3;
+
+    /** Number of frame interval deviations added to the stall timeout. */
+    private static final int STALL_DEVIATIONS = 8;
+
+    /** Upstream the path is read for. */
+    private final Upstream upstream;
+
+    /** Stream configuration. */
+    private final Stream config;
+
+    /** Index of the path in the stream. */
+    private final int index;
+
+    /** Source URLs in order of preference. */
+    private final List<URL> sources;
+
+    /** Reader of the current connection, null if not connected. */
+    private volatile SourceReader reader;
+
+    /** Lock waited on between reconnection attempts. */
+    private final Object retryLock;
+
+    /** Moving average of the interval between frames read in nanoseconds, measured
+     *  within each connection, or 0 if not yet known. */
+    private volatile long arrivalInterval;
+
+    /** Moving mean deviation of the interval between frames read in nanoseconds. */
+    private volatile long arrivalDeviation;
+
+    /** Arrival time of the last frame read on the current connection, 0 if none. */
+    private long lastArrival;
+
+    /** Whether the last connection failed and a new connection has not yet read a frame. */
+    private volatile boolean reconnecting;
+
+    /** Whether the path has failed more times in succession than the configured retries. */
+    private volatile boolean failed;
+
+    /** Whether the path is no longer read, such as when switching profiles. */
+    private volatile boolean retired;
+
+    /** Number of times the path has been reconnected after failing. */
+    private volatile int reconnects;
+
+    /** Number of frames read. */
+    private volatile long frames;
+
+    /** Number of frames read before any other path. */
+    private volatile long wins;
+
+    /** Total time in nanoseconds frames were read after the first path read them. */
+    private volatile long lag;
+
+    /** Logger. */
+    private final Logger logger;
+
+    SourcePath(Upstream upstream, Stream config, int index, List<URL> sources)
+    {
+        this.upstream = upstream;
+        this.config = config;
+        this.index = index;
+        this.sources = sources;
+        this.retryLock = new Object();
+        this.logger = Logger.getLogger(getClass().getName());
+    }
+
+    @Override
+    public void run()
+    {
+        int current = 0, failures = 0;
+
+        while (!this.isStopping())
+        {
+            SourceReader reader = SourceReader.create(this.upstream, this.config, this.sources.get(current));
+            this.lastArrival = 0;
+            this.reader = reader;
+
+            /* Stopping may have missed the reader if it was not yet set. */
+            if (this.isStopping())
+            {
+                this.reader = null;
+                break;
+            }
+
+            try
+            {
+                reader.read();
+            }
+            catch (IOException e)
+            {
+                if (this.retired) break;
+
+                this.logger.warning("Error reading source stream " + this.config.name + " from " +
+                        reader.getURL() + ", error " + e.getClass().getSimpleName() + ": " + e.getMessage());
+                this.upstream.setErrorReason("Error reading stream " + this.config.name + ", error " +
+                        e.getClass().getSimpleName() + ": " + e.getMessage());
+            }
+            finally
+            {
+                this.reader = null;
+            }
+
+            if (this.isStopping()) break;
+
+            /* A connection that delivered frames was working so backoff starts again. */
+            if (reader.getFrames() > 0) failures = 0;
+            failures++;
+            this.reconnects++;
+            this.reconnecting = true;
+
+            if (this.config.retries > 0 && failures == this.config.retries)
+            {
+                this.logger.warning("Source stream " + this.config.name + " has failed " + failures +
+                        " times reading from " + reader.getURL() + ".");
+                this.failed = true;
+                this.upstream.pathFailed();
+            }
+
+            /* Fail over to the next equivalent source if there is one. */
+            current = (current + 1) % this.sources.size();
+
+            /* Backoff is jittered so many streams from a failed camera server do not
+             * reconnect in lock step. */
+            long backoff = Math.min(MAX_BACKOFF, INITIAL_BACKOFF << Math.min(failures - 1, 16));
+            backoff = backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+
+            synchronized (this.retryLock)
+            {
+                try
+                {
+                    if (!this.isStopping()) this.retryLock.wait(backoff);
+                }
+                catch (InterruptedException e)
+                {
+                    break;
+                }
+            }
+        }
+
+        this.reconnecting = false;
+    }
+
+    /**
+     * Records the arrival of a frame read on this path. Inter-arrival statistics
+     * are measured within a connection so the gap of reconnecting is not counted.
+     * The deviation is a moving mean deviation.
+     *
+     * @param arrival monotonic time the frame was read
+     * @return true if the path has recovered from failing
+     */
+    boolean arrived(long arrival)
+    {
+        if (this.lastArrival > 0)
+        {
+            long interval = arrival - this.lastArrival;
+            if (this.arrivalInterval == 0)
+            {
+                this.arrivalInterval = interval;
+                this.arrivalDeviation = interval / 2;
+            }
+            else
+            {
+                this.arrivalDeviation = (this.arrivalDeviation * 3 + Math.abs(interval - this.arrivalInterval)) / 4;
+                this.arrivalInterval = (this.arrivalInterval * 7 + interval) / 8;
+            }
+        }
+        this.lastArrival = arrival;
+        this.frames++;
+
+        boolean recovered = this.reconnecting || this.failed;
+        this.reconnecting = false;
+        this.failed = false;
+        return recovered;
+    }
+
+    /**
+     * Records whether a frame read on this path was read before other paths.
+     *
+     * @param lag time in nanoseconds the frame was read after the first path, 0 if first
+     */
+    void delivered(long lag)
+    {
+        if (lag == 0)
+        {
+            this.wins++;
+        }
+        else
+        {
+            this.lag += lag;
+        }
+    }
+
+    /**
+     * Aborts the connection if the source has stalled.
+     */
+    void checkStall()
+    {
+        SourceReader r = this.reader;
+        if (r == null) return;
+
+        long idle = (System.nanoTime() - r.getLastActivity()) / 1000000;
+        if (idle > this.getStallTimeout())
+        {
+            this.logger.warning("Source stream " + this.config.name + " has stalled reading from " + r.getURL() +
+                    ", no frame received in " + idle + " ms.");
+            r.abort("Stalled, no frame received in " + idle + " ms");
+        }
+    }
+
+    /**
+     * Gets the time without a frame after which a connection is considered
+     * stalled. Until the frame rate is known, this is the configured read
+     * timeout, otherwise it is well beyond the expected variation in the frame
+     * interval.
+     *
+     * @return timeout in milliseconds
+     */
+    long getStallTimeout()
+    {
+        SourceReader r = this.reader;
+        if (r == null || r.getFrames() < 2 || this.arrivalInterval == 0) return this.config.readTimeout;
+
+        long expected = (STALL_INTERVALS * this.arrivalInterval + STALL_DEVIATIONS * this.arrivalDeviation) / 1000000;
+        return Math.min(this.config.readTimeout, Math.max(MIN_STALL, expected));
+    }
+
+    /**
+     * Stops reading the path while the upstream continues reading other paths.
+     */
+    void retire()
+    {
+        this.retired = true;
+        this.wake();
+    }
+
+    /**
+     * Checks whether the path has been retired.
+     *
+     * @return true if retired
+     */
+    boolean isRetired()
+    {
+        return this.retired;
+    }
+
+    /**
+     * Checks whether reading the path is stopping.
+     *
+     * @return true if stopping
+     */
+    private boolean isStopping()
+    {
+        return this.retired || this.upstream.isStopping();
+    }
+
+    /**
+     * Wakes the path if it is waiting to reconnect or blocked reading, so it
+     * can stop.
+     */
+    void wake()
+    {
+        synchronized (this.retryLock)
+        {
+            this.retryLock.notifyAll();
+        }
+
+        SourceReader r = this.reader;
+        if (r != null) r.abort("Stopped");
+    }
+
+    /**
+     * Checks whether a reader is the reader of this path.
+     *
+     * @param r reader
+     * @return true if reading this path
+     */
+    boolean isReading(SourceReader r)
+    {
+        return this.reader == r;
+    }
+
+    int getIndex()
+    {
+        return this.index;
+    }
+
+    boolean isReconnecting()
+    {
+        return this.reconnecting;
+    }
+
+    boolean isFailed()
+    {
+        return this.failed;
+    }
+
+    int getReconnects()
+    {
+        return this.reconnects;
+    }
+
+    long getArrivalInterval()
+    {
+        return this.arrivalInterval;
+    }
+
+    long getArrivalDeviation()
+    {
+        return this.arrivalDeviation;
+    }
+
+    long getFrames()
+    {
+        return this.frames;
+    }
+
+    long getWins()
+    {
+        return this.wins;
+    }
+
+    long getLag()
+    {
+        return this.lag;
+    }
+}
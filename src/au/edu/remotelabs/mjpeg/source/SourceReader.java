@@ -0,0 +1,171 @@
+/**
+ * MJPEG streaming application.
+ *
+ * @author Michael Diponio <michael.diponio@uts.edu.au>
+ * @date 19th October 2026
+ */
+
+package au.edu.remotelabs.mjpeg.source;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Base64;
+import java.util.logging.Logger;
+
+import au.edu.remotelabs.mjpeg.StreamerConfig.Stream;
+
+/**
+ * Reads the frames of a source for a path. Reading ends with an exception
+ * when the connection fails, the source format is not understood or the
+ * reader is aborted, so its path can decide whether to reconnect.
+ */
+public abstract class SourceReader
+{
+    /** Time in milliseconds to wait to connect to the source. */
+    protected static final int CONNECT_TIMEOUT = 1000;
+
+    /** Upstream frames are read for. */
+    protected final Upstream upstream;
+
+    /** Stream configuration. */
+    protected final Stream config;
+
+    /** URL being read. */
+    protected final URL url;
+
+    /** Reason reading was aborted, null if not aborted. */
+    protected volatile String abortReason;
+
+    /** Monotonic time the connection was opened or a frame was last read. */
+    protected volatile long lastActivity;
+
+    /** Number of frames read. */
+    protected volatile int frames;
+
+    /** Logger. */
+    protected final Logger logger;
+
+    protected SourceReader(Upstream upstream, Stream config, URL url)
+    {
+        this.upstream = upstream;
+        this.config = config;
+        this.url = url;
+        this.logger = Logger.getLogger(getClass().getName());
+    }
+
+    /**
+     * Creates a reader for the type of source.
+     *
+     * @param upstream upstream frames are read for
+     * @param config stream configuration
+     * @param url URL to read
+     * @return reader
+     */
+    static SourceReader create(Upstream upstream, Stream config, URL url)
+    {
+        switch (config.sourceType)
+        {
+        case SNAPSHOT:
+            return new SnapshotReader(upstream, config, url);
+
+        case MJPEG:
+            /* Falls through. */
+        default:
+            return new MJpegReader(upstream, config, url);
+        }
+    }
+
+    /**
+     * Reads frames until the stream is stopped.
+     *
+     * @throws IOException error reading source or reading aborted
+     */
+    abstract void read() throws IOException;
+
+    /**
+     * Aborts reading by closing the connection, which causes a blocked read
+     * to fail.
+     *
+     * @param reason reason for aborting
+     */
+    void abort(String reason)
+    {
+        this.abortReason = reason;
+    }
+
+    /**
+     * Opens a connection to the source with the configured timeouts and
+     * authentication.
+     *
+     * @return connection
+     * @throws IOException error opening connection
+     */
+    protected HttpURLConnection open() throws IOException
+    {
+        HttpURLConnection conn = (HttpURLConnection) this.url.openConnection();
+
+        /* The timeouts ensure that we don't indefinitely block destinations because the
+         * source is not currently available. Shorter stalls are detected by the stream. */
+        conn.setConnectTimeout(CONNECT_TIMEOUT);
+        conn.setReadTimeout(this.config.readTimeout);
+
+        /* If authentication is configured, add authentication headers to request. */
+        switch (this.config.authType)
+        {
+        case BASIC:
+            this.addBasicAuth(conn);
+            break;
+
+        case NONE:
+            /* Falls through. */
+        default:
+            /* No authentication is required. */
+        }
+
+        return conn;
+    }
+
+    /**
+     * Adds basic authentication header to camera connection.
+     *
+     * @param conn connection to camera
+     */
+    private void addBasicAuth(HttpURLConnection conn)
+    {
+        String encoded = Base64.getMimeEncoder().encodeToString((
+                this.config.authParams.get("username") + ':' + this.config.authParams.get("password")).getBytes());
+
+        conn.addRequestProperty("Authorization", "Basic " + encoded);
+    }
+
+    /**
+     * Gets the URL being read.
+     *
+     * @return source URL
+     */
+    public URL getURL()
+    {
+        return this.url;
+    }
+
+    /**
+     * Gets the time the connection was opened or a frame was last read.
+     *
+     * @return monotonic time
+     */
+    long getLastActivity()
+    {
+        return this.lastActivity;
+    }
+
+    /**
+     * Gets the number of frames read from this connection.
+     *
+     * @return number of frames
+     */
+    int getFrames()
+    {
+        return this.frames;
+    }
+}
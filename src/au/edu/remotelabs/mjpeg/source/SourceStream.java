@@ -7,60 +7,152 @@
 
 package au.edu.remotelabs.mjpeg.source;
 
-import java.io.BufferedInputStream;
-import java.io.IOException;
-import java.net.HttpURLConnection;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Base64;
 import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
 
 import au.edu.remotelabs.mjpeg.StreamerConfig.Stream;
 
 /**
- * Decomposes a M-JPEG stream down to its frames.
+ * Decomposes a M-JPEG stream down to its frames. The frames are read by an
+ * upstream which may be shared with other streams reading the same source.
  */
-public class SourceStream implements Runnable
+public class SourceStream
 {
+    /** Number of recently read frames that are retained. */
+    public static final int HISTORY = 32;
+    
+    /** Interval in milliseconds viewer arrivals are predicted at to prewarm the source. */
+    private static final long PREDICT_INTERVAL = 60000;
+    
+    /** Stops idle streams after they linger and predicts viewer arrivals, shared by all streams. */
+    private static final ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor(
+            (Runnable r) -> {
+                Thread th = new Thread(r, "Source scheduler");
+                th.setDaemon(true);
+                return th;
+            });
+    
     /** Stream configuration. */
     private final Stream config;
     
     /** Latest frame that has been read. */
     private Frame frame;
     
-    /** The boundary to discriminate between frames in M-Jpeg stream. This may
-     *  be configured but will be overridden if boundary is present in the response
-     *  HTTP header as is typically the case. */
-    private String boundary;
+    /** Recently read frames, indexed by sequence number modulo the history length. */
+    private final Frame history[];
     
-    /** Whether an error has occurred accessing the stream. */
-    private boolean error;
+    /** Sequence number of the next frame read. This continues across restarts
+     *  of reading so sequence numbers are never reused. */
+    private int sequence;
     
-    /** Whether this stream has been disabled. */
-    private volatile boolean disabled;
+    /** Estimated interval between frames in nanoseconds, or 0 if not yet known. */
+    private volatile long frameInterval;
     
-    /** The last error that occurred. */
-    private String errorReason;
+    /** Upstream that reads the source. */
+    private final Upstream upstream;
     
-    /** Thread which reads the stream. */
-    private Thread readThread;
+    /** Whether this stream is attached to the upstream to receive frames. */
+    private volatile boolean attached;
+    
+    /** Whether this stream has been disabled. */
+    private volatile boolean disabled;
     
     /** Whether to stop reading. */
-    private boolean stop;
+    private volatile boolean stop;
 
     /** List of destination streams that provides M-JPEG streams to clients. */
     private final List<Object> destinations;
     
+    /** Frame size and rate needed by each destination. */
+    private final Map<Object, Demand> demands;
+    
+    /** Combined frame size and rate needed by all destinations. */
+    private volatile Demand demand;
+    
+    /** Destinations that are notified as frames are read. */
+    private final List<FrameListener> listeners;
+    
+    /** Stage to smooth bursty frame delivery, null if not de-jittering. */
+    private final JitterBuffer jitter;
+    
+    /** Stage to suppress duplicate frames, null if not suppressing duplicates. */
+    private final FrameDeduplicator dedupe;
+    
+    /** Pending stop of an on demand stream without destinations, null if none. */
+    private volatile ScheduledFuture<?> idleStop;
+    
+    /** Monotonic time in nanoseconds of the pending stop. */
+    private long idleStopAt;
+    
+    /** Monotonic time in nanoseconds until which the source is read because it 
+     *  was prewarmed. */
+    private long prewarmUntil;
+    
+    /** Viewer arrival pattern to predict when to prewarm the source, null if not 
+     *  prewarming from past arrivals. */
+    private final AccessHistory arrivals;
+    
+    /** Periodic prediction of viewer arrivals, null if not prewarming from past arrivals. */
+    private final ScheduledFuture<?> predictor;
+    
+    /** Monotonic time in nanoseconds reading was last started. */
+    private volatile long startTime;
+    
+    /** Whether the first frame since reading was last started has not been published. */
+    private volatile boolean awaitingFirst;
+    
+    /** Time in nanoseconds from reading last started to its first frame, 0 if not known. */
+    private volatile long firstFrameLatency;
+    
+    /** Number of times reading was started. */
+    private volatile int coldStarts;
+    
+    /** Number of times the first destination registered while the source was already 
+     *  read, such as when lingering or prewarmed. */
+    private volatile int warmJoins;
+    
+    /** Number of times reading was started by a prewarm. */
+    private volatile int prewarms;
+    
     /** Logger. */
     private final Logger logger;
     
     public SourceStream(Stream config)
+    {
+        this(config, new Upstream(config));
+    }
+    
+    public SourceStream(Stream config, Upstream upstream)
     {
         this.config = config;
         this.logger = Logger.getLogger(getClass().getName());
+        this.history = new Frame[HISTORY];
+        this.upstream = upstream;
+        this.upstream.share(this);
+        
+        this.jitter = this.config.jitterFrames > 0 ? 
+                new JitterBuffer(this, this.config.jitterFrames, this.config.jitterLatency) : null;
+        this.dedupe = this.config.dedupe ? 
+                new FrameDeduplicator(this.config.dedupeThreshold, this.config.dedupeKeepalive) : null;
+        this.prewarmUntil = System.nanoTime();
         
+        this.destinations = Collections.synchronizedList(new ArrayList<Object>());
+        this.listeners = new CopyOnWriteArrayList<>();
+        this.demands = new IdentityHashMap<>();
+        this.demand = Demand.NONE;
+        
+        /* Reading starts after the destination lists are created as frames are published to them. */
         if (!this.config.ondemand)
         {
             this.logger.info("Stream " + this.config.name + " is configured to continuously stream, attempting " +
@@ -68,7 +160,17 @@ public class SourceStream implements Runnable
             this.start();
         }
         
-        this.destinations = Collections.synchronizedList(new ArrayList<Object>());
+        if (this.config.prewarm && this.config.ondemand)
+        {
+            this.arrivals = new AccessHistory();
+            this.predictor = SCHEDULER.scheduleAtFixedRate(this::predict, PREDICT_INTERVAL, PREDICT_INTERVAL, 
+                    TimeUnit.MILLISECONDS);
+        }
+        else
+        {
+            this.arrivals = null;
+            this.predictor = null;
+        }
     }
     
     /**
@@ -100,19 +202,41 @@ public class SourceStream implements Runnable
                 if (this.destinations.size() > 0)
                 {
                     this.destinations.clear();
+                    this.listeners.clear();
+                    this.demands.clear();
+                    this.updateDemand();
                     if (this.isReading()) this.stop();
                 }
+                else if (this.idleStop != null)
+                {
+                    /* A lingering or prewarmed stream is not left reading. */
+                    this.cancelIdleStop();
+                    this.stop();
+                }
             }
         }
     }
     
     /**
-     * Register to receive frames when acquired from this stream source.
+     * Register to receive frames when acquired from this stream source. The
+     * destination needs the full source frame size and rate.
      * 
      * @param output the destination output being registered
      * @return whether successfully registered
      */
     public boolean register(Object output)
+    {
+        return this.register(output, Demand.FULL);
+    }
+    
+    /**
+     * Register to receive frames when acquired from this stream source.
+     * 
+     * @param output the destination output being registered
+     * @param demand frame size and rate needed by the destination
+     * @return whether successfully registered
+     */
+    public boolean register(Object output, Demand demand)
     {
         if (this.disabled) return false;
         
@@ -121,364 +245,421 @@ public class SourceStream implements Runnable
             if (this.disabled) return false;
             
             /* If not actively reading from the stream, spool up connection. */
+            boolean idle = this.destinations.isEmpty();
             this.destinations.add(output);
-            if (!this.isReading()) this.start();        
+            if (output instanceof FrameListener) this.listeners.add((FrameListener) output);
+            this.demands.put(output, demand);
+            this.updateDemand();
+            this.cancelIdleStop();
+            if (this.arrivals != null) this.arrivals.recordArrival(System.currentTimeMillis());
+            
+            if (!this.isReading()) this.start();
+            else if (idle) this.warmJoins++;
         }
         
         return true;
     }
     
     /**
-     * Unregister from receiving frames.
+     * Changes the frame size and rate needed by a registered destination, such
+     * as when its transforms change.
      * 
-     * @param output the destination output being unregistered
+     * @param output registered destination output
+     * @param demand frame size and rate needed by the destination
      */
-    public void unregister(Object output)
+    public void setDemand(Object output, Demand demand)
     {
         synchronized (this.destinations)
         {
-            this.destinations.remove(output);
-            if (this.destinations.size() == 0 && this.config.ondemand) this.stop();
+            if (this.demands.containsKey(output))
+            {
+                this.demands.put(output, demand);
+                this.updateDemand();
+            }
         }
     }
     
     /**
-     * Blocking call to get the next frame when it is read from the source
-     * stream. If an error has occurred, null will be returned.
+     * Combines the demands of destinations and notifies the upstream so it can
+     * read a source profile that satisfies them. Must be called holding the
+     * destinations lock.
+     */
+    private void updateDemand()
+    {
+        Demand combined = Demand.NONE;
+        for (Demand d : this.demands.values())
+        {
+            combined = combined.max(d);
+        }
+        
+        if (!combined.equals(this.demand))
+        {
+            this.demand = combined;
+            this.upstream.demandChanged();
+        }
+    }
+    
+    /**
+     * Unregister from receiving frames.
      * 
-     * @return next frame that is read
+     * @param output the destination output being unregistered
      */
-    public Frame nextFrame()
+    public void unregister(Object output)
     {
-        synchronized (this)
+        synchronized (this.destinations)
         {
-            try
+            this.destinations.remove(output);
+            this.listeners.remove(output);
+            this.demands.remove(output);
+            this.updateDemand();
+            if (this.destinations.size() == 0 && this.config.ondemand && this.attached)
             {
-                this.wait();
+                /* The source lingers in case a viewer returns, such as on a page refresh. */
+                long linger = System.nanoTime() + this.config.linger * 1000000L;
+                this.scheduleStop(linger - this.prewarmUntil > 0 ? linger : this.prewarmUntil);
             }
-            catch (InterruptedException e)
-            {  }
         }
-
-        return this.error || this.stop ? null : this.frame;
     }
     
     /**
-     * Starts the thread that reads the source stream.
+     * Starts reading the source of an on demand stream before viewers arrive, 
+     * so they do not wait for the source to connect. The source is read for 
+     * at least the specified duration, and longer if viewers arrive.
+     * 
+     * @param duration time in milliseconds to read the source without viewers
+     * @return whether the stream can be read
      */
-    private void start()
-    {
-        this.readThread = new Thread(this);
-        this.readThread.setName("Stream: " + this.config.name);
-        this.readThread.start();
-    }
-
-    @Override
-    public void run()
+    public boolean prewarm(long duration)
     {
-        this.stop = false;
-        this.error = false;
-        this.errorReason = null;
-        int sequence = 0;
-
-        try
+        synchronized (this.destinations)
         {
-            this.logger.fine("Starting stream reading for " + this.config.name);
-            
-            /* Open connection. */
-            HttpURLConnection conn = (HttpURLConnection) this.config.source.openConnection();
-            
-            /* The timeout ensure that we don't indefinitely block destinations because the
-             * source is not currently available. */
-            conn.setConnectTimeout(1000);
-            
-            /* If authentication is configured, add authentication headers to request. */
-            switch (this.config.authType)
-            {
-            case BASIC:
-                if (!this.addBasicAuth(conn)) return;
-                break;
-                
-            case NONE:
-                /* Falls through. */
-            default:
-                /* No authentication is required. */
-            }
+            if (this.disabled) return false;
+            if (!this.config.ondemand) return true;
             
-            /* Make sure the response status does not indicate an error. */
-            if (conn.getResponseCode() != HttpURLConnection.HTTP_OK)
-            {
-                this.logger.warning("Failed to read camera M-JPEG stream, response code is " + conn.getResponseCode());
-                this.error = true;
-                this.errorReason = "HTTP response code is " + conn.getResponseCode();
-                return;
-            }
+            long until = System.nanoTime() + duration * 1000000;
+            if (until - this.prewarmUntil > 0) this.prewarmUntil = until;
             
-            /* Read boundary from content type header. */
-            String contentType = conn.getContentType();
-            if (contentType != null)
+            if (!this.isReading())
             {
-                String boundaryTag = "boundary=";
-                int pos = contentType.indexOf(boundaryTag);
-                if (pos > 0)
-                {
-                    this.boundary = "--" + contentType.substring(pos + boundaryTag.length());
-                    
-                    /* If there are further contain type information, strip from boundary tag. */
-                    int s = this.boundary.indexOf(';');
-                    if (s > 0) this.boundary = this.boundary.substring(0, s);
-                    
-                    this.logger.info("Loaded stream " + this.config.name + " boundary as " + boundary);
-                }
+                this.logger.info("Prewarming stream " + this.config.name + " for " + duration + " ms.");
+                this.prewarms++;
+                this.start();
             }
             
-            /* Read loop to acquire M-JPEG frames from source stream. */
-            BufferedInputStream in = new BufferedInputStream(conn.getInputStream());
-            while (!this.stop)
+            if (this.destinations.isEmpty()) this.scheduleStop(this.prewarmUntil);
+            return true;
+        }
+    }
+    
+    /**
+     * Prewarms the source if viewers are expected soon from the arrival history.
+     * Errors are logged rather than thrown as an exception cancels the periodic
+     * prediction.
+     */
+    private void predict()
+    {
+        try
+        {
+            if (this.arrivals.isExpected(System.currentTimeMillis() + this.config.prewarmLead))
             {
-                /*
-                 * The M-Jpeg stream format is as follows:
-                 * ---
-                 * <boundary>
-                 * content-type: <MIME>
-                 * content-length: <length>
-                 * [blank line]
-                 * FF D8<buf bytes>
-                 * ...
-                 * ...
-                 * <buf bytes>FF D9
-                 * ---
-                 * where FF D8 and FF D9 are start and buf markers respectively.
-                 */
-                
-                if (!this.skipToNextFrame(in)) break;
-                
-                String mime = this.readContentType(in);
-                if (mime == null) break;
-                
-                int size = this.readContentLength(in);
-                if (size < 0) break;
-                
-                /* An addition blank line. */
-                this.readStreamLine(in);
-                
-                /* Read buf bytes. */
-                byte image[] = new byte[size];
-                int r, read = 0;
-                
-                while (read < size && (r = in.read(image, read, size - read)) > 0)
-                {
-                    read += r;
-                    if (this.stop) break;
-                }
-                
-                if (size != read)
-                {
-                    this.logger.warning("Failed to fully read buf bytes for stream " + this.config.name + 
-                            ", read " + read + " of " + size + " bytes.");
-                    this.error = true;
-                    this.errorReason = "Failed to read buf bytes";
-                    break;
-                }
-                
-                /* Validate received frame is correct. */
-                if (mime.equalsIgnoreCase("jpeg") &&
-                    !(image[0] == 0xFF && image[1] == 0xD8 && image[size - 2] == 0xFF && image[size - 1] == 0xD9))
-                {
-                    this.logger.info("Received JPEG buf for " + this.config.name + " has incorrect SOI and EOI "
-                            + "marker bytes, discarding frame as it may be corrupt.");
-                    continue;
-                }
-                
-                synchronized (this)
-                {                
-                    this.frame = new Frame(mime, image, sequence++);
-                    this.notifyAll();
-                }
+                this.prewarm(this.config.prewarmLead + AccessHistory.SLOT);
             }
-            
-            /* Finished reading, through clean shutdown or otherwise, close stream. */
-            conn.getInputStream().close();
         }
-        catch (IOException e)
+        catch (RuntimeException e)
         {
-            this.logger.warning("Error reading source stream " + this.config.name + ", error " + 
+            this.logger.warning("Error predicting viewers of stream " + this.config.name + ", error " + 
                     e.getClass().getSimpleName() + ": " + e.getMessage());
-            this.error = true;
-            this.errorReason = "Error reading stream " + this.config.name + ", error " + e.getClass().getSimpleName() + 
-                    ": " + e.getMessage(); 
         }
-        finally 
+    }
+    
+    /**
+     * Schedules an on demand stream without destinations to stop, unless it is 
+     * already scheduled to stop later. Must be called holding the destinations
+     * lock.
+     * 
+     * @param at monotonic time in nanoseconds to stop
+     */
+    private void scheduleStop(long at)
+    {
+        if (this.idleStop != null)
+        {
+            if (this.idleStopAt - at >= 0) return;
+            this.idleStop.cancel(false);
+        }
+        
+        long delay = at - System.nanoTime();
+        if (delay <= 0)
         {
-            synchronized (this)
-            {
-                /* If any listeners are still waiting, wake them up. */
-                this.notifyAll();
-            }
+            this.idleStop = null;
+            this.stop();
+            return;
         }
+        
+        this.idleStopAt = at;
+        this.idleStop = SCHEDULER.schedule(this::stopIdle, delay, TimeUnit.NANOSECONDS);
     }
     
     /**
-     * Adds basic authentication header to camera connection.
-     * 
-     * @param conn connection to camera
-     * @return whether authentication header added
+     * Stops an on demand stream that still has no destinations when its 
+     * scheduled stop is due.
      */
-    private boolean addBasicAuth(HttpURLConnection conn)
+    private void stopIdle()
     {
-        if (!(this.config.authParams.containsKey("username") && this.config.authParams.containsKey("password")))
+        synchronized (this.destinations)
         {
-            this.logger.severe("Cannot add basic authentication to camera request because the username or " +
-                     "password was not correctly configured.");
-            this.error = true;
-            this.errorReason = "";
-            return false;
+            /* A stop that was cancelled or replaced by a later stop may have already started. */
+            if (this.idleStop == null || this.idleStopAt - System.nanoTime() > 0) return;
+            
+            this.idleStop = null;
+            if (this.destinations.isEmpty() && this.config.ondemand) this.stop();
         }
-       
-        String encoded = Base64.getMimeEncoder().encodeToString((
-                this.config.authParams.get("username") + ':' + this.config.authParams.get("password")).getBytes());
-       
-        conn.addRequestProperty("Authorization", "Basic " + encoded); 
-        return true;
     }
+    
+    /**
+     * Cancels the pending stop of the stream. Must be called holding the 
+     * destinations lock.
+     */
+    private void cancelIdleStop()
+    {
+        if (this.idleStop != null)
+        {
+            this.idleStop.cancel(false);
+            this.idleStop = null;
+        }
+    }
+    
+    /**
+     * Blocking call to get the next frame when it is read from the source
+     * stream. If an error has occurred, null will be returned.
+     * 
+     * @return next frame that is read
+     */
+    public Frame nextFrame()
+    {
+        synchronized (this)
+        {
+            try
+            {
+                this.wait();
+            }
+            catch (InterruptedException e)
+            {  }
+        }
 
+        return this.upstream.isErrored() || this.stop ? null : this.frame;
+    }
+    
     /**
-     * Stops the reading source stream.
+     * Blocking call to get a frame that is newer than the specified sequence 
+     * number. If such a frame has already been read, it is returned immediately,
+     * otherwise this waits until a frame is read or the timeout expires. If an
+     * error has occurred or the timeout expires, null will be returned.
+     * 
+     * @param sequence sequence number returned frame must be newer than
+     * @param timeout maximum time to wait in milliseconds
+     * @return newest frame or null if none
      */
-    public void stop()
+    public Frame frameAfter(int sequence, long timeout)
     {
-        if (!this.isReading()) return;
+        long deadline = System.nanoTime() + timeout * 1000000;
         
-        try
+        synchronized (this)
         {
-            this.logger.info("Stopping reading thread for " + this.config.name);
-            this.stop = true;
-            this.readThread.join(30000);
+            try
+            {
+                long remaining;
+                while (!(this.upstream.isErrored() || this.stop) && (this.frame == null || this.frame.getSequence() <= sequence) &&
+                        (remaining = (deadline - System.nanoTime()) / 1000000) > 0)
+                {
+                    this.wait(remaining);
+                }
+            }
+            catch (InterruptedException e)
+            {  }
             
-            if (this.readThread.isAlive()) this.logger.warning("Failed to stop reading thread for " + 
-                    this.config.name + " in 30 seconds.");
-        }
-        catch (Exception e)
-        { 
-            this.logger.severe("Error stopping stream reading, " + e.getClass().getName() + ": " + e.getMessage());
+            if (this.upstream.isErrored() || this.stop || this.frame == null || this.frame.getSequence() <= sequence) return null;
+            return this.frame;
         }
     }
     
     /**
-     * Reads a line from the input stream. The line characters are assumed to be 
-     * ASCII characters.
+     * Blocking call to get the frame that follows the specified sequence number.
+     * If that frame is retained it is returned, otherwise the oldest retained
+     * newer frame is returned. If no newer frame has been read, this waits until
+     * a frame is read or the timeout expires. Unlike {@link #frameAfter(int, long)}, 
+     * successive calls return consecutive frames while they are retained. If an 
+     * error has occurred or the timeout expires, null will be returned.
      * 
-     * @param in stream input
-     * @return 
-     * @throws IOException
+     * @param sequence sequence number returned frame must follow
+     * @param timeout maximum time to wait in milliseconds
+     * @return following frame or null if none
      */
-    private String readStreamLine(BufferedInputStream in) throws IOException
+    public Frame frameFollowing(int sequence, long timeout)
     {
-        char buf[] = new char[255];
-        int len = 0;
+        Frame latest = this.frameAfter(sequence, timeout);
+        if (latest == null) return null;
         
-        buf[len++] = (char) in.read();
-        buf[len++] = (char) in.read();
-        
-        while (buf[len - 2] != '\r' && buf[len - 1] != '\n')
+        synchronized (this)
         {
-            if (len == buf.length) buf = Arrays.copyOf(buf, buf.length * 2);
-            buf[len++]= (char) in.read();
+            /* Frames older than the history length have been overwritten. */
+            for (int seq = Math.max(sequence + 1, latest.getSequence() - HISTORY + 1); seq < latest.getSequence(); seq++)
+            {
+                Frame f = this.history[seq % HISTORY];
+                if (f != null && f.getSequence() == seq) return f;
+            }
         }
         
-        return String.valueOf(buf, 0, len).trim();
+        return latest;
     }
     
     /**
-     * Reads through the M-JPEG stream until the boundary has been read. 
-     * 
-     * Pre-condition: Reader is connected
-     * Post-condition: Reader is a position ready to read the next line 
-     * after the boundary line
+     * Publishes a newly read frame to destinations waiting on this stream.
      * 
-     * @param in stream input
-     * @return true if successfully a position just past the boundary
-     * @throws IOException error reading stream
+     * @param frame frame that was read
      */
-    private boolean skipToNextFrame(BufferedInputStream in) throws IOException
+    protected void publish(Frame frame)
     {
-        String line;
-        do
+        synchronized (this)
         {
-            if (this.stop) return false;
-
-            line = this.readStreamLine(in);
-            if (line == null)
+            /* Moving average of the frame interval, weighted to the recent frames. */
+            if (this.frame != null && frame.getSequence() > this.frame.getSequence())
+            {
+                long interval = frame.getArrivalTime() - this.frame.getArrivalTime();
+                this.frameInterval = this.frameInterval == 0 ? interval : 
+                        (this.frameInterval * 7 + interval) / 8;
+            }
+            
+            if (this.awaitingFirst)
             {
-                /* End of stream. */
-                this.logger.warning("Reached end of stream for " + this.config.name + " unexpectedly. ");
-                this.error = true;
-                this.errorReason = "Reached end of stream";
-                return false;
+                this.awaitingFirst = false;
+                this.firstFrameLatency = System.nanoTime() - this.startTime;
             }
+            
+            this.frame = frame;
+            this.history[frame.getSequence() % HISTORY] = frame;
+            this.notifyAll();
         }
-        while (!this.boundary.equals(line));
         
-        /* Successfully skipped past frame boundary. */
-        return true;
+        for (FrameListener listener : this.listeners)
+        {
+            listener.frameReceived(frame);
+        }
     }
     
     /**
-     * Reads the MIME type label from the content-type line in the frame details.
-     * 
-     * Pre-condition: Reader is at a position to read the line after the boundary
-     * Post-condition: Reader is at a position to read the line after content type
-     * 
-     * @param in stream input
-     * @return mime or null if error has occurred
-     * @throws IOException error reading stream
+     * Starts receiving frames from the upstream, which starts reading the 
+     * source if it is not being read.
      */
-    private String readContentType(BufferedInputStream in) throws IOException
+    private void start()
     {
-        String line = this.readStreamLine(in);
-        if (line == null || !line.toLowerCase().startsWith("content-type:"))
+        synchronized (this)
         {
-            this.logger.warning("Unexpected stream format for " + this.config.name + ", did not receive " +
-                    "content type mime at the expected position.");
-            this.error = true;
-            this.errorReason = "Did not recieve content type";
-            return null;
+            /* Frames from a previous read are stale so are not retained. */
+            Arrays.fill(this.history, null);
         }
         
-        return line.substring(line.indexOf(':') + 1);
+        this.startTime = System.nanoTime();
+        this.awaitingFirst = true;
+        this.coldStarts++;
+        
+        this.stop = false;
+        if (this.jitter != null && !this.attached) this.jitter.start(this.config.name);
+        this.attached = true;
+        this.upstream.attach(this);
     }
     
     /**
-     * Reads the content length in the frame details.
+     * Gets the largest brightness difference of frames suppressed as similar.
      * 
-     * Pre-condition: Reader is at a position to read content length line
-     * Post-condition: Reader is at a position to read line after content length
+     * @return threshold, 0 if only exact duplicates are suppressed, -1 if duplicates are not suppressed
+     */
+    int getDedupeThreshold()
+    {
+        return this.dedupe == null ? -1 : this.config.dedupeThreshold;
+    }
+    
+    /**
+     * Receives a frame read by the upstream.
      * 
-     * @param in stream input
-     * @return content length or -1 if error
-     * @throws IOException error reading stream
+     * @param mime frame mime type
+     * @param image frame bytes
+     * @param fingerprint fingerprint of the frame, null if duplicates are not suppressed
      */
-    private int readContentLength(BufferedInputStream in) throws IOException
+    void receive(String mime, byte image[], FrameDeduplicator.Fingerprint fingerprint)
     {
-        String line = this.readStreamLine(in);
-        if (line == null || !line.toLowerCase().startsWith("content-length:"))
+        Frame frame = null;
+        if (this.dedupe != null && fingerprint != null)
         {
-            this.logger.warning("Unexpected stream format for " + this.config.name + ", did not receive " +
-                    "frame content length.");
-            this.error = true;
-            this.errorReason = "Did not recieve content length";
-            return -1;
+            switch (this.dedupe.check(fingerprint))
+            {
+            case DUPLICATE:
+                /* Suppressed before any destination transforms or sends it. */
+                return;
+                
+            case KEEPALIVE:
+                /* The last frame is repeated so renditions of it are reused. */
+                Frame last = this.getLastFrame();
+                if (last != null) frame = new Frame(last, this.sequence++);
+                break;
+                
+            case UNIQUE:
+                break;
+            }
         }
-
-        try
+        
+        if (frame == null) frame = new Frame(mime, image, this.sequence++);
+        if (this.jitter != null)
+        {
+            /* Frames are published when released from the de-jitter stage. */
+            this.jitter.offer(frame);
+        }
+        else
+        {
+            this.publish(frame);
+        }
+    }
+    
+    /**
+     * Wakes destinations waiting for a frame, such as when the source has 
+     * failed.
+     */
+    void notifyWaiting()
+    {
+        synchronized (this)
         {
-            return Integer.parseInt(line.substring(line.indexOf(':') + 1).trim());
+            this.notifyAll();
         }
-        catch (NumberFormatException e)
+    }
+    
+    /**
+     * Stops receiving frames from the upstream, which stops reading the source
+     * if no other streams are receiving its frames.
+     */
+    public void stop()
+    {
+        if (!this.attached) return;
+        
+        this.logger.info("Stopping reading of " + this.config.name);
+        this.stop = true;
+        this.attached = false;
+        this.upstream.detach(this);
+        if (this.jitter != null) this.jitter.stop();
+        
+        /* If any listeners are still waiting, wake them up. */
+        this.notifyWaiting();
+    }
+    
+    /**
+     * Stops the stream for shutdown, including any pending stop and prewarming.
+     */
+    public void destroy()
+    {
+        if (this.predictor != null) this.predictor.cancel(false);
+        
+        synchronized (this.destinations)
         {
-            this.logger.warning("Unexpected stream format for " + this.config.name + ", did not recieve " +
-                    "valid content length");
-            return -1;
+            this.cancelIdleStop();
+            this.stop();
         }
     }
     
@@ -502,6 +683,64 @@ public class SourceStream implements Runnable
         return this.frame;
     }
 
+    /**
+     * Gets the estimated interval between frames read from the source.
+     * 
+     * @return frame interval in nanoseconds or 0 if not known
+     */
+    public long getFrameInterval()
+    {
+        return this.frameInterval;
+    }
+
+    /**
+     * Gets metrics about reading the source stream.
+     * 
+     * @return map of metric name to value
+     */
+    public Map<String, Number> getStats()
+    {
+        Map<String, Number> stats = new LinkedHashMap<>();
+        stats.put("frameInterval", this.frameInterval / 1e6);
+        stats.put("destinations", this.destinations.size());
+        stats.put("coldStarts", this.coldStarts);
+        stats.put("warmJoins", this.warmJoins);
+        stats.put("prewarms", this.prewarms);
+        stats.put("firstFrameLatency", this.firstFrameLatency / 1e6);
+        stats.put("lingering", this.idleStop != null ? 1 : 0);
+        
+        /* Frame size and quality are read from the header of the last frame. */
+        Frame last = this.getLastFrame();
+        JpegInfo info = last == null ? null : last.getJpegInfo();
+        if (info != null)
+        {
+            stats.put("frameWidth", info.getWidth());
+            stats.put("frameHeight", info.getHeight());
+            stats.put("frameQuality", info.getQuality());
+        }
+        
+        stats.putAll(this.upstream.getStats());
+        
+        if (this.jitter != null)
+        {
+            stats.put("jitterInput", this.jitter.getInputJitter());
+            stats.put("jitterOutput", this.jitter.getOutputJitter());
+            stats.put("jitterBuffered", this.jitter.getBuffered());
+            stats.put("jitterDropped", this.jitter.getDropped());
+        }
+        
+        if (this.dedupe != null)
+        {
+            long checked = this.dedupe.getChecked(), suppressed = this.dedupe.getExact() + this.dedupe.getSimilar();
+            stats.put("dedupeExact", this.dedupe.getExact());
+            stats.put("dedupeSimilar", this.dedupe.getSimilar());
+            stats.put("dedupeKeepalives", this.dedupe.getKeepalives());
+            stats.put("dedupeRate", checked == 0 ? 0 : suppressed * 100.0 / checked);
+        }
+        
+        return stats;
+    }
+
     /**
      * Checks whether the source stream is being read.
      * 
@@ -509,7 +748,7 @@ public class SourceStream implements Runnable
      */
     public boolean isReading()
     {
-        return this.readThread != null && this.readThread.isAlive();
+        return this.attached && this.upstream.isReading();
     }
     
     /**
@@ -529,7 +768,28 @@ public class SourceStream implements Runnable
      */
     public boolean isErrored()
     {
-        return this.error;
+        return this.upstream.isErrored();
+    }
+    
+    /**
+     * Checks whether access to the stream is password protected.
+     * 
+     * @return true if protected
+     */
+    public boolean isProtected()
+    {
+        return this.config.protect;
+    }
+    
+    /**
+     * Checks whether the source is reconnecting after the connections of all
+     * paths failed. Destinations remain registered while reconnecting.
+     * 
+     * @return true if reconnecting
+     */
+    public boolean isReconnecting()
+    {
+        return this.attached && this.upstream.isReconnecting();
     }
     
     /**
@@ -549,6 +809,27 @@ public class SourceStream implements Runnable
      */
     public String getError()
     {
-        return this.errorReason;
+        return this.upstream.getError();
+    }
+    
+    /**
+     * Gets the combined frame size and rate needed by the destinations.
+     * 
+     * @return demand
+     */
+    public Demand getDemand()
+    {
+        return this.demand;
     }
+    
+    /**
+     * Gets the upstream that reads the source.
+     * 
+     * @return upstream
+     */
+    public Upstream getUpstream()
+    {
+        return this.upstream;
+    }
+
 }
@@ -0,0 +1,861 @@
+/**
+ * MJPEG streaming application.
+ *
+ * @author Michael Diponio <michael.diponio@uts.edu.au>
+ * @date 19th October 2026
+ */
+
+package au.edu.remotelabs.mjpeg.source;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+import au.edu.remotelabs.mjpeg.StreamerConfig.Stream;
+import au.edu.remotelabs.mjpeg.StreamerConfig.Stream.Profile;
+
+/**
+ * Reads a source and fans out its frames to the streams attached to it.
+ * Streams that read the same source in the same way share an upstream so the
+ * source is only connected to once, which matters for cameras that support
+ * few concurrent clients. The source is read while any stream is attached.
+ * <br />
+ * If the source has profiles, the cheapest profile that satisfies the frame
+ * size and rate needed by the destinations of the attached streams is read.
+ * Profiles are switched by reading the new profile alongside the current 
+ * profile until the new profile has read a frame, so destinations are not
+ * interrupted.
+ * <br />
+ * Frames are decimated to the highest frame rate needed by the destinations,
+ * limited by the configured maximum rate, so frames no destination needs are
+ * skipped by the reader without being read into memory or fanned out.
+ */
+public class Upstream implements Runnable
+{
+    /** Interval in milliseconds that sources are checked for stalls. */
+    private static final long STALL_CHECK = 250;
+
+    /** Number of recently read frames of hedged paths that are remembered to discard
+     *  the same frame read from another path. */
+    private static final int RECENT_FRAMES = 64;
+
+    /** Time in nanoseconds a cheaper profile must satisfy the demand before it is 
+     *  switched to, so viewers briefly leaving do not cause switching back and forth. */
+    private static final long SWITCH_DOWN_DELAY = 5000000000L;
+    
+    /** Minimum rate in frames per second frames are read at when decimating, so the
+     *  last frame of a source without destinations stays recent. */
+    private static final int MIN_INGEST_RATE = 1;
+    
+    /** Checks sources for stalls and profile changes, shared by all upstreams. */
+    private static final ScheduledExecutorService WATCHDOG = Executors.newSingleThreadScheduledExecutor(
+            (Runnable r) -> {
+                Thread th = new Thread(r, "Source watchdog");
+                th.setDaemon(true);
+                return th;
+            });
+
+    /** Configuration of the first stream reading the source. */
+    private final Stream config;
+
+    /** Streams sharing this upstream. */
+    private final List<SourceStream> sharing;
+
+    /** Streams currently receiving frames. */
+    private final List<SourceStream> attached;
+
+    /** Paths the source is read from, which are read at the same time if hedged. */
+    private volatile List<SourcePath> paths;
+
+    /** Lock held while the paths being read change. */
+    private final Object pathLock;
+    
+    /** Threads reading paths. */
+    private final List<Thread> pathThreads;
+    
+    /** Path whose frames are fanned out, which is not a hedge, null if not reading. */
+    private volatile SourcePath active;
+    
+    /** Profile read by the active path, null if the source. */
+    private Profile activeProfile;
+    
+    /** Path of a profile being switched to, which becomes the active path once it 
+     *  reads a frame, null if not switching. */
+    private volatile SourcePath pending;
+    
+    /** Profile read by the pending path, null if the source. */
+    private Profile pendingProfile;
+    
+    /** Time a cheaper profile was first found to satisfy demand, 0 if none. */
+    private long cheaperSince;
+    
+    /** Number of times the profile has been switched. */
+    private volatile int switches;
+    
+    /** Number of reconnects of paths no longer read. */
+    private volatile int retiredReconnects;
+
+    /** Monotonic time the next frame is due to be kept when decimating, 0 if no
+     *  frame has been kept. */
+    private long nextKeep;
+    
+    /** Number of frames discarded by decimation. */
+    private volatile long decimated;
+
+    /** Recently read frames of hedged paths, keyed by content hash. */
+    private final Map<Long, RecentFrame> recent;
+
+    /** Bit set of the indexes of retired paths which are yet to be cleared from the
+     *  recently read frames. */
+    private final AtomicLong retiredIndexes;
+
+    /** Decoder of the DC images of frames, null until a stream suppresses similar frames.
+     *  Used holding the ingest lock. */
+    private DcImageDecoder dcDecoder;
+
+    /** Lock held while a frame read from a path is fanned out. */
+    private final Object ingestLock;
+
+    /** Whether an error has occurred accessing the source. This is set when the
+     *  source has failed repeatedly and is cleared if it recovers. */
+    private volatile boolean error;
+
+    /** The last error that occurred. */
+    private volatile String errorReason;
+
+    /** Thread which reads the source. */
+    private Thread readThread;
+
+    /** Whether to stop reading. */
+    private volatile boolean stop;
+
+    /** Logger. */
+    private final Logger logger;
+
+    public Upstream(Stream config)
+    {
+        this.config = config;
+        this.sharing = new CopyOnWriteArrayList<>();
+        this.attached = new CopyOnWriteArrayList<>();
+        this.paths = Collections.emptyList();
+        this.pathLock = new Object();
+        this.pathThreads = new ArrayList<>();
+        this.ingestLock = new Object();
+        this.recent = new LinkedHashMap<Long, RecentFrame>() {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, RecentFrame> eldest)
+            {
+                return this.size() > RECENT_FRAMES;
+            }
+        };
+        this.retiredIndexes = new AtomicLong();
+        this.logger = Logger.getLogger(getClass().getName());
+    }
+
+    /**
+     * Adds a stream that shares this upstream.
+     *
+     * @param stream stream reading the source
+     */
+    void share(SourceStream stream)
+    {
+        this.sharing.add(stream);
+    }
+
+    /**
+     * Attaches a stream to receive frames, starting reading the source if it
+     * is not being read.
+     *
+     * @param stream stream to receive frames
+     */
+    synchronized void attach(SourceStream stream)
+    {
+        if (!this.attached.contains(stream)) this.attached.add(stream);
+        if (!this.isReading()) this.start();
+    }
+
+    /**
+     * Detaches a stream from receiving frames, stopping reading the source if
+     * no other streams are attached.
+     *
+     * @param stream stream to stop receiving frames
+     */
+    synchronized void detach(SourceStream stream)
+    {
+        this.attached.remove(stream);
+        if (this.attached.isEmpty()) this.stop();
+    }
+
+    /**
+     * Starts the thread that reads the source.
+     */
+    private void start()
+    {
+        this.readThread = new Thread(this);
+        this.readThread.setName("Stream: " + this.config.name);
+        this.readThread.start();
+    }
+
+    @Override
+    public void run()
+    {
+        this.stop = false;
+        this.error = false;
+        this.errorReason = null;
+
+        if (this.config.authType == Stream.AuthType.BASIC &&
+            !(this.config.authParams.containsKey("username") && this.config.authParams.containsKey("password")))
+        {
+            this.logger.severe("Cannot add basic authentication to camera request because the username or " +
+                     "password was not correctly configured.");
+            this.error = true;
+            this.errorReason = "Authentication not configured";
+            this.notifyAttached();
+            return;
+        }
+
+        this.logger.fine("Starting stream reading for " + this.config.name);
+        ScheduledFuture<?> watchdog = WATCHDOG.scheduleAtFixedRate(this::supervise,
+                STALL_CHECK, STALL_CHECK, TimeUnit.MILLISECONDS);
+
+        synchronized (this.ingestLock)
+        {
+            this.recent.clear();
+            this.retiredIndexes.set(0);
+            this.nextKeep = 0;
+        }
+
+        try
+        {
+            synchronized (this.pathLock)
+            {
+                /* The first path is the source and its backups, or the profile that
+                 * satisfies demand. Each hedged source is another path read at the
+                 * same time. */
+                this.paths = Collections.emptyList();
+                this.cheaperSince = 0;
+                this.activeProfile = this.chooseProfile(this.getDemand());
+                this.active = this.startPath(this.activeProfile);
+                for (URL hedge : this.config.hedges)
+                {
+                    this.startPath(Collections.singletonList(hedge));
+                }
+
+                /* Paths are read on their own threads until stopped. */
+                while (!this.stop) this.pathLock.wait();
+            }
+        }
+        catch (InterruptedException e)
+        {
+            this.logger.warning("Interrupted reading " + this.config.name);
+            this.stop = true;
+            for (SourcePath path : this.paths) path.wake();
+        }
+        finally
+        {
+            List<Thread> threads;
+            synchronized (this.pathLock)
+            {
+                threads = new ArrayList<>(this.pathThreads);
+            }
+
+            for (Thread th : threads)
+            {
+                try
+                {
+                    th.join();
+                }
+                catch (InterruptedException e)
+                { }
+            }
+
+            synchronized (this.pathLock)
+            {
+                this.active = null;
+                this.pending = null;
+                this.pathThreads.clear();
+            }
+
+            watchdog.cancel(false);
+            this.notifyAttached();
+        }
+    }
+
+    /**
+     * Starts reading a profile of the source. Must be called holding the path
+     * lock.
+     *
+     * @param profile profile to read, null for the source
+     * @return path reading the profile
+     */
+    private SourcePath startPath(Profile profile)
+    {
+        return this.startPath(profile == null ? this.config.getSources() : Collections.singletonList(profile.url));
+    }
+
+    /**
+     * Starts reading a path. Must be called holding the path lock.
+     *
+     * @param sources URLs of the path in order of preference
+     * @return path
+     */
+    private SourcePath startPath(List<URL> sources)
+    {
+        SourcePath path = new SourcePath(this, this.config, this.freeIndex(), sources);
+
+        List<SourcePath> updated = new ArrayList<>(this.paths);
+        updated.add(path);
+        this.paths = updated;
+
+        this.pathThreads.removeIf((Thread t) -> !t.isAlive());
+        Thread th = new Thread(path, "Stream: " + this.config.name + " path " + path.getIndex());
+        th.start();
+        this.pathThreads.add(th);
+        return path;
+    }
+
+    /**
+     * Gets the lowest index not used by a path being read. Indexes of retired
+     * paths are reused so indexes stay small enough to be bits of the set of
+     * paths that have read a recent frame, however often paths are restarted.
+     * Must be called holding the path lock.
+     *
+     * @return path index
+     */
+    private int freeIndex()
+    {
+        long used = 0;
+        for (SourcePath path : this.paths) used |= 1L << path.getIndex();
+        return Long.numberOfTrailingZeros(~used);
+    }
+
+    /**
+     * Stops reading a path. Must be called holding the path lock.
+     *
+     * @param path path to stop
+     */
+    private void retirePath(SourcePath path)
+    {
+        List<SourcePath> updated = new ArrayList<>(this.paths);
+        updated.remove(path);
+        this.paths = updated;
+
+        this.retiredReconnects += path.getReconnects();
+        path.retire();
+
+        /* The index may be reused by a new path, so the retired path must no longer count
+         * as having read the recent frames. The ingest lock cannot be taken holding the 
+         * path lock, so they are cleared before the next frame is aligned. */
+        this.retiredIndexes.accumulateAndGet(1L << path.getIndex(), (long a, long b) -> a | b);
+    }
+
+    /**
+     * Gets the combined frame size and rate needed by the attached streams.
+     *
+     * @return demand
+     */
+    private Demand getDemand()
+    {
+        Demand demand = Demand.NONE;
+        for (SourceStream stream : this.attached)
+        {
+            demand = demand.max(stream.getDemand());
+        }
+        return demand;
+    }
+
+    /**
+     * Chooses the cheapest profile that satisfies a demand.
+     *
+     * @param demand frame size and rate needed
+     * @return profile or null if only the source satisfies the demand
+     */
+    private Profile chooseProfile(Demand demand)
+    {
+        /* Profiles are in order of increasing cost. */
+        for (Profile p : this.config.profiles)
+        {
+            if (demand.isSatisfiedBy(p.width, p.height, p.fps)) return p;
+        }
+        return null;
+    }
+
+    /**
+     * Called when the frame size or rate needed by an attached stream has changed.
+     */
+    void demandChanged()
+    {
+        this.checkProfile();
+    }
+
+    /**
+     * Switches to the cheapest profile that satisfies the demand. Switching to a
+     * larger profile starts immediately so a demanding viewer is served at once,
+     * switching to a cheaper profile waits in case the demand returns.
+     */
+    private void checkProfile()
+    {
+        if (this.config.profiles.isEmpty()) return;
+
+        synchronized (this.pathLock)
+        {
+            if (this.active == null || this.stop) return;
+
+            Demand demand = this.getDemand();
+            Profile wanted = this.chooseProfile(demand);
+            Profile target = this.pending != null ? this.pendingProfile : this.activeProfile;
+            if (Objects.equals(wanted, target))
+            {
+                this.cheaperSince = 0;
+                return;
+            }
+
+            if (target == null || demand.isSatisfiedBy(target.width, target.height, target.fps))
+            {
+                long now = System.nanoTime();
+                if (this.cheaperSince == 0) this.cheaperSince = now;
+                if (now - this.cheaperSince < SWITCH_DOWN_DELAY) return;
+            }
+            this.cheaperSince = 0;
+
+            if (this.pending != null)
+            {
+                this.retirePath(this.pending);
+                this.pending = null;
+            }
+
+            /* The demand may have returned to the profile already being read. */
+            if (Objects.equals(wanted, this.activeProfile)) return;
+
+            this.logger.info("Switching stream " + this.config.name + " from profile " + 
+                    (this.activeProfile == null ? "source" : this.activeProfile) + " to " + 
+                    (wanted == null ? "source" : wanted) + " for demand " + demand + '.');
+            this.pendingProfile = wanted;
+            this.pending = this.startPath(wanted);
+        }
+    }
+
+    /**
+     * Makes a path the active path once it has read a frame, stopping the
+     * previously active path.
+     *
+     * @param path pending path
+     */
+    private void promote(SourcePath path)
+    {
+        synchronized (this.pathLock)
+        {
+            if (path != this.pending) return;
+
+            SourcePath previous = this.active;
+            this.active = path;
+            this.activeProfile = this.pendingProfile;
+            this.pending = null;
+            if (previous != null) this.retirePath(previous);
+            this.switches++;
+        }
+    }
+
+    /**
+     * Called by a reader when it has read the headers of a frame, to decide
+     * whether the frame is read or skipped. Frames are skipped if their path is
+     * no longer read or they are decimated. Frames of hedged paths are always
+     * read so the copies of each frame can be aligned, and are decimated once
+     * aligned.
+     *
+     * @param reader reader that is reading the frame
+     * @return true if the frame should be read and ingested
+     */
+    boolean accept(SourceReader reader)
+    {
+        long arrival = System.nanoTime();
+
+        SourcePath path = this.pathOf(reader);
+        if (path == null) return false;
+
+        synchronized (this.ingestLock)
+        {
+            /* The profile being switched to has delivered so replaces the current profile. */
+            if (path == this.pending) this.promote(path);
+
+            if (path.arrived(arrival) || this.error)
+            {
+                this.logger.info("Source stream " + this.config.name + " recovered reading from " + reader.getURL());
+                this.error = false;
+            }
+
+            return !this.config.hedges.isEmpty() || this.keep(arrival, path);
+        }
+    }
+
+    /**
+     * Receives a frame read from the source and fans it out to the attached
+     * streams. If paths are hedged, the frame is fanned out from the path that
+     * read it first, and discarded when read from the other paths.
+     *
+     * @param reader reader that read the frame
+     * @param mime frame mime type
+     * @param image frame bytes
+     */
+    void ingest(SourceReader reader, String mime, byte image[])
+    {
+        long arrival = System.nanoTime();
+
+        SourcePath path = this.pathOf(reader);
+        if (path == null) return;
+
+        synchronized (this.ingestLock)
+        {
+            if (!this.config.hedges.isEmpty())
+            {
+                long retired = this.retiredIndexes.getAndSet(0);
+                if (retired != 0)
+                {
+                    for (RecentFrame frame : this.recent.values()) frame.paths &= ~retired;
+                }
+
+                /* A path is retired before its index is marked for clearing, so a frame
+                 * of a retired path must not mark the index again. */
+                if (path.isRetired()) return;
+
+                /* Equivalent paths deliver identical bytes so frames are aligned by a hash
+                 * of the content and its length. */
+                CRC32 crc = new CRC32();
+                crc.update(image, 0, image.length);
+                Long key = (long) image.length << 32 | crc.getValue();
+
+                /* A path reading the same content again is a new frame of an unchanging
+                 * scene rather than a frame already read by another path. */
+                RecentFrame first = this.recent.get(key);
+                if (first != null && (first.paths & 1L << path.getIndex()) == 0)
+                {
+                    first.paths |= 1L << path.getIndex();
+                    path.delivered(Math.max(1, arrival - first.arrival));
+                    return;
+                }
+
+                this.recent.put(key, new RecentFrame(arrival, 1L << path.getIndex()));
+                path.delivered(0);
+
+                if (!this.keep(arrival, path)) return;
+            }
+
+            /* Frames are fingerprinted once for all the streams that suppress duplicates. */
+            int threshold = -1;
+            for (SourceStream stream : this.attached) threshold = Math.max(threshold, stream.getDedupeThreshold());
+
+            FrameDeduplicator.Fingerprint fingerprint = null;
+            if (threshold >= 0)
+            {
+                if (threshold > 0 && this.dcDecoder == null) this.dcDecoder = new DcImageDecoder();
+                fingerprint = FrameDeduplicator.fingerprint(image, threshold > 0 ? this.dcDecoder : null);
+            }
+
+            /* Frames are immutable so the bytes are shared by all streams. */
+            for (SourceStream stream : this.attached)
+            {
+                stream.receive(mime, image, fingerprint);
+            }
+        }
+    }
+
+    /**
+     * Decides whether a frame is kept when decimating to the ingest rate. Kept
+     * frames are scheduled at the ingest interval rather than an interval after
+     * the last kept frame, and a frame within half a source frame interval of
+     * being due is kept, so the kept rate is not rounded down to a multiple of
+     * the source frame interval. Must be called holding the ingest lock.
+     *
+     * @param arrival monotonic time the frame was read
+     * @param path path that read the frame
+     * @return true if the frame is kept
+     */
+    private boolean keep(long arrival, SourcePath path)
+    {
+        int rate = this.getIngestRate();
+        if (rate == Integer.MAX_VALUE) return true;
+
+        long interval = 1000000000L / rate;
+        if (this.nextKeep != 0 && arrival < this.nextKeep - path.getArrivalInterval() / 2)
+        {
+            this.decimated++;
+            return false;
+        }
+
+        /* After a gap, such as the rate increasing, the schedule restarts rather
+         * than keeping frames in a burst to catch up. */
+        this.nextKeep = this.nextKeep == 0 || arrival - this.nextKeep > interval ? 
+                arrival + interval : this.nextKeep + interval;
+        return true;
+    }
+
+    /**
+     * Gets the rate frames are read from the source at, which is the highest
+     * rate needed by the attached streams limited by the configured maximum.
+     *
+     * @return frames per second, Integer.MAX_VALUE if frames are not decimated
+     */
+    int getIngestRate()
+    {
+        int rate = Math.max(MIN_INGEST_RATE, this.getDemand().getRate());
+        return this.config.maxFps > 0 ? Math.min(this.config.maxFps, rate) : rate;
+    }
+
+    /**
+     * Finds the path a reader is reading.
+     *
+     * @param reader reader
+     * @return path or null if the reader is not reading a current path
+     */
+    private SourcePath pathOf(SourceReader reader)
+    {
+        for (SourcePath p : this.paths)
+        {
+            if (p.isReading(reader)) return p;
+        }
+        return null;
+    }
+
+    /**
+     * Aborts the connections of paths that have stalled and switches to a 
+     * cheaper profile once it has satisfied the demand for long enough.
+     */
+    private void supervise()
+    {
+        for (SourcePath path : this.paths)
+        {
+            path.checkStall();
+        }
+
+        this.checkProfile();
+    }
+
+    /**
+     * Called when a path has failed more times in succession than the configured
+     * retries. If all paths have failed, the source is errored and destinations
+     * waiting on attached streams are released, but reconnection continues in
+     * case the source recovers while streams remain attached.
+     */
+    void pathFailed()
+    {
+        for (SourcePath path : this.paths)
+        {
+            if (!path.isFailed()) return;
+        }
+
+        this.logger.warning("All sources of stream " + this.config.name + " have failed, marking stream as errored.");
+        this.error = true;
+        this.notifyAttached();
+    }
+
+    /**
+     * Wakes destinations waiting on the attached streams.
+     */
+    private void notifyAttached()
+    {
+        for (SourceStream stream : this.attached)
+        {
+            stream.notifyWaiting();
+        }
+    }
+
+    /**
+     * Sets the reason of the last error.
+     *
+     * @param reason error reason
+     */
+    void setErrorReason(String reason)
+    {
+        this.errorReason = reason;
+    }
+
+    /**
+     * Checks whether reading is stopping.
+     *
+     * @return true if stopping
+     */
+    boolean isStopping()
+    {
+        return this.stop;
+    }
+
+    /**
+     * Stops reading the source.
+     */
+    private void stop()
+    {
+        if (!this.isReading()) return;
+
+        try
+        {
+            this.logger.info("Stopping reading thread for " + this.config.name);
+            synchronized (this.pathLock)
+            {
+                this.stop = true;
+                this.pathLock.notifyAll();
+            }
+
+            /* Wake the readers if they are waiting to reconnect or blocked reading. */
+            for (SourcePath path : this.paths)
+            {
+                path.wake();
+            }
+            this.readThread.join(30000);
+
+            if (this.readThread.isAlive()) this.logger.warning("Failed to stop reading thread for " +
+                    this.config.name + " in 30 seconds.");
+        }
+        catch (Exception e)
+        {
+            this.logger.severe("Error stopping stream reading, " + e.getClass().getName() + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Gets metrics about reading the source.
+     *
+     * @return map of metric name to value
+     */
+    public Map<String, Number> getStats()
+    {
+        Map<String, Number> stats = new LinkedHashMap<>();
+        stats.put("sharedStreams", this.sharing.size());
+        stats.put("attachedStreams", this.attached.size());
+
+        List<SourcePath> readPaths = this.paths;
+        int reconnects = this.retiredReconnects;
+        for (SourcePath path : readPaths)
+        {
+            reconnects += path.getReconnects();
+        }
+        stats.put("reconnects", reconnects);
+
+        if (!this.config.profiles.isEmpty())
+        {
+            /* Profile index is -1 when reading the source. */
+            stats.put("profile", this.config.profiles.indexOf(this.activeProfile));
+            stats.put("profileSwitches", this.switches);
+            stats.put("profileSwitching", this.pending != null ? 1 : 0);
+        }
+
+        int rate = this.getIngestRate();
+        stats.put("ingestRate", rate == Integer.MAX_VALUE ? 0 : rate);
+        stats.put("decimated", this.decimated);
+
+        SourcePath current = this.active;
+        if (this.config.hedges.isEmpty())
+        {
+            if (current != null)
+            {
+                stats.put("arrivalInterval", current.getArrivalInterval() / 1e6);
+                stats.put("arrivalDeviation", current.getArrivalDeviation() / 1e6);
+                stats.put("stallTimeout", current.getStallTimeout());
+            }
+        }
+        else
+        {
+            /* Latency of a path is the mean time its frames were read after the
+             * first path read them. */
+            for (SourcePath path : readPaths)
+            {
+                String name = "path" + path.getIndex();
+                long frames = path.getFrames();
+                stats.put(name + "Frames", frames);
+                stats.put(name + "WinRate", frames == 0 ? 0 : Math.round(path.getWins() * 100.0 / frames));
+                stats.put(name + "Latency", frames == 0 ? 0 : path.getLag() / frames / 1e6);
+                stats.put(name + "Interval", path.getArrivalInterval() / 1e6);
+                stats.put(name + "Reconnects", path.getReconnects());
+            }
+        }
+
+        return stats;
+    }
+
+    /**
+     * Gets the configuration the source is read with.
+     *
+     * @return stream configuration
+     */
+    public Stream getConfig()
+    {
+        return this.config;
+    }
+
+    /**
+     * Checks whether the source is being read.
+     *
+     * @return true if reading source
+     */
+    public boolean isReading()
+    {
+        return this.readThread != null && this.readThread.isAlive();
+    }
+
+    /**
+     * Checks whether there has been an error reading the source.
+     *
+     * @return true if reading error
+     */
+    public boolean isErrored()
+    {
+        return this.error;
+    }
+
+    /**
+     * Checks whether the source is reconnecting after the connections of all
+     * paths failed.
+     *
+     * @return true if reconnecting
+     */
+    public boolean isReconnecting()
+    {
+        List<SourcePath> readPaths = this.paths;
+        for (SourcePath path : readPaths)
+        {
+            if (!path.isReconnecting()) return false;
+        }
+        return !readPaths.isEmpty();
+    }
+
+    /**
+     * Gets the error that occurred reading the source.
+     *
+     * @return reading error
+     */
+    public String getError()
+    {
+        return this.errorReason;
+    }
+
+    /**
+     * Frame recently read from a hedged path.
+     */
+    private static class RecentFrame
+    {
+        /** Monotonic time the frame was first read. */
+        final long arrival;
+
+        /** Bit set of the indexes of paths that have read the frame. */
+        long paths;
+
+        RecentFrame(long arrival, long paths)
+        {
+            this.arrival = arrival;
+            this.paths = paths;
+        }
+    }
+}
@@ -0,0 +1,374 @@
+/**
+ * MJPEG streaming application.
+ *
+ * @author Michael Diponio <michael.diponio@uts.edu.au>
+ * @date 19th October 2026
+ */
+
+package au.edu.remotelabs.mjpeg.ws;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+
+import au.edu.remotelabs.mjpeg.source.Frame;
+
+/**
+ * Detects changed regions of the frames of a rendition so only the changed
+ * tiles need to be sent to clients. Frames are split into fixed size tiles and
+ * each tile is compared against a reference image which holds the pixels of the
+ * tile when it was last detected as changed. Tiles which differ from the
+ * reference by more than a threshold are changed and update the reference.
+ * <br />
+ * The encoder is shared by all sessions receiving the rendition so detection
+ * is performed once per frame. The changed tiles of recent frames are kept so a
+ * session that did not receive some frames can be sent the tiles that changed
+ * in any of them. If those frames are no longer known, the session must be sent
+ * a keyframe.
+ */
+public class DeltaEncoder
+{
+    /** Width and height of tiles in pixels. */
+    public static final int TILE = 64;
+
+    /** Mean absolute difference of tile channel values for a tile to be changed. */
+    private static final int THRESHOLD = 6;
+
+    /** Number of frames whose changed tiles are kept. */
+    private static final int HISTORY = 64;
+
+    /** Proportion of tiles that may be sent before a keyframe is cheaper. */
+    private static final double MAX_TILES = 0.5;
+
+    /** Quality of tile JPEG encoding. */
+    private static final float QUALITY = 0.85f;
+
+    /** Encoders of each rendition with number of users. */
+    private static final Map<Integer, DeltaEncoder> encoders = new HashMap<>();
+
+    /** Rendition encoded. */
+    private final int rendition;
+
+    /** Number of sessions using this encoder. */
+    private int users;
+
+    /** Reference image pixels, null until the first frame is processed. */
+    private int reference[];
+
+    /** Width of reference image. */
+    private int width;
+
+    /** Height of reference image. */
+    private int height;
+
+    /** Number of tile columns. */
+    private int cols;
+
+    /** Number of tile rows. */
+    private int rows;
+
+    /** Latest frame processed. */
+    private Frame current;
+
+    /** Decoded image of the latest frame processed. */
+    private BufferedImage image;
+
+    /** Changed tiles of recently processed frames keyed by frame sequence. */
+    private final LinkedHashMap<Integer, Change> history;
+
+    private DeltaEncoder(int rendition)
+    {
+        this.rendition = rendition;
+        this.history = new LinkedHashMap<Integer, Change>()
+        {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Change> eldest)
+            {
+                return this.size() > HISTORY;
+            }
+        };
+    }
+
+    /**
+     * Gets the tile message which brings a client that has been sent the
+     * specified frame up to date with the frame.
+     *
+     * @param frame frame of the rendition to send
+     * @param since sequence of the last frame sent to the client
+     * @param channel channel identifier of the session
+     * @return tile message or null if a keyframe must be sent
+     * @throws IOException error decoding or encoding
+     */
+    public synchronized ByteBuffer tiles(Frame frame, int since, int channel) throws IOException
+    {
+        this.advance(frame);
+
+        /* Frame has been superseded so its pixels are not available to cut tiles from. */
+        if (frame != this.current) return null;
+
+        BitSet changed = new BitSet();
+        int seq = frame.getSequence();
+        while (seq != since)
+        {
+            Change change = this.history.get(seq);
+            if (change == null) return null;
+
+            changed.or(change.tiles);
+            seq = change.previous;
+        }
+
+        if (changed.cardinality() > this.cols * this.rows * MAX_TILES) return null;
+
+        /* Sessions which are up to date share the same message. */
+        ByteBuffer message = frame.getEncoding("tiles-" + this.rendition + '-' + channel + '-' + since,
+                (Frame f) -> this.build(f, changed, channel));
+        return message.duplicate();
+    }
+
+    /**
+     * Processes a frame if it is newer than the latest frame processed. Sessions
+     * sending a keyframe must advance the encoder to the frame so following tile
+     * messages are relative to the keyframe.
+     *
+     * @param frame frame of the rendition
+     * @return true if the frame is the latest frame processed
+     * @throws IOException error decoding frame
+     */
+    public synchronized boolean advance(Frame frame) throws IOException
+    {
+        if (this.current == null || frame.getSequence() > this.current.getSequence()) this.process(frame);
+        return frame == this.current;
+    }
+
+    /**
+     * Detects the changed tiles of a frame and updates the reference image.
+     *
+     * @param frame frame to process
+     * @throws IOException error decoding frame
+     */
+    private void process(Frame frame) throws IOException
+    {
+        BufferedImage img = frame.decodeImage();
+        int w = img.getWidth(), h = img.getHeight();
+        int pixels[] = img.getRGB(0, 0, w, h, null, 0, w);
+
+        BitSet tiles = new BitSet();
+        if (this.reference == null || w != this.width || h != this.height)
+        {
+            /* Tiles of a different size image cannot be composited, all clients need a keyframe. */
+            this.reference = pixels;
+            this.width = w;
+            this.height = h;
+            this.cols = (w + TILE - 1) / TILE;
+            this.rows = (h + TILE - 1) / TILE;
+            this.history.clear();
+        }
+        else
+        {
+            for (int t = 0; t < this.cols * this.rows; t++)
+            {
+                if (this.differs(pixels, t))
+                {
+                    tiles.set(t);
+                    this.copyTile(pixels, t);
+                }
+            }
+
+            if (this.current != null)
+            {
+                this.history.put(frame.getSequence(), new Change(this.current.getSequence(), tiles));
+            }
+        }
+
+        this.current = frame;
+        this.image = img;
+    }
+
+    /**
+     * Checks whether a tile differs from the reference image by more than the
+     * threshold. Every second pixel of every second row is compared.
+     *
+     * @param pixels frame pixels
+     * @param tile tile index
+     * @return true if tile changed
+     */
+    private boolean differs(int pixels[], int tile)
+    {
+        int x0 = (tile % this.cols) * TILE, y0 = (tile / this.cols) * TILE;
+        int x1 = Math.min(x0 + TILE, this.width), y1 = Math.min(y0 + TILE, this.height);
+
+        long diff = 0;
+        int samples = 0;
+        for (int y = y0; y < y1; y += 2)
+        {
+            for (int x = x0, i = y * this.width + x0; x < x1; x += 2, i += 2)
+            {
+                int a = pixels[i], b = this.reference[i];
+                diff += Math.abs(((a >> 16) & 0xFF) - ((b >> 16) & 0xFF)) +
+                        Math.abs(((a >> 8) & 0xFF) - ((b >> 8) & 0xFF)) +
+                        Math.abs((a & 0xFF) - (b & 0xFF));
+                samples += 3;
+            }
+        }
+
+        return diff > (long) THRESHOLD * samples;
+    }
+
+    /**
+     * Copies a tile of the frame into the reference image.
+     *
+     * @param pixels frame pixels
+     * @param tile tile index
+     */
+    private void copyTile(int pixels[], int tile)
+    {
+        int x0 = (tile % this.cols) * TILE, y0 = (tile / this.cols) * TILE;
+        int len = Math.min(TILE, this.width - x0);
+        for (int y = y0; y < Math.min(y0 + TILE, this.height); y++)
+        {
+            System.arraycopy(pixels, y * this.width + x0, this.reference, y * this.width + x0, len);
+        }
+    }
+
+    /**
+     * Builds a tile message. The message has the frame envelope header followed
+     * by the number of tiles and each tile as its position, length and JPEG bytes:
+     * <pre>
+     *  0  u16  number of tiles
+     *  2  u16  reserved
+     *  then for each tile
+     *  0  u16  x position in pixels
+     *  2  u16  y position in pixels
+     *  4  u32  length of JPEG
+     *  8  ...  tile JPEG
+     * </pre>
+     *
+     * @param frame frame tiles are cut from
+     * @param changed tiles to include
+     * @param channel channel identifier of the session
+     * @return message
+     */
+    private ByteBuffer build(Frame frame, BitSet changed, int channel)
+    {
+        List<byte[]> jpegs = new ArrayList<>(changed.cardinality());
+        int len = FrameEnvelope.HEADER_LENGTH + 4;
+        for (int t = changed.nextSetBit(0); t >= 0; t = changed.nextSetBit(t + 1))
+        {
+            int tile = t;
+            byte jpeg[] = frame.getEncoding("tile-" + this.rendition + '-' + tile, (Frame f) -> this.encodeTile(tile));
+            jpegs.add(jpeg);
+            len += 8 + jpeg.length;
+        }
+
+        ByteBuffer buf = ByteBuffer.allocate(len);
+        FrameEnvelope.putHeader(buf, FrameEnvelope.TYPE_TILES, frame, this.width, this.height, this.rendition, channel);
+        buf.putShort((short) jpegs.size());
+        buf.putShort((short) 0);
+
+        int i = 0;
+        for (int t = changed.nextSetBit(0); t >= 0; t = changed.nextSetBit(t + 1))
+        {
+            byte jpeg[] = jpegs.get(i++);
+            buf.putShort((short) ((t % this.cols) * TILE));
+            buf.putShort((short) ((t / this.cols) * TILE));
+            buf.putInt(jpeg.length);
+            buf.put(jpeg);
+        }
+
+        buf.flip();
+        return buf;
+    }
+
+    /**
+     * Encodes a tile of the current frame as JPEG.
+     *
+     * @param tile tile index
+     * @return JPEG bytes
+     */
+    private byte[] encodeTile(int tile)
+    {
+        int x = (tile % this.cols) * TILE, y = (tile / this.cols) * TILE;
+        BufferedImage sub = this.image.getSubimage(x, y, Math.min(TILE, this.width - x), Math.min(TILE, this.height - y));
+
+        try
+        {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(QUALITY);
+
+            writer.setOutput(new MemoryCacheImageOutputStream(out));
+            writer.write(null, new IIOImage(sub, null, null), param);
+            writer.dispose();
+            return out.toByteArray();
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Gets the encoder for a rendition.
+     *
+     * @param rendition rendition identifier
+     * @return encoder
+     */
+    public static DeltaEncoder get(int rendition)
+    {
+        synchronized (encoders)
+        {
+            DeltaEncoder enc = encoders.computeIfAbsent(rendition, DeltaEncoder::new);
+            enc.users++;
+            return enc;
+        }
+    }
+
+    /**
+     * Releases an encoder.
+     *
+     * @param encoder encoder to release
+     */
+    public static void unget(DeltaEncoder encoder)
+    {
+        synchronized (encoders)
+        {
+            if (--encoder.users == 0) encoders.remove(encoder.rendition);
+        }
+    }
+
+    /**
+     * Tiles changed in a frame.
+     */
+    private static class Change
+    {
+        /** Sequence of the frame processed before this frame. */
+        final int previous;
+
+        /** Changed tile indexes. */
+        final BitSet tiles;
+
+        Change(int previous, BitSet tiles)
+        {
+            this.previous = previous;
+            this.tiles = tiles;
+        }
+    }
+}
@@ -0,0 +1,108 @@
+/**
+ * MJPEG streaming application.
+ *
+ * @author Michael Diponio <michael.diponio@uts.edu.au>
+ * @date 19th October 2026
+ */
+
+package au.edu.remotelabs.mjpeg.ws;
+
+import java.nio.ByteBuffer;
+
+import au.edu.remotelabs.mjpeg.source.Frame;
+import au.edu.remotelabs.mjpeg.source.JpegInfo;
+
+/**
+ * Binary web socket message containing a frame. The message is a fixed size
+ * header followed by the JPEG bytes. The header fields are big endian:
+ * <pre>
+ *  0  u8   version
+ *  1  u8   message type
+ *  2  u16  header length
+ *  4  u32  frame sequence number
+ *  8  u64  frame read timestamp, milliseconds since epoch
+ *  16 u16  image width
+ *  18 u16  image height
+ *  20 u16  rendition identifier
+ *  22 u16  channel identifier, 0 if the connection is not multiplexed
+ * </pre>
+ * Clients should use the header length to find the start of the JPEG so the
+ * header may be extended.
+ */
+public class FrameEnvelope
+{
+    /** Envelope format version. */
+    public static final int VERSION = 1;
+
+    /** Length of the envelope header in bytes. */
+    public static final int HEADER_LENGTH = 24;
+
+    /** Message type of a complete frame. */
+    public static final int TYPE_FRAME = 0;
+
+    /** Message type of changed tiles of a frame, see {@link DeltaEncoder}. */
+    public static final int TYPE_TILES = 1;
+
+    /**
+     * Gets the envelope containing the frame. The envelope is built once
+     * for each frame, rendition and channel, the returned buffer is a view which
+     * may be sent independently of other sessions but its contents must not
+     * be modified.
+     *
+     * @param frame frame to send
+     * @param rendition identifier of rendition frame belongs to
+     * @param channel identifier of channel on a multiplexed connection
+     * @return envelope message
+     */
+    public static ByteBuffer get(Frame frame, int rendition, int channel)
+    {
+        ByteBuffer envelope = frame.getEncoding("envelope-" + rendition + '-' + channel, 
+                (Frame f) -> build(f, rendition, channel));
+        return envelope.duplicate();
+    }
+
+    /**
+     * Builds an envelope containing the frame.
+     *
+     * @param frame frame to send
+     * @param rendition identifier of rendition frame belongs to
+     * @param channel identifier of channel on a multiplexed connection
+     * @return envelope message
+     */
+    private static ByteBuffer build(Frame frame, int rendition, int channel)
+    {
+        ByteBuffer buf = ByteBuffer.allocate(HEADER_LENGTH + frame.getContentLength());
+        JpegInfo info = frame.getJpegInfo();
+
+        putHeader(buf, TYPE_FRAME, frame, info == null ? 0 : info.getWidth(), info == null ? 0 : info.getHeight(), 
+                rendition, channel);
+        buf.put(frame.getBuffer());
+
+        buf.flip();
+        return buf;
+    }
+
+    /**
+     * Puts the envelope header of a message.
+     *
+     * @param buf buffer to put header in
+     * @param type message type
+     * @param frame frame the message is for
+     * @param width image width
+     * @param height image height
+     * @param rendition identifier of rendition frame belongs to
+     * @param channel identifier of channel on a multiplexed connection
+     */
+    static void putHeader(ByteBuffer buf, int type, Frame frame, int width, int height, int rendition, int channel)
+    {
+        buf.put((byte) VERSION);
+        buf.put((byte) type);
+        buf.putShort((short) HEADER_LENGTH);
+        buf.putInt(frame.getSequence());
+        buf.putLong(frame.getTimestamp());
+        buf.putShort((short) width);
+        buf.putShort((short) height);
+        buf.putShort((short) rendition);
+        buf.putShort((short) channel);
+    }
+}
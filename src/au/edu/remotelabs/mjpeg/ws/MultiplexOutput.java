@@ -0,0 +1,405 @@
+/**
+ * MJPEG streaming application.
+ *
+ * @author Michael Diponio <michael.diponio@uts.edu.au>
+ * @date 19th October 2026
+ */
+
+package au.edu.remotelabs.mjpeg.ws;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+import javax.websocket.CloseReason;
+import javax.websocket.CloseReason.CloseCodes;
+import javax.websocket.RemoteEndpoint;
+import javax.websocket.SendResult;
+import javax.websocket.Session;
+
+import au.edu.remotelabs.mjpeg.dest.AdmissionController;
+import au.edu.remotelabs.mjpeg.dest.BandwidthGovernor;
+import au.edu.remotelabs.mjpeg.dest.FrameTransformer;
+import au.edu.remotelabs.mjpeg.source.Frame;
+import au.edu.remotelabs.mjpeg.source.FrameListener;
+import au.edu.remotelabs.mjpeg.source.SourceStream;
+
+/**
+ * Outputs frames from several streams on a single web socket connection. Each
+ * subscribed stream is a channel identified by a client chosen number which is
+ * included in the binary envelope of each frame.
+ * <br />
+ * Only the latest frame of each channel is held. Frames are sent one at a time
+ * using credits granted for the whole connection and channels are scheduled with
+ * deficit round robin, so a channel sending large frames gets the same share of
+ * the connection as the other channels rather than starving them.
+ */
+public class MultiplexOutput
+{
+    /** Number of bytes a channel may send each scheduling round. */
+    private static final int QUANTUM = 32 * 1024;
+
+    /** Web socket session. */
+    private final Session session;
+
+    /** Web socket remote end point. */
+    private final RemoteEndpoint.Async endpoint;
+
+    /** Subscribed channels in scheduling order. */
+    private final List<Channel> channels;
+
+    /** Control replies waiting to be sent. */
+    private final List<String> replies;
+
+    /** Position in channel list of the next channel to schedule. */
+    private int cursor;
+
+    /** Number of frames the client is willing to receive. */
+    private final AtomicInteger credits;
+
+    /** Whether a frame is currently being sent. */
+    private boolean sending;
+
+    /** Whether this output has been closed. */
+    private volatile boolean closed;
+
+    /** Bandwidth budget of this connection. */
+    private final BandwidthGovernor.Client client;
+
+    /** Logger. */
+    private final Logger logger;
+
+    public MultiplexOutput(Session session)
+    {
+        this.logger = Logger.getLogger(getClass().getName());
+
+        this.session = session;
+        this.endpoint = session.getAsyncRemote();
+        this.channels = new ArrayList<>();
+        this.replies = new ArrayList<>();
+        this.credits = new AtomicInteger();
+        this.client = BandwidthGovernor.get().open();
+    }
+
+    /**
+     * Subscribes a channel to a stream. If the channel is already subscribed,
+     * it is first unsubscribed. The channel holds the admission ticket of the
+     * subscription, which is released when the channel is unsubscribed.
+     *
+     * @param id channel identifier
+     * @param source stream to subscribe to
+     * @param ticket admitted ticket with the transform parameters
+     * @return whether successfully subscribed
+     */
+    public boolean subscribe(int id, SourceStream source, AdmissionController.Ticket ticket)
+    {
+        this.unsubscribe(id);
+
+        Map<String, String> params = ticket.getParams();
+        Channel channel = new Channel(id, source, FrameTransformer.get(source, params), ticket);
+        synchronized (this)
+        {
+            this.channels.add(channel);
+        }
+
+        if (!source.register(channel, FrameTransformer.demand(params)))
+        {
+            this.unsubscribe(id);
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Unsubscribes a channel.
+     *
+     * @param id channel identifier
+     */
+    public void unsubscribe(int id)
+    {
+        Channel channel = null;
+        synchronized (this)
+        {
+            for (int i = 0; i < this.channels.size(); i++)
+            {
+                if (this.channels.get(i).id == id)
+                {
+                    channel = this.channels.remove(i);
+                    if (this.cursor > i) this.cursor--;
+                    break;
+                }
+            }
+        }
+
+        if (channel != null) channel.release();
+    }
+
+    /**
+     * Grants credits to send frames on any channel.
+     *
+     * @param num number of credits granted
+     */
+    public void grant(int num)
+    {
+        this.credits.accumulateAndGet(num, (int c, int n) ->
+                Math.max(0, Math.min(c + n, WebSocketOutput.MAX_CREDITS)));
+        this.schedule();
+    }
+
+    /**
+     * Sends a control reply to the client. Replies are sent ahead of frames and
+     * do not require credit.
+     *
+     * @param reply reply text
+     */
+    public void reply(String reply)
+    {
+        synchronized (this)
+        {
+            this.replies.add(reply);
+        }
+
+        this.schedule();
+    }
+
+    /**
+     * Sends the next reply or frame if the connection is idle. Frames are only
+     * sent if the client has credit and a channel has a frame waiting.
+     */
+    private void schedule()
+    {
+        Channel channel = null;
+        Frame frame = null;
+
+        synchronized (this)
+        {
+            if (this.closed || this.sending) return;
+
+            if (!this.replies.isEmpty())
+            {
+                /* Only one message may be sent at a time so replies are sent in turn with frames. */
+                this.sending = true;
+                this.endpoint.sendText(this.replies.remove(0), this::sent);
+                return;
+            }
+
+            if (this.credits.get() <= 0) return;
+
+            boolean waiting = false;
+            for (Channel c : this.channels) waiting |= c.pending != null;
+            if (!waiting) return;
+
+            /* Deficit round robin, each visit to a channel with a waiting frame adds a quantum
+             * to its deficit and a frame is sent when the deficit covers its size. As some
+             * channel has a waiting frame, its deficit eventually covers its frame. */
+            for (;;)
+            {
+                if (this.cursor >= this.channels.size()) this.cursor = 0;
+                Channel c = this.channels.get(this.cursor);
+
+                if (c.pending == null)
+                {
+                    /* Idle channels do not accumulate credit. */
+                    c.deficit = 0;
+                }
+                else if (c.deficit >= c.estimateSize())
+                {
+                    c.deficit -= c.estimateSize();
+                    channel = c;
+                    frame = c.pending;
+                    c.pending = null;
+                    break;
+                }
+                else
+                {
+                    c.deficit += QUANTUM;
+                    if (c.deficit >= c.estimateSize()) continue;
+                }
+
+                this.cursor++;
+            }
+
+            this.sending = true;
+            this.credits.decrementAndGet();
+        }
+
+        Channel ch = channel;
+        Frame fr = frame;
+        WebSocketOutput.senders.execute(() -> this.send(ch, fr));
+    }
+
+    /**
+     * Transforms and sends a frame on a channel.
+     *
+     * @param channel channel frame is for
+     * @param frame frame to send
+     */
+    private void send(Channel channel, Frame frame)
+    {
+        try
+        {
+            if (this.closed) return;
+
+            frame = channel.transformer.transform(frame);
+            channel.size = frame.getContentLength();
+
+            ByteBuffer message = FrameEnvelope.get(frame, channel.transformer.getId(), channel.id);
+            if (!BandwidthGovernor.get().admit(this.client, channel.source.getName(), message.remaining(), 
+                    channel.first))
+            {
+                /* Over budget, the frame is dropped and its credit returned so other
+                 * channels and later frames may still be sent. */
+                synchronized (this)
+                {
+                    this.sending = false;
+                }
+                this.credits.incrementAndGet();
+                this.schedule();
+                return;
+            }
+
+            channel.first = false;
+            this.endpoint.sendBinary(message, this::sent);
+        }
+        catch (IOException | RuntimeException e)
+        {
+            this.logger.warning("Error sending frame for session " + this.session.getId() + ", error " +
+                    e.getClass().getName() + ": " + e.getMessage());
+            synchronized (this)
+            {
+                this.sending = false;
+            }
+            this.abort();
+        }
+    }
+
+    /**
+     * Completion of an asynchronous send.
+     *
+     * @param result send result
+     */
+    private void sent(SendResult result)
+    {
+        synchronized (this)
+        {
+            this.sending = false;
+        }
+
+        if (result.isOK())
+        {
+            this.schedule();
+        }
+        else
+        {
+            this.logger.fine("Failed sending frame for session " + this.session.getId() + ", error " +
+                    result.getException());
+            this.abort();
+        }
+    }
+
+    /**
+     * Closes the session after a send failure.
+     */
+    private void abort()
+    {
+        try
+        {
+            this.session.close(new CloseReason(CloseCodes.UNEXPECTED_CONDITION, "Send failed"));
+        }
+        catch (IOException e)
+        { }
+    }
+
+    /**
+     * Close this output releasing all channels.
+     */
+    public void close()
+    {
+        this.closed = true;
+
+        List<Channel> released;
+        synchronized (this)
+        {
+            released = new ArrayList<>(this.channels);
+            this.channels.clear();
+        }
+
+        for (Channel channel : released) channel.release();
+        BandwidthGovernor.get().close(this.client);
+    }
+
+    /**
+     * Subscription of the connection to a stream.
+     */
+    private class Channel implements FrameListener
+    {
+        /** Client chosen channel identifier. */
+        final int id;
+
+        /** Stream subscribed to. */
+        final SourceStream source;
+
+        /** Transformer to generate channel frames. */
+        final FrameTransformer transformer;
+
+        /** Admission of the subscription. */
+        final AdmissionController.Ticket ticket;
+
+        /** Latest frame waiting to be sent. */
+        Frame pending;
+
+        /** Number of bytes the channel may send before yielding to other channels. */
+        int deficit;
+
+        /** Size of the last frame sent on this channel. */
+        volatile int size;
+
+        /** Whether no frame has been sent on this channel. */
+        volatile boolean first = true;
+
+        Channel(int id, SourceStream source, FrameTransformer transformer, AdmissionController.Ticket ticket)
+        {
+            this.id = id;
+            this.source = source;
+            this.transformer = transformer;
+            this.ticket = ticket;
+        }
+
+        @Override
+        public void frameReceived(Frame frame)
+        {
+            synchronized (MultiplexOutput.this)
+            {
+                /* Replaces any frame that has not been sent, frames are not queued. */
+                this.pending = frame;
+            }
+
+            MultiplexOutput.this.schedule();
+        }
+
+        /**
+         * Estimates the size of the next frame sent on the channel.
+         *
+         * @return estimated size in bytes
+         */
+        int estimateSize()
+        {
+            return this.size > 0 ? this.size : this.pending.getContentLength();
+        }
+
+        /**
+         * Releases the subscription.
+         */
+        void release()
+        {
+            this.source.unregister(this);
+            FrameTransformer.unget(this.transformer);
+            AdmissionController.get().release(this.ticket);
+        }
+    }
+}
@@ -8,33 +8,84 @@
 package au.edu.remotelabs.mjpeg.ws;
 
 import java.io.IOException;
-import java.io.OutputStream;
-import java.io.Writer;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.nio.ByteBuffer;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
 
+import javax.websocket.CloseReason;
+import javax.websocket.CloseReason.CloseCodes;
 import javax.websocket.RemoteEndpoint;
+import javax.websocket.SendResult;
 import javax.websocket.Session;
 
+import au.edu.remotelabs.mjpeg.dest.BandwidthGovernor;
+import au.edu.remotelabs.mjpeg.dest.FramePacer;
 import au.edu.remotelabs.mjpeg.dest.FrameTransformer;
+import au.edu.remotelabs.mjpeg.source.Demand;
 import au.edu.remotelabs.mjpeg.source.Frame;
+import au.edu.remotelabs.mjpeg.source.FrameListener;
 import au.edu.remotelabs.mjpeg.source.SourceStream;
 
 /**
- * Outputs frames to the web socket either as JPEG binary blobs or as HTML
- * data URLs. 
+ * Outputs frames to the web socket either as binary envelopes containing 
+ * the JPEG and its metadata, or as HTML data URLs.
+ * <br />
+ * Frames are pushed to the client using credit based flow control. The client
+ * grants credits and each frame sent as it is read from the source consumes a
+ * credit. If the client has no credit or the previous frame is still being sent,
+ * the frame is dropped rather than queued.
+ * <br />
+ * The transforms and frame rate of the output may be changed while the session
+ * is open, the latest frame is then resent with the new transforms so the client
+ * sees the change without waiting for the next frame.
+ * <br />
+ * Binary sessions may request delta mode, where only the tiles of a frame that
+ * have changed since the last frame sent are sent. Keyframes containing the whole
+ * frame are sent periodically, when requested by the client and when the session
+ * cannot be brought up to date with tiles.
  */
-public class WebSocketOutput
+public class WebSocketOutput implements FrameListener
 {
+    /** Maximum number of credits a client may hold. */
+    public static final int MAX_CREDITS = 1000;
+
+    /** Interval between keyframes in delta mode in nanoseconds. */
+    private static final long KEYFRAME_INTERVAL = 10000000000L;
+
+    /** Threads which transform and send frames, shared by all sessions. */
+    static final ExecutorService senders = Executors.newFixedThreadPool(
+            Runtime.getRuntime().availableProcessors(), (Runnable r) -> {
+                Thread th = new Thread(r, "Web socket sender");
+                th.setDaemon(true);
+                return th;
+            });
+
+    /** Web socket session. */
+    private final Session session;
+
     /** Web socket remote end point. */
-    private final RemoteEndpoint.Basic endpoint;
+    private final RemoteEndpoint.Async endpoint;
     
     /** Source being sent out. */
     private final SourceStream source;
     
     /** Transformer to generate output frames. */
-    private final FrameTransformer transformer;
+    private volatile FrameTransformer transformer;
+
+    /** Pacer to limit frame rate, null if all frames may be sent. */
+    private volatile FramePacer pacer;
+
+    /** Frame size and rate needed from the source. */
+    private volatile Demand demand;
     
     /** Parameters requested. */
     private Map<String, String> requestParams;
@@ -42,19 +93,101 @@ public class WebSocketOutput
     /** Whether to output binary frames or data urls. */
     private final boolean binary;
 
+    /** Encoder of changed tiles if in delta mode, otherwise null. */
+    private DeltaEncoder delta;
+
+    /** Sequence of the last frame sent in delta mode, -1 if a keyframe is required. */
+    private int lastSent;
+
+    /** Encoder of the rendition of the last frame sent in delta mode. */
+    private DeltaEncoder lastEncoder;
+
+    /** Monotonic time the last keyframe was sent. */
+    private long lastKeyframe;
+
+    /** Whether the client has requested a keyframe. */
+    private volatile boolean keyframe;
+
+    /** Number of frames the client is willing to receive. */
+    private final AtomicInteger credits;
+
+    /** Whether a frame is currently being sent. */
+    private final AtomicBoolean sending;
+
+    /** Whether the latest frame should be resent after the current send completes. */
+    private final AtomicBoolean refresh;
+
+    /** Whether this output has been closed. */
+    private volatile boolean closed;
+
+    /** Bandwidth budget of this session. */
+    private final BandwidthGovernor.Client client;
+
+    /** Whether no frame has been sent yet. */
+    private boolean first;
+
+    /** Logger. */
+    private final Logger logger;
+
     public WebSocketOutput(Session session, SourceStream source)
     {
+        this(session, source, WebSocketOutput.requestParams(session));
+    }
+
+    public WebSocketOutput(Session session, SourceStream source, Map<String, String> params)
+    {
+        this.logger = Logger.getLogger(getClass().getName());
+
+        this.session = session;
         this.source = source;
-        
-        Map<String, List<String>> params = session.getRequestParameterMap();
-        this.requestParams = new HashMap<>(params.size());
-        params.forEach((String k, List<String> v) -> this.requestParams.put(k, v.get(0)));
+        this.requestParams = params;
         
         this.transformer = FrameTransformer.get(this.source, this.requestParams);
+        this.pacer = WebSocketOutput.pacer(source, this.requestParams, null);
+        this.demand = FrameTransformer.demand(this.requestParams);
         
         this.binary = this.requestParams.containsKey("bin") && this.requestParams.get("bin").charAt(0) == 't';
         
-        this.endpoint = session.getBasicRemote();
+        /* Delta mode requires binary messages to send tiles. */
+        if (this.binary && this.requestParams.containsKey("delta") && this.requestParams.get("delta").charAt(0) == 't')
+        {
+            this.delta = DeltaEncoder.get(this.transformer.getId());
+        }
+        this.lastSent = -1;
+
+        /* Clients may grant credits when connecting so frames are pushed immediately. */
+        this.credits = new AtomicInteger(WebSocketOutput.initialCredits(this.requestParams));
+        this.sending = new AtomicBoolean();
+        this.refresh = new AtomicBoolean();
+
+        this.client = BandwidthGovernor.get().open();
+        this.first = true;
+
+        this.endpoint = session.getAsyncRemote();
+    }
+
+    /**
+     * Gets the parameters of the request that opened a session.
+     *
+     * @param session web socket session
+     * @return map of parameter name to first value
+     */
+    public static Map<String, String> requestParams(Session session)
+    {
+        Map<String, List<String>> params = session.getRequestParameterMap();
+        Map<String, String> requestParams = new HashMap<>(params.size());
+        params.forEach((String k, List<String> v) -> requestParams.put(k, v.get(0)));
+        return requestParams;
+    }
+
+    /**
+     * Gets the source being sent.
+     *
+     * @return source stream
+     */
+    public SourceStream getSource()
+    {
+        return this.source;
     }
 
     /**
@@ -64,44 +197,362 @@ public class WebSocketOutput
      */
     public boolean setup()
     {
-        return this.source.register(this);
+        return this.source.register(this, this.demand);
     }
     
     /**
-     * Sends a frame down the web socket connection.
+     * Requests a single frame is sent down the web socket connection. The frame
+     * is the next frame read from the source.
+     */
+    public void pullFrame()
+    {
+        this.grant(1);
+    }
+
+    /**
+     * Grants credits to send frames as they are read from the source.
+     * 
+     * @param num number of credits granted
+     */
+    public void grant(int num)
+    {
+        this.credits.accumulateAndGet(num, (int c, int n) -> Math.max(0, Math.min(c + n, MAX_CREDITS)));
+    }
+
+    /**
+     * Changes the transforms and frame rate of the output. The transform list
+     * replaces the current transforms, the frame rate is only changed if
+     * specified and a rate of 0 sends all frames. The output switches to the
+     * transformer shared by other outputs with the same transforms, then resends
+     * the latest frame.
+     *
+     * @param params new transform and frame rate parameters
+     */
+    public void update(Map<String, String> params)
+    {
+        FrameTransformer previous;
+        synchronized (this)
+        {
+            if (this.closed) return;
+
+            /* The new transformer is acquired before the previous is released so a
+             * transformer common to both is not discarded and recreated. */
+            previous = this.transformer;
+            this.transformer = FrameTransformer.get(this.source, params);
+            this.pacer = WebSocketOutput.pacer(this.source, params, this.pacer);
+
+            /* The frame rate needed only changes if a frame rate is specified. */
+            Demand d = FrameTransformer.demand(params);
+            this.demand = params.containsKey("fr") || params.containsKey("frame_rate") ? d :
+                    new Demand(d.getWidth(), d.getHeight(), this.demand.getRate());
+
+            if (this.delta != null)
+            {
+                /* Tiles of the new rendition cannot be composited on the previous rendition. */
+                DeltaEncoder enc = this.delta;
+                this.delta = DeltaEncoder.get(this.transformer.getId());
+                DeltaEncoder.unget(enc);
+            }
+        }
+        FrameTransformer.unget(previous);
+        this.source.setDemand(this, this.demand);
+
+        this.logger.fine("Updated transforms for session " + this.session.getId() + " to " + 
+                this.transformer.getKey());
+
+        /* If a frame is being sent, the latest frame is resent when it completes. */
+        this.refresh.set(true);
+        this.resend();
+    }
+
+    /**
+     * Requests the next frame sent in delta mode is a keyframe.
+     */
+    public void requestKeyframe()
+    {
+        this.keyframe = true;
+    }
+
+    @Override
+    public void frameReceived(Frame frame)
+    {
+        /* Drop the frame if the client cannot receive it now. */
+        if (this.closed || this.credits.get() <= 0 || !this.sending.compareAndSet(false, true)) return;
+
+        FramePacer p = this.pacer;
+        if (p != null && !p.admit(frame))
+        {
+            /* Not yet time for the next frame at the requested rate. */
+            this.sending.set(false);
+            return;
+        }
+
+        /* A new frame is sent with the current transforms so no refresh is needed. */
+        this.refresh.set(false);
+        this.credits.decrementAndGet();
+        senders.execute(() -> this.send(frame));
+    }
+
+    /**
+     * Resends the latest frame if a refresh is pending and the client can 
+     * receive it.
+     */
+    private void resend()
+    {
+        Frame latest = this.source.getLastFrame();
+        if (latest == null || this.closed || this.credits.get() <= 0 || !this.sending.compareAndSet(false, true)) return;
+
+        if (!this.refresh.getAndSet(false))
+        {
+            this.sending.set(false);
+            return;
+        }
+
+        this.credits.decrementAndGet();
+        senders.execute(() -> this.send(latest));
+    }
+
+    /**
+     * Transforms and sends a frame. The send is asynchronous, completion
+     * allows the next frame to be sent.
+     *
+     * @param frame frame to send
+     */
+    private void send(Frame frame)
+    {
+        try
+        {
+            if (this.closed) return;
+
+            /* Transformer may be changed during the send. */
+            FrameTransformer tr;
+            DeltaEncoder enc;
+            synchronized (this)
+            {
+                tr = this.transformer;
+                enc = this.delta;
+            }
+            frame = tr.transform(frame);
+
+            if (this.binary)
+            {
+                int previous = this.lastSent;
+                ByteBuffer message = enc != null ? this.tiles(enc, frame) : null;
+
+                /* In delta mode, keyframes are needed to composite following tiles so are not dropped. */
+                boolean essential = this.first || enc != null && message == null;
+                if (message == null) message = FrameEnvelope.get(frame, tr.getId(), 0);
+
+                if (!this.admit(message.remaining(), essential))
+                {
+                    /* Following tiles must be relative to the last frame the client received. */
+                    this.lastSent = previous;
+                    return;
+                }
+                this.endpoint.sendBinary(message, this::sent);
+            }
+            else
+            {
+                String text = frame.getDataUrlText();
+                if (!this.admit(text.length(), this.first)) return;
+                this.endpoint.sendText(text, this::sent);
+            }
+        }
+        catch (IOException | RuntimeException e)
+        {
+            this.logger.warning("Error sending frame for session " + this.session.getId() + ", error " +
+                    e.getClass().getName() + ": " + e.getMessage());
+            this.sending.set(false);
+            this.abort();
+        }
+    }
+
+    /**
+     * Checks whether the bandwidth budget allows a message to be sent. If not,
+     * the frame is dropped and its credit returned.
+     *
+     * @param bytes message size
+     * @param essential whether the message must be sent
+     * @return true if the message may be sent
+     */
+    private boolean admit(int bytes, boolean essential)
+    {
+        if (BandwidthGovernor.get().admit(this.client, this.source.getName(), bytes, essential))
+        {
+            this.first = false;
+            return true;
+        }
+
+        this.credits.incrementAndGet();
+        this.sending.set(false);
+        return false;
+    }
+
+    /**
+     * Gets the message containing the tiles of the frame that changed since the
+     * last frame sent.
+     *
+     * @param enc encoder of rendition
+     * @param frame transformed frame to send
+     * @return tile message or null if a keyframe should be sent
+     * @throws IOException error encoding tiles
+     */
+    private ByteBuffer tiles(DeltaEncoder enc, Frame frame) throws IOException
+    {
+        long now = System.nanoTime();
+        ByteBuffer message = null;
+        /* Sends are serialised so the last sent state is only accessed by one thread at a time. 
+         * Tiles cannot be composited on a frame of a different rendition. */
+        if (!this.keyframe && this.lastSent >= 0 && enc == this.lastEncoder && 
+                now - this.lastKeyframe < KEYFRAME_INTERVAL)
+        {
+            message = enc.tiles(frame, this.lastSent, 0);
+        }
+
+        if (message == null)
+        {
+            /* Keyframe, following tiles are relative to it if the encoder has processed it. */
+            this.keyframe = false;
+            this.lastKeyframe = now;
+            this.lastSent = enc.advance(frame) ? frame.getSequence() : -1;
+        }
+        else
+        {
+            this.lastSent = frame.getSequence();
+        }
+
+        this.lastEncoder = enc;
+        return message;
+    }
+
+    /**
+     * Gets the credits granted when connecting. A grant that is not a number
+     * or is not positive grants a single credit, so the client is sent a frame.
      * 
-     * @throws IOException error sending frame
+     * @param params request parameters
+     * @return number of credits, 0 if none granted
      */
-    public void pullFrame() throws IOException
+    private static int initialCredits(Map<String, String> params)
     {
-        Frame frame = this.source.nextFrame();
-        if (frame == null) return;
+        if (!params.containsKey("credits")) return 0;
+
+        try
+        {
+            return Math.max(1, Math.min(Integer.parseInt(params.get("credits")), MAX_CREDITS));
+        }
+        catch (NumberFormatException e)
+        {
+            return 1;
+        }
+    }
 
-        frame = this.transformer.transform(frame);
+    /**
+     * Completion of an asynchronous send.
+     *
+     * @param result send result
+     */
+    private void sent(SendResult result)
+    {
+        this.sending.set(false);
 
-        if (this.binary)
+        if (result.isOK())
         {
-            OutputStream out = this.endpoint.getSendStream();
-            frame.writeTo(out);
-            out.close();
+            if (this.refresh.get()) this.resend();
         }
         else
         {
-            Writer writer = this.endpoint.getSendWriter();
-            writer.write("data:");
-            writer.write(frame.getContentType());
-            writer.write(";base64,");
-            frame.writeTo(writer);
-            writer.close();
+            this.logger.fine("Failed sending frame for session " + this.session.getId() + ", error " +
+                    result.getException());
+            this.abort();
         }
     }
+
+    /**
+     * Creates a pacer for the frame rate specified in parameters.
+     *
+     * @param source source stream being sent
+     * @param params request parameters
+     * @param current current pacer, returned if the frame rate is not specified
+     * @return pacer or null if all frames may be sent
+     */
+    private static FramePacer pacer(SourceStream source, Map<String, String> params, FramePacer current)
+    {
+        String fr = params.containsKey("frame_rate") ? params.get("frame_rate") : params.get("fr");
+        if (fr == null) return current;
+
+        try
+        {
+            double rate = Double.parseDouble(fr);
+            return rate > 0 ? new FramePacer(source, rate) : null;
+        }
+        catch (NumberFormatException e)
+        {
+            return current;
+        }
+    }
+
+    /**
+     * Parses a URL query string into parameters, in the order they are specified.
+     *
+     * @param query query string
+     * @return parameters
+     */
+    public static Map<String, String> parseParams(String query)
+    {
+        Map<String, String> params = new LinkedHashMap<>();
+        for (String param : query.split("&"))
+        {
+            if (param.isEmpty()) continue;
+
+            int e = param.indexOf('=');
+            params.put(decode(e > 0 ? param.substring(0, e) : param), e > 0 ? decode(param.substring(e + 1)) : "");
+        }
+        return params;
+    }
+
+    /**
+     * Decodes a URL encoded parameter.
+     *
+     * @param param encoded parameter
+     * @return decoded parameter
+     */
+    private static String decode(String param)
+    {
+        try
+        {
+            return URLDecoder.decode(param, "UTF-8");
+        }
+        catch (UnsupportedEncodingException e)
+        {
+            return param;
+        }
+    }
+
+    /**
+     * Closes the session after a send failure.
+     */
+    private void abort()
+    {
+        try
+        {
+            this.session.close(new CloseReason(CloseCodes.UNEXPECTED_CONDITION, "Send failed"));
+        }
+        catch (IOException e)
+        { }
+    }
     
     /**
      * Close this output releasing any held open resources.
      */
     public void close()
     {
+        synchronized (this)
+        {
+            this.closed = true;
+        }
         this.source.unregister(this);
         FrameTransformer.unget(this.transformer);
+        if (this.delta != null) DeltaEncoder.unget(this.delta);
+        BandwidthGovernor.get().close(this.client);
     }
 }
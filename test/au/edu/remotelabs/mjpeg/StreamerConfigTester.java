@@ -43,6 +43,12 @@ public class StreamerConfigTester
         assertEquals("admin", this.config.getAdminUsername());
         assertEquals("passwd", this.config.getAdminPassword());
         assertEquals("asecret", this.config.getApiSecret());
+        assertEquals(50000, this.config.getGlobalBandwidth());
+        assertEquals(0, this.config.getStreamBandwidth());
+        assertEquals(2000, this.config.getClientBandwidth());
+        assertEquals(75, this.config.getCpuBudget());
+        assertEquals(0, this.config.getViewerLimit());
+        assertEquals(20, this.config.getStreamViewerLimit());
         
         Map<String, Stream> streams = this.config.getStreams();
         assertEquals(2, streams.size());
@@ -65,6 +71,14 @@ public class StreamerConfigTester
         assertTrue(shaker1.resettable);
         assertEquals("shake", shaker1.password);
         assertTrue(shaker1.ondemand);
+        assertEquals(4, shaker1.jitterFrames);
+        assertEquals(150, shaker1.jitterLatency);
+        assertTrue(shaker1.dedupe);
+        assertEquals(3, shaker1.dedupeThreshold);
+        assertEquals(5000, shaker1.dedupeKeepalive);
+        assertEquals(3000, shaker1.linger);
+        assertTrue(shaker1.prewarm);
+        assertEquals(60000, shaker1.prewarmLead);
         
         Stream ct1 = streams.get("coupledtanks1");
         assertNotNull(ct1);
@@ -78,6 +92,10 @@ public class StreamerConfigTester
         assertTrue(ct1.resettable);
         assertTrue(ct1.ondemand);
         assertNull(ct1.password);
+        assertEquals(0, ct1.jitterFrames);
+        assertFalse(ct1.dedupe);
+        assertEquals(0, ct1.linger);
+        assertFalse(ct1.prewarm);
     }
 
     @Test
@@ -0,0 +1,166 @@
+/**
+ * MJPEG streaming application.
+ * 
+ * @author Michael Diponio <michael.diponio@uts.edu.au>
+ * @date 19th October 2026
+ */
+
+package au.edu.remotelabs.mjpeg.dest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import au.edu.remotelabs.mjpeg.StreamerConfig;
+import au.edu.remotelabs.mjpeg.source.Frame;
+import au.edu.remotelabs.mjpeg.source.SourceStream;
+
+/**
+ * Tests the FramePacer class against a synthetic source.
+ */
+public class FramePacerTester
+{
+    /** Synthetic source frame period in milliseconds (30 frames a second). */
+    private static final double SOURCE_PERIOD = 1000 / 30.0;
+    
+    private SyntheticSource source;
+    
+    @Before
+    public void setUp() throws Exception
+    {
+        StreamerConfig config = new StreamerConfig("./resources/test/minimal-config.xml");
+        this.source = new SyntheticSource(config.getStream("ct"));
+        this.source.begin();
+    }
+    
+    @After
+    public void tearDown() throws Exception
+    {
+        this.source.end();
+    }
+
+    @Test
+    public void testIntegerRate() throws Exception
+    {
+        this.checkRate(7, 3000);
+    }
+    
+    @Test
+    public void testFractionalRate() throws Exception
+    {
+        this.checkRate(2.5, 3000);
+    }
+    
+    @Test
+    public void testRateAboveSource() throws Exception
+    {
+        /* Every source frame should be sent without duplicates. */
+        FramePacer pacer = new FramePacer(this.source, 60);
+        
+        int last = -1;
+        for (int i = 0; i < 30; i++)
+        {
+            Frame frame = pacer.nextFrame();
+            assertNotNull(frame);
+            assertTrue(frame.getSequence() > last);
+            last = frame.getSequence();
+        }
+    }
+    
+    /**
+     * Checks the delivered frame rate and each frame's timing against 
+     * its ideal emission time.
+     * 
+     * @param rate requested frame rate
+     * @param duration test duration in milliseconds
+     */
+    private void checkRate(double rate, long duration)
+    {
+        FramePacer pacer = new FramePacer(this.source, rate);
+        
+        List<Frame> frames = new ArrayList<>();
+        long end = System.nanoTime() + duration * 1000000;
+        while (System.nanoTime() < end)
+        {
+            Frame frame = pacer.nextFrame();
+            assertNotNull(frame);
+            frames.add(frame);
+        }
+        
+        long first = frames.get(0).getArrivalTime();
+        long last = frames.get(frames.size() - 1).getArrivalTime();
+        double delivered = (frames.size() - 1) * 1e9 / (last - first);
+        assertEquals("Delivered rate", rate, delivered, rate * 0.05);
+        
+        for (int i = 1; i < frames.size(); i++)
+        {
+            /* Each frame should be the source frame closest to its ideal time, 
+             * give or take scheduling noise. */
+            double ideal = first + i * 1e9 / rate;
+            double offset = Math.abs(frames.get(i).getArrivalTime() - ideal) / 1e6;
+            assertTrue("Frame " + i + " is " + offset + "ms from ideal time", offset < SOURCE_PERIOD / 2 + 10);
+            assertTrue(frames.get(i).getSequence() > frames.get(i - 1).getSequence());
+        }
+    }
+    
+    /**
+     * Source that generates frames at a fixed rate without a camera.
+     */
+    private static class SyntheticSource extends SourceStream
+    {
+        private Thread generator;
+        
+        private volatile boolean running;
+        
+        SyntheticSource(StreamerConfig.Stream config)
+        {
+            super(config);
+        }
+        
+        void begin()
+        {
+            this.running = true;
+            this.generator = new Thread(() -> {
+                long start = System.nanoTime();
+                int seq = 0;
+                while (this.running)
+                {
+                    long next = start + Math.round(seq * SOURCE_PERIOD * 1e6);
+                    long now = System.nanoTime();
+                    if (next > now)
+                    {
+                        try
+                        {
+                            Thread.sleep((next - now) / 1000000, (int)((next - now) % 1000000));
+                        }
+                        catch (InterruptedException e)
+                        {
+                            return;
+                        }
+                    }
+                    this.publish(new Frame("image/jpeg", new byte[] { (byte)0xFF, (byte)0xD8, (byte)0xFF, (byte)0xD9 }, seq++));
+                }
+            });
+            this.generator.start();
+        }
+        
+        void end() throws InterruptedException
+        {
+            this.running = false;
+            this.generator.join();
+        }
+        
+        @Override
+        public boolean isReading()
+        {
+            return this.running;
+        }
+    }
+}
@@ -0,0 +1,57 @@
+/**
+ * MJPEG streaming application.
+ * 
+ * @author Michael Diponio <michael.diponio@uts.edu.au>
+ * @date 19th October 2026
+ */
+
+package au.edu.remotelabs.mjpeg.dest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * Tests the request handling helpers of the JpegOutput class.
+ */
+public class JpegOutputTester
+{
+    @Test
+    public void testMatchesETag()
+    {
+        String etag = "\"12-18f3a\"";
+
+        assertTrue(JpegOutput.matchesETag("\"12-18f3a\"", etag));
+        assertTrue(JpegOutput.matchesETag("\"1-1\", \"12-18f3a\"", etag));
+        assertTrue(JpegOutput.matchesETag("W/\"12-18f3a\"", etag));
+        assertTrue(JpegOutput.matchesETag(" * ", etag));
+
+        /* Tags containing or contained by the frame tag are different frames. */
+        assertFalse(JpegOutput.matchesETag("\"12-18f3a0\"", etag));
+        assertFalse(JpegOutput.matchesETag("\"112-18f3a\"", etag));
+        assertFalse(JpegOutput.matchesETag("\"12-18f3a\"x", etag));
+        assertFalse(JpegOutput.matchesETag("", etag));
+    }
+
+    @Test
+    public void testParams()
+    {
+        Map<String, String> params = new HashMap<>();
+        assertEquals(-1, JpegOutput.getAfter(params));
+
+        params.put("after", "abc");
+        params.put("timeout", "abc");
+        assertEquals(-1, JpegOutput.getAfter(params));
+        assertEquals(JpegOutput.getTimeout(new HashMap<>()), JpegOutput.getTimeout(params));
+
+        params.put("after", "42");
+        params.put("timeout", "-5");
+        assertEquals(42, JpegOutput.getAfter(params));
+        assertEquals(0, JpegOutput.getTimeout(params));
+    }
+}
@@ -0,0 +1,50 @@
+/**
+ * MJPEG streaming application.
+ *
+ * @author Michael Diponio <michael.diponio@uts.edu.au>
+ * @date 19th October 2026
+ */
+
+package au.edu.remotelabs.mjpeg.source;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+
+import org.junit.Test;
+
+/**
+ * Tests the AccessHistory class.
+ */
+public class AccessHistoryTester
+{
+    /** Length of a week in milliseconds. */
+    private static final long WEEK = 7 * 24 * 3600 * 1000L;
+
+    /** Start of a weekly session, Monday at 9am. */
+    private static final long SESSION = ZonedDateTime.of(2026, 10, 12, 9, 0, 0, 0, ZoneOffset.UTC).toInstant().toEpochMilli();
+
+    @Test
+    public void testWeeklySession() throws Exception
+    {
+        AccessHistory history = new AccessHistory(ZoneOffset.UTC);
+
+        /* A single week is not a pattern, however many viewers arrived. */
+        history.recordArrival(SESSION);
+        assertFalse(history.isExpected(SESSION + 60000));
+        history.recordArrival(SESSION + 60000);
+        assertFalse(history.isExpected(SESSION + WEEK));
+
+        history.recordArrival(SESSION + WEEK);
+        assertFalse(history.isExpected(SESSION + WEEK + 60000));
+        assertTrue(history.isExpected(SESSION + 2 * WEEK));
+        assertTrue(history.isExpected(SESSION + 2 * WEEK + AccessHistory.SLOT - 1));
+        assertFalse(history.isExpected(SESSION + 2 * WEEK + AccessHistory.SLOT));
+        assertFalse(history.isExpected(SESSION + 2 * WEEK + 24 * 3600 * 1000L));
+
+        /* Sessions that stop are forgotten. */
+        assertFalse(history.isExpected(SESSION + 5 * WEEK));
+    }
+}
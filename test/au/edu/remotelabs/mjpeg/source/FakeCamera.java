@@ -0,0 +1,229 @@
+/**
+ * MJPEG streaming application.
+ *
+ * @author Michael Diponio <michael.diponio@uts.edu.au>
+ * @date 19th October 2026
+ */
+
+package au.edu.remotelabs.mjpeg.source;
+
+import java.awt.image.BufferedImage;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Local M-JPEG camera that misbehaves on request, for testing how sources
+ * handle failing cameras.
+ */
+public class FakeCamera
+{
+    /** Behaviour of a connection. */
+    public enum Mode
+    {
+        STREAM, // Sends frames until the connection is closed
+        STALL,  // Sends a few frames then stops sending without closing
+        DROP,   // Sends a few frames then closes the connection
+        REFUSE  // Closes the connection without responding
+    }
+
+    /** Number of frames sent before stalling or dropping. */
+    public static final int FRAMES_BEFORE_FAILURE = 5;
+
+    /** Interval between frames in milliseconds. */
+    public static final int FRAME_PERIOD = 50;
+
+    /** Number of distinct frames sent before they repeat. */
+    private static final int DISTINCT_FRAMES = 256;
+
+    /** Boundary between frames. */
+    private static final String BOUNDARY = "fakeframe";
+
+    /** Server socket accepting connections. */
+    private final ServerSocket server;
+
+    /** Behaviour of each connection, the last is repeated for later connections. */
+    private volatile Mode modes[];
+
+    /** Number of connections accepted. */
+    private final AtomicInteger connections;
+
+    /** Frames sent by the camera, chosen by the time so cameras send the same frame
+     *  at the same time. */
+    private final byte frames[][];
+
+    /** Time in milliseconds each frame is delayed. */
+    private volatile int delay;
+
+    /** Whether the camera is closed. */
+    private volatile boolean closed;
+
+    public FakeCamera(Mode... modes) throws IOException
+    {
+        this.modes = modes;
+        this.connections = new AtomicInteger();
+        this.frames = new byte[DISTINCT_FRAMES][];
+        for (int i = 0; i < DISTINCT_FRAMES; i++) this.frames[i] = FakeCamera.encodeFrame(i);
+        this.server = new ServerSocket(0);
+
+        Thread acceptor = new Thread(this::accept, "Fake camera");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    /**
+     * Accepts connections, serving each on its own thread.
+     */
+    private void accept()
+    {
+        while (!this.closed)
+        {
+            try
+            {
+                Socket socket = this.server.accept();
+                int num = this.connections.getAndIncrement();
+                Mode mode = this.modes[Math.min(num, this.modes.length - 1)];
+
+                Thread th = new Thread(() -> this.serve(socket, mode), "Fake camera connection " + num);
+                th.setDaemon(true);
+                th.start();
+            }
+            catch (IOException e)
+            {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Serves a connection.
+     *
+     * @param socket connection
+     * @param mode behaviour of the connection
+     */
+    private void serve(Socket socket, Mode mode)
+    {
+        try (Socket s = socket)
+        {
+            /* Read the request headers. */
+            BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.US_ASCII));
+            String line;
+            while ((line = in.readLine()) != null && !line.isEmpty());
+
+            if (mode == Mode.REFUSE) return;
+
+            OutputStream out = s.getOutputStream();
+            out.write(("HTTP/1.1 200 OK\r\n" +
+                    "Content-Type: multipart/x-mixed-replace;boundary=" + BOUNDARY + "\r\n" +
+                    "Connection: close\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+
+            long tick = System.currentTimeMillis() / FRAME_PERIOD + 1;
+            for (int i = 0; !this.closed; i++, tick++)
+            {
+                long wait = tick * FRAME_PERIOD + this.delay - System.currentTimeMillis();
+                if (wait > 0) Thread.sleep(wait);
+
+                if (mode != Mode.STREAM && i == FRAMES_BEFORE_FAILURE)
+                {
+                    if (mode == Mode.DROP) return;
+
+                    /* Stalled, the connection stays open without sending anything. */
+                    while (!this.closed && !s.isClosed()) Thread.sleep(100);
+                    return;
+                }
+
+                byte frame[] = this.frames[(int)(tick % DISTINCT_FRAMES)];
+                out.write(("--" + BOUNDARY + "\r\n" +
+                        "Content-Type: image/jpeg\r\n" +
+                        "Content-Length: " + frame.length + "\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+                out.write(frame);
+                out.write("\r\n".getBytes(StandardCharsets.US_ASCII));
+                out.flush();
+            }
+        }
+        catch (IOException | InterruptedException e)
+        {
+            /* Client has disconnected. */
+        }
+    }
+
+    /**
+     * Changes the behaviour of later connections.
+     *
+     * @param modes behaviour of each later connection, the last is repeated
+     */
+    public void setModes(Mode... modes)
+    {
+        this.connections.set(0);
+        this.modes = modes;
+    }
+
+    /**
+     * Sets the time each frame is delayed, as if the camera was further away.
+     *
+     * @param delay delay in milliseconds
+     */
+    public void setDelay(int delay)
+    {
+        this.delay = delay;
+    }
+
+    /**
+     * Gets the URL of the camera stream.
+     *
+     * @return URL
+     */
+    public String getURL()
+    {
+        return "http://localhost:" + this.server.getLocalPort() + "/camera.mjpg";
+    }
+
+    /**
+     * Gets the number of connections accepted.
+     *
+     * @return number of connections
+     */
+    public int getConnections()
+    {
+        return this.connections.get();
+    }
+
+    /**
+     * Closes the camera.
+     *
+     * @throws IOException error closing
+     */
+    public void close() throws IOException
+    {
+        this.closed = true;
+        this.server.close();
+    }
+
+    /**
+     * Encodes a small JPEG frame with blocks showing the bits of the frame number.
+     *
+     * @param num frame number
+     * @return JPEG bytes
+     * @throws IOException error encoding
+     */
+    static byte[] encodeFrame(int num) throws IOException
+    {
+        BufferedImage image = new BufferedImage(16, 16, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < 16; y++)
+        {
+            for (int x = 0; x < 16; x++) image.setRGB(x, y, (num >> (y / 8 * 4 + x / 4) & 1) == 1 ? 0xFFFFFF : 0);
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "jpeg", out);
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,188 @@
+/**
+ * MJPEG streaming application.
+ *
+ * @author Michael Diponio <michael.diponio@uts.edu.au>
+ * @date 19th October 2026
+ */
+
+package au.edu.remotelabs.mjpeg.source;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Test;
+
+import au.edu.remotelabs.mjpeg.source.FrameDeduplicator.Fingerprint;
+import au.edu.remotelabs.mjpeg.source.FrameDeduplicator.Result;
+
+/**
+ * Tests the FrameDeduplicator and DcImageDecoder classes.
+ */
+public class FrameDeduplicatorTester
+{
+    @Test
+    public void testExactDuplicate() throws Exception
+    {
+        byte image[] = FakeCamera.encodeFrame(1);
+
+        /* A changed comment, such as a timestamp, does not make a frame unique. */
+        ByteArrayOutputStream commented = new ByteArrayOutputStream();
+        commented.write(image, 0, 2);
+        commented.write(new byte[] { (byte) 0xFF, (byte) 0xFE, 0, 4, '1', '2' });
+        commented.write(image, 2, image.length - 2);
+
+        FrameDeduplicator dedupe = new FrameDeduplicator(0, 300);
+        assertEquals(Result.UNIQUE, dedupe.check(this.fingerprint(image, false)));
+        assertEquals(Result.DUPLICATE, dedupe.check(this.fingerprint(commented.toByteArray(), false)));
+        assertEquals(Result.DUPLICATE, dedupe.check(this.fingerprint(image, false)));
+
+        Thread.sleep(400);
+        assertEquals(Result.KEEPALIVE, dedupe.check(this.fingerprint(image, false)));
+        assertEquals(Result.DUPLICATE, dedupe.check(this.fingerprint(image, false)));
+        assertEquals(Result.UNIQUE, dedupe.check(this.fingerprint(FakeCamera.encodeFrame(2), false)));
+
+        assertEquals(6, dedupe.getChecked());
+        assertEquals(3, dedupe.getExact());
+        assertEquals(1, dedupe.getKeepalives());
+    }
+
+    @Test
+    public void testDcImage() throws Exception
+    {
+        /* Left half dark and right half light, with a size not a multiple of the MCU size. */
+        BufferedImage image = new BufferedImage(60, 44, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < 44; y++)
+        {
+            for (int x = 0; x < 60; x++) image.setRGB(x, y, x < 32 ? 0x323232 : 0xC8C8C8);
+        }
+        byte jpeg[] = this.encode(image);
+
+        DcImageDecoder decoder = new DcImageDecoder();
+        assertTrue(decoder.decode(jpeg));
+        assertEquals(8, decoder.getGridWidth());
+        assertEquals(6, decoder.getGridHeight());
+
+        int grid[] = Arrays.copyOf(decoder.getGrid(), 48);
+        for (int i = 0; i < 48; i++)
+        {
+            assertEquals("Cell " + i, i % 8 < 4 ? 50 : 200, grid[i], 3);
+        }
+
+        /* Without its Huffman tables the image is decoded with the standard tables. */
+        assertTrue(decoder.decode(this.stripHuffmanTables(jpeg)));
+        assertArrayEquals(grid, Arrays.copyOf(decoder.getGrid(), 48));
+    }
+
+    @Test
+    public void testSimilar() throws Exception
+    {
+        Random random = new Random(7);
+        BufferedImage base = new BufferedImage(320, 240, BufferedImage.TYPE_INT_RGB);
+        BufferedImage noisy = new BufferedImage(320, 240, BufferedImage.TYPE_INT_RGB);
+        BufferedImage moved = new BufferedImage(320, 240, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < 240; y++)
+        {
+            for (int x = 0; x < 320; x++)
+            {
+                int v = x * 200 / 320 + 20;
+                int n = v + random.nextInt(5) - 2;
+                int m = x >= 100 && x < 130 && y >= 100 && y < 130 ? 255 : v;
+                base.setRGB(x, y, v << 16 | v << 8 | v);
+                noisy.setRGB(x, y, n << 16 | n << 8 | n);
+                moved.setRGB(x, y, m << 16 | m << 8 | m);
+            }
+        }
+
+        /* One fingerprint of each frame is checked by both deduplicators, as when streams share a source. */
+        Fingerprint prints[] = { this.fingerprint(this.encode(base), true),
+                this.fingerprint(this.encode(noisy), true), this.fingerprint(this.encode(moved), true) };
+
+        FrameDeduplicator exact = new FrameDeduplicator(0, 10000);
+        assertEquals(Result.UNIQUE, exact.check(prints[0]));
+        assertEquals(Result.UNIQUE, exact.check(prints[1]));
+
+        FrameDeduplicator similar = new FrameDeduplicator(4, 10000);
+        assertEquals(Result.UNIQUE, similar.check(prints[0]));
+        assertEquals(Result.DUPLICATE, similar.check(prints[1]));
+        assertEquals(Result.UNIQUE, similar.check(prints[2]));
+        assertEquals(1, similar.getSimilar());
+    }
+
+    @Test
+    public void testOversizedFrame() throws Exception
+    {
+        byte jpeg[] = this.encode(new BufferedImage(64, 48, BufferedImage.TYPE_INT_RGB));
+
+        /* A frame declaring a far larger size than its data stops decoding when the data runs out. */
+        int pos = 2;
+        while ((jpeg[pos + 1] & 0xFF) != 0xC0) pos += 2 + ((jpeg[pos + 2] & 0xFF) << 8 | jpeg[pos + 3] & 0xFF);
+        for (int i = pos + 5; i < pos + 9; i++) jpeg[i] = (byte) 0xFF;
+
+        long start = System.nanoTime();
+        assertFalse(new DcImageDecoder().decode(jpeg));
+        assertTrue((System.nanoTime() - start) / 1000000 < 1000);
+    }
+
+    /**
+     * Fingerprints a frame.
+     *
+     * @param image frame bytes
+     * @param dc whether to decode the DC image
+     * @return fingerprint
+     */
+    private Fingerprint fingerprint(byte image[], boolean dc)
+    {
+        return FrameDeduplicator.fingerprint(image, dc ? new DcImageDecoder() : null);
+    }
+
+    /**
+     * Encodes an image as a JPEG with the default quality.
+     *
+     * @param image image
+     * @return JPEG bytes
+     * @throws IOException error encoding
+     */
+    private byte[] encode(BufferedImage image) throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "jpeg", out);
+        return out.toByteArray();
+    }
+
+    /**
+     * Removes the Huffman table segments of a JPEG, as many M-JPEG sources do.
+     *
+     * @param jpeg image bytes
+     * @return image without Huffman tables
+     */
+    private byte[] stripHuffmanTables(byte jpeg[])
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(jpeg, 0, 2);
+
+        int pos = 2;
+        while (true)
+        {
+            int marker = jpeg[pos + 1] & 0xFF;
+            int end = pos + 2 + ((jpeg[pos + 2] & 0xFF) << 8 | jpeg[pos + 3] & 0xFF);
+            if (marker == 0xDA)
+            {
+                out.write(jpeg, pos, jpeg.length - pos);
+                return out.toByteArray();
+            }
+
+            if (marker != 0xC4) out.write(jpeg, pos, end - pos);
+            pos = end;
+        }
+    }
+}
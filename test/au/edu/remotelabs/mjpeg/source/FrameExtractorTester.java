@@ -0,0 +1,135 @@
+/**
+ * MJPEG streaming application.
+ *
+ * @author Michael Diponio <michael.diponio@uts.edu.au>
+ * @date 19th October 2026
+ */
+
+package au.edu.remotelabs.mjpeg.source;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+/**
+ * Tests the FrameExtractor class.
+ */
+public class FrameExtractorTester
+{
+    @Test
+    public void testArbitraryHeaders() throws Exception
+    {
+        byte image[] = FakeCamera.encodeFrame(1);
+
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        this.write(stream, "--frame\r\nContent-Length: " + image.length + "\r\nX-Timestamp: 1234\r\n" +
+                "content-type:image/jpeg\r\n\r\n");
+        stream.write(image);
+        this.write(stream, "\r\n--frame\r\n");
+
+        FrameExtractor extractor = new FrameExtractor(this.trickle(stream.toByteArray()));
+        FrameExtractor.Part part = extractor.nextPart("--frame");
+        assertEquals(image.length, part.getContentLength());
+        assertEquals("image/jpeg", part.getContentType());
+        assertEquals("1234", part.getHeaders().get("x-timestamp"));
+        assertArrayEquals(image, extractor.readBody(part.getContentLength()));
+    }
+
+    @Test
+    public void testScanWithoutLength() throws Exception
+    {
+        /* A comment containing an end of image marker must not end the frame. */
+        byte plain[] = FakeCamera.encodeFrame(5);
+        ByteArrayOutputStream jpeg = new ByteArrayOutputStream();
+        jpeg.write(plain, 0, 2);
+        jpeg.write(new byte[] { (byte) 0xFF, (byte) 0xFE, 0, 6, 'a', (byte) 0xFF, (byte) 0xD9, 'b' });
+        jpeg.write(plain, 2, plain.length - 2);
+        byte image[] = jpeg.toByteArray();
+        assertTrue(FrameExtractor.isValidJpeg(image));
+
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        for (int i = 0; i < 3; i++)
+        {
+            this.write(stream, "--frame\r\nContent-Type: image/jpeg\r\n\r\n");
+            stream.write(image);
+            this.write(stream, "\r\n");
+        }
+
+        FrameExtractor extractor = new FrameExtractor(this.trickle(stream.toByteArray()));
+        for (int i = 0; i < 3; i++)
+        {
+            FrameExtractor.Part part = extractor.nextPart("--frame");
+            assertEquals(-1, part.getContentLength());
+
+            /* A skipped frame leaves the stream at the next part. */
+            boolean keep = i != 1;
+            assertTrue(extractor.scanJpeg(keep));
+            if (keep) assertArrayEquals(image, extractor.takeFrame());
+        }
+    }
+
+    @Test
+    public void testInvalidJpeg() throws Exception
+    {
+        byte image[] = FakeCamera.encodeFrame(3);
+        assertTrue(FrameExtractor.isValidJpeg(image));
+
+        /* Padding after the end of image is allowed. */
+        byte padded[] = Arrays.copyOf(image, image.length + 2);
+        padded[image.length] = '\r';
+        padded[image.length + 1] = '\n';
+        assertTrue(FrameExtractor.isValidJpeg(padded));
+
+        assertFalse(FrameExtractor.isValidJpeg(Arrays.copyOf(image, image.length / 2)));
+        assertFalse(FrameExtractor.isValidJpeg(new byte[] { (byte) 0xFF, (byte) 0xD8, (byte) 0xFF, (byte) 0xD9 }));
+
+        byte broken[] = image.clone();
+        broken[5]++;
+        assertFalse(FrameExtractor.isValidJpeg(broken));
+
+        FrameExtractor extractor = new FrameExtractor(new ByteArrayInputStream(
+                "--frame\r\n\r\nnot a jpeg\r\n".getBytes(StandardCharsets.US_ASCII)));
+        extractor.nextPart("--frame");
+        assertFalse(extractor.scanJpeg(true));
+    }
+
+    /**
+     * Writes ASCII text to a stream.
+     *
+     * @param stream stream
+     * @param text text
+     * @throws IOException error writing
+     */
+    private void write(ByteArrayOutputStream stream, String text) throws IOException
+    {
+        stream.write(text.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * Creates a stream that returns a few bytes at a time, so reads cross the
+     * extractor buffer boundaries.
+     *
+     * @param bytes stream bytes
+     * @return stream
+     */
+    private InputStream trickle(byte bytes[])
+    {
+        return new ByteArrayInputStream(bytes) {
+            @Override
+            public synchronized int read(byte b[], int off, int len)
+            {
+                return super.read(b, off, Math.min(len, 7));
+            }
+        };
+    }
+}
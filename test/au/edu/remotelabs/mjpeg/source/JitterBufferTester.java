@@ -0,0 +1,187 @@
+/**
+ * MJPEG streaming application.
+ *
+ * @author Michael Diponio <michael.diponio@uts.edu.au>
+ * @date 19th October 2026
+ */
+
+package au.edu.remotelabs.mjpeg.source;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import au.edu.remotelabs.mjpeg.StreamerConfig;
+
+/**
+ * Tests the JitterBuffer class releasing frames to a stream.
+ */
+public class JitterBufferTester
+{
+    /** Interval in milliseconds between frames offered to the buffer. */
+    private static final int INTERVAL = 40;
+
+    /** Frames released by the buffer. */
+    private List<Frame> released;
+
+    /** Monotonic times in nanoseconds frames were released. */
+    private List<Long> releaseTimes;
+
+    /** Stream frames are released to. */
+    private SourceStream source;
+
+    /** Buffer under test. */
+    private JitterBuffer buffer;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        this.released = new CopyOnWriteArrayList<>();
+        this.releaseTimes = new CopyOnWriteArrayList<>();
+
+        File file = File.createTempFile("jitter-test", ".xml");
+        file.deleteOnExit();
+        try (FileWriter writer = new FileWriter(file))
+        {
+            writer.write("<?xml version=\"1.0\" encoding=\"utf-8\" ?><streamer><streams><stream>" +
+                    "<name>jitter</name><url>http://localhost/camera.mjpg</url></stream></streams></streamer>");
+        }
+
+        this.source = new SourceStream(new StreamerConfig(file).getStream("jitter")) {
+            @Override
+            protected void publish(Frame frame)
+            {
+                JitterBufferTester.this.releaseTimes.add(System.nanoTime());
+                JitterBufferTester.this.released.add(frame);
+            }
+        };
+    }
+
+    @After
+    public void tearDown() throws Exception
+    {
+        if (this.buffer != null) this.buffer.stop();
+    }
+
+    @Test
+    public void testSteadyRelease() throws Exception
+    {
+        this.buffer = new JitterBuffer(this.source, 20, 2000);
+        this.buffer.start("jitter");
+
+        /* Frames read at a steady rate but delivered in one burst are released at that rate. */
+        this.burst(16, 0);
+        this.awaitReleased(16, 3000);
+
+        assertEquals(0, this.buffer.getDropped());
+        double mean = (this.releaseTimes.get(15) - this.releaseTimes.get(0)) / 15 / 1e6;
+        assertEquals(INTERVAL, mean, INTERVAL / 4.0);
+        for (int i = 1; i < 16; i++)
+        {
+            long gap = (this.releaseTimes.get(i) - this.releaseTimes.get(i - 1)) / 1000000;
+            assertTrue("Gap " + gap + " ms before frame " + i, gap >= INTERVAL / 2);
+        }
+    }
+
+    @Test
+    public void testLatencyBound() throws Exception
+    {
+        this.buffer = new JitterBuffer(this.source, 10, 100);
+        this.buffer.start("jitter");
+
+        /* Frames held longer than the latency bound are dropped, though the newest is released. */
+        this.burst(8, 0);
+        this.awaitReleased(1, 1000);
+        Thread.sleep(500);
+
+        assertTrue("Dropped " + this.buffer.getDropped(), this.buffer.getDropped() >= 5);
+        assertEquals(8, this.released.size() + this.buffer.getDropped());
+        assertEquals(7, this.released.get(this.released.size() - 1).getSequence());
+    }
+
+    @Test
+    public void testRestart() throws Exception
+    {
+        this.buffer = new JitterBuffer(this.source, 20, 2000);
+        this.buffer.start("jitter");
+        this.burst(2, 0);
+        this.awaitReleased(2, 1000);
+
+        /* A quick restart replaces the release thread rather than running two. */
+        this.buffer.stop();
+        this.buffer.start("jitter");
+        Thread.sleep(200);
+        assertEquals(1, this.countThreads());
+
+        this.released.clear();
+        this.releaseTimes.clear();
+        this.burst(12, 100);
+        this.awaitReleased(12, 3000);
+
+        double mean = (this.releaseTimes.get(11) - this.releaseTimes.get(0)) / 11 / 1e6;
+        assertEquals(INTERVAL, mean, INTERVAL / 4.0);
+
+        this.buffer.stop();
+        Thread.sleep(200);
+        assertEquals(0, this.countThreads());
+    }
+
+    /**
+     * Offers frames that were read at a steady interval, as if delivered at
+     * once by a bursty network. The buffer is locked while offering so the
+     * whole burst is buffered before any frame is released.
+     *
+     * @param count number of frames
+     * @param first sequence number of the first frame
+     */
+    private void burst(int count, int first)
+    {
+        synchronized (this.buffer)
+        {
+            long start = System.nanoTime() - (count - 1) * INTERVAL * 1000000L;
+            for (int i = 0; i < count; i++)
+            {
+                Frame frame = new Frame("image/jpeg", new byte[0], first + i);
+                frame.setArrivalTime(start + i * INTERVAL * 1000000L);
+                this.buffer.offer(frame);
+            }
+        }
+    }
+
+    /**
+     * Waits for frames to be released.
+     *
+     * @param count number of frames
+     * @param timeout maximum time to wait in milliseconds
+     * @throws InterruptedException interrupted waiting
+     */
+    private void awaitReleased(int count, long timeout) throws InterruptedException
+    {
+        long deadline = System.currentTimeMillis() + timeout;
+        while (this.released.size() < count && System.currentTimeMillis() < deadline) Thread.sleep(10);
+        assertTrue("Released " + this.released.size(), this.released.size() >= count);
+    }
+
+    /**
+     * Counts the live release threads of the buffer.
+     *
+     * @return number of threads
+     */
+    private int countThreads()
+    {
+        int count = 0;
+        for (Thread th : Thread.getAllStackTraces().keySet())
+        {
+            if (th.isAlive() && th.getName().equals("Jitter buffer: jitter")) count++;
+        }
+        return count;
+    }
+}
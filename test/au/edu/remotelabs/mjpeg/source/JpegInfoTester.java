@@ -0,0 +1,123 @@
+/**
+ * MJPEG streaming application.
+ *
+ * @author Michael Diponio <michael.diponio@uts.edu.au>
+ * @date 19th October 2026
+ */
+
+package au.edu.remotelabs.mjpeg.source;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+
+import org.junit.Test;
+
+/**
+ * Tests the JpegInfo class.
+ */
+public class JpegInfoTester
+{
+    @Test
+    public void testColour() throws Exception
+    {
+        byte jpeg[] = this.encode(new BufferedImage(64, 48, BufferedImage.TYPE_INT_RGB), 0.75f);
+        JpegInfo info = new Frame("image/jpeg", jpeg, 0).getJpegInfo();
+
+        assertNotNull(info);
+        assertEquals(64, info.getWidth());
+        assertEquals(48, info.getHeight());
+        assertEquals(8, info.getPrecision());
+        assertEquals(3, info.getComponents());
+        assertEquals("4:2:0", info.getSubsampling());
+        assertFalse(info.isProgressive());
+        assertTrue(info.hasHuffmanTables());
+        assertEquals(0, info.getRestartInterval());
+        assertEquals(75, info.getQuality(), 2);
+    }
+
+    @Test
+    public void testQuality() throws Exception
+    {
+        BufferedImage image = new BufferedImage(16, 16, BufferedImage.TYPE_BYTE_GRAY);
+        for (float q : new float[] { 0.2f, 0.5f, 0.9f })
+        {
+            byte jpeg[] = this.encode(image, q);
+            JpegInfo info = JpegInfo.parse(jpeg, jpeg.length);
+            assertNotNull(info);
+            assertEquals(1, info.getComponents());
+            assertNull(info.getSubsampling());
+            assertEquals(Math.round(q * 100), info.getQuality(), 2);
+        }
+    }
+
+    @Test
+    public void testNotJpeg() throws Exception
+    {
+        assertNull(new Frame("image/jpeg", new byte[] { 1, 2, 3, 4, 5 }, 0).getJpegInfo());
+        assertNull(JpegInfo.parse(new byte[] { (byte) 0xFF, (byte) 0xD8, (byte) 0xFF, (byte) 0xD9 }, 4));
+    }
+
+    @Test
+    public void testInvalidFrameHeader() throws Exception
+    {
+        byte jpeg[] = this.encode(new BufferedImage(64, 48, BufferedImage.TYPE_INT_RGB), 0.75f);
+
+        /* Find the luma sampling factors in the frame header. */
+        int pos = 2;
+        while ((jpeg[pos + 1] & 0xFF) != 0xC0) pos += 2 + ((jpeg[pos + 2] & 0xFF) << 8 | jpeg[pos + 3] & 0xFF);
+        int sampling = pos + 4 + 7;
+
+        jpeg[sampling] = 0x02;
+        assertNull(JpegInfo.parse(jpeg, jpeg.length));
+
+        jpeg[sampling] = 0x20;
+        assertNull(JpegInfo.parse(jpeg, jpeg.length));
+
+        /* A header truncated before its last component is also invalid. */
+        jpeg[sampling] = 0x22;
+        assertNotNull(JpegInfo.parse(jpeg, jpeg.length));
+        jpeg[pos + 3] -= 3;
+        assertNull(JpegInfo.parse(jpeg, jpeg.length));
+    }
+
+    /**
+     * Encodes an image as a JPEG.
+     *
+     * @param image image
+     * @param quality compression quality from 0 to 1
+     * @return JPEG bytes
+     * @throws IOException error encoding
+     */
+    private byte[] encode(BufferedImage image, float quality) throws IOException
+    {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        ImageWriteParam param = writer.getDefaultWriteParam();
+        param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+        param.setCompressionQuality(quality);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (MemoryCacheImageOutputStream stream = new MemoryCacheImageOutputStream(out))
+        {
+            writer.setOutput(stream);
+            writer.write(null, new IIOImage(image, null, null), param);
+        }
+        finally
+        {
+            writer.dispose();
+        }
+        return out.toByteArray();
+    }
+}
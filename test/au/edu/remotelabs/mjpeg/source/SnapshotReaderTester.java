@@ -0,0 +1,174 @@
+/**
+ * MJPEG streaming application.
+ *
+ * @author Michael Diponio <michael.diponio@uts.edu.au>
+ * @date 19th October 2026
+ */
+
+package au.edu.remotelabs.mjpeg.source;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import au.edu.remotelabs.mjpeg.StreamerConfig;
+
+/**
+ * Tests the SnapshotReader class polling a local snapshot server.
+ */
+public class SnapshotReaderTester
+{
+    /** Snapshot server. */
+    private HttpServer server;
+
+    /** Number of snapshot requests served. */
+    private AtomicInteger requests;
+
+    /** Client ports of connections requests were served on. */
+    private Set<Integer> connections;
+
+    /** Time in milliseconds each response is delayed. */
+    private volatile int delay;
+
+    /** Whether the snapshot changes with each request. */
+    private volatile boolean changing;
+
+    /** Source under test. */
+    private SourceStream source;
+
+    /** Destination registered to start reading. */
+    private final Object viewer = new Object();
+
+    @Before
+    public void setUp() throws Exception
+    {
+        this.requests = new AtomicInteger();
+        this.connections = ConcurrentHashMap.newKeySet();
+        this.changing = true;
+
+        this.server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        this.server.createContext("/snapshot.jpg", this::serve);
+        this.server.setExecutor(Executors.newCachedThreadPool());
+        this.server.start();
+
+        File file = File.createTempFile("snapshot-test", ".xml");
+        file.deleteOnExit();
+        try (FileWriter writer = new FileWriter(file))
+        {
+            writer.write("<?xml version=\"1.0\" encoding=\"utf-8\" ?><streamer><streams><stream>" +
+                    "<name>snapshot</name><url>http://localhost:" + this.server.getAddress().getPort() +
+                    "/snapshot.jpg</url><format><type>SNAPSHOT</type></format></stream></streams></streamer>");
+        }
+        this.source = new SourceStream(new StreamerConfig(file).getStream("snapshot"));
+    }
+
+    @After
+    public void tearDown() throws Exception
+    {
+        this.source.unregister(this.viewer);
+        this.server.stop(0);
+    }
+
+    @Test
+    public void testPollRate() throws Exception
+    {
+        this.source.register(this.viewer, new Demand(Integer.MAX_VALUE, Integer.MAX_VALUE, 5));
+        assertEquals(5, this.countFrames(2000), 1.5);
+
+        /* Requests reuse kept alive connections. */
+        assertTrue("Requests " + this.requests.get(), this.requests.get() >= 8);
+        assertTrue("Connections " + this.connections.size(), this.connections.size() <= 2);
+    }
+
+    @Test
+    public void testPipelined() throws Exception
+    {
+        /* Polling is not limited by the request latency. */
+        this.delay = 300;
+        this.source.register(this.viewer, new Demand(Integer.MAX_VALUE, Integer.MAX_VALUE, 5));
+        assertEquals(5, this.countFrames(3000), 1.5);
+    }
+
+    @Test
+    public void testUnchangedSkipped() throws Exception
+    {
+        this.changing = false;
+        this.source.register(this.viewer, new Demand(Integer.MAX_VALUE, Integer.MAX_VALUE, 10));
+        assertNotNull(this.source.frameAfter(-1, 5000));
+
+        Thread.sleep(1000);
+        assertEquals(0, this.source.getLastFrame().getSequence());
+        assertTrue("Requests " + this.requests.get(), this.requests.get() > 5);
+
+        this.changing = true;
+        assertNotNull(this.source.frameAfter(0, 5000));
+    }
+
+    /**
+     * Serves a snapshot.
+     *
+     * @param exchange request exchange
+     * @throws IOException error responding
+     */
+    private void serve(HttpExchange exchange) throws IOException
+    {
+        int num = this.requests.getAndIncrement();
+        this.connections.add(exchange.getRemoteAddress().getPort());
+
+        try
+        {
+            if (this.delay > 0) Thread.sleep(this.delay);
+        }
+        catch (InterruptedException e)
+        {
+            return;
+        }
+
+        byte image[] = FakeCamera.encodeFrame(this.changing ? num % 256 : 0);
+        exchange.getResponseHeaders().add("Content-Type", "image/jpeg");
+        exchange.sendResponseHeaders(200, image.length);
+        try (OutputStream out = exchange.getResponseBody())
+        {
+            out.write(image);
+        }
+    }
+
+    /**
+     * Measures the rate frames are published by the source.
+     *
+     * @param duration time in milliseconds to count frames for
+     * @return frames per second
+     */
+    private double countFrames(long duration)
+    {
+        Frame first = this.source.frameAfter(-1, 5000);
+        assertNotNull(first);
+
+        long end = System.currentTimeMillis() + duration;
+        Frame last = first;
+        while (System.currentTimeMillis() < end)
+        {
+            Frame frame = this.source.frameFollowing(last.getSequence(), 1000);
+            if (frame != null) last = frame;
+        }
+
+        return (last.getSequence() - first.getSequence()) * 1000.0 / duration;
+    }
+}
@@ -0,0 +1,411 @@
+/**
+ * MJPEG streaming application.
+ *
+ * @author Michael Diponio <michael.diponio@uts.edu.au>
+ * @date 19th October 2026
+ */
+
+package au.edu.remotelabs.mjpeg.source;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import au.edu.remotelabs.mjpeg.StreamerConfig;
+import au.edu.remotelabs.mjpeg.StreamerHolder;
+import au.edu.remotelabs.mjpeg.source.FakeCamera.Mode;
+
+/**
+ * Tests the SourceStream class reconnecting to a failing local camera.
+ */
+public class SourceStreamTester
+{
+    /** Cameras used by the test. */
+    private List<FakeCamera> cameras;
+
+    /** Source under test. */
+    private SourceStream source;
+
+    /** Destination registered to start reading. */
+    private final Object viewer = new Object();
+
+    @Before
+    public void setUp() throws Exception
+    {
+        this.cameras = new ArrayList<>();
+    }
+
+    @After
+    public void tearDown() throws Exception
+    {
+        if (this.source != null) this.source.unregister(this.viewer);
+        for (FakeCamera camera : this.cameras) camera.close();
+    }
+
+    @Test
+    public void testStallReconnect() throws Exception
+    {
+        FakeCamera camera = this.camera(Mode.STALL, Mode.STREAM);
+        this.source = this.source("<url>" + camera.getURL() + "</url><readTimeout>8000</readTimeout>");
+        this.source.register(this.viewer);
+
+        Frame last = this.source.frameAfter(FakeCamera.FRAMES_BEFORE_FAILURE - 2, 5000);
+        assertNotNull(last);
+
+        /* The stall is detected from the frame rate well before the read timeout. */
+        long start = System.nanoTime();
+        Frame next = this.source.frameAfter(FakeCamera.FRAMES_BEFORE_FAILURE - 1, 8000);
+        long recovery = (System.nanoTime() - start) / 1000000;
+
+        assertNotNull(next);
+        assertTrue("Recovered in " + recovery + " ms", recovery < 5000);
+        assertEquals(2, camera.getConnections());
+        assertEquals(1, this.source.getStats().get("reconnects").intValue());
+        assertFalse(this.source.isErrored());
+        assertFalse(this.source.isReconnecting());
+    }
+
+    @Test
+    public void testDropKeepsViewers() throws Exception
+    {
+        FakeCamera camera = this.camera(Mode.DROP, Mode.DROP, Mode.STREAM);
+        this.source = this.source("<url>" + camera.getURL() + "</url>");
+        this.source.register(this.viewer);
+
+        /* A viewer waiting for frames is not released while the source reconnects. */
+        int last = -1;
+        for (int i = 0; i < FakeCamera.FRAMES_BEFORE_FAILURE * 2 + 3; i++)
+        {
+            Frame frame = this.source.frameAfter(last, 5000);
+            assertNotNull("Frame " + i, frame);
+            last = frame.getSequence();
+        }
+
+        assertTrue(last >= FakeCamera.FRAMES_BEFORE_FAILURE * 2);
+        assertEquals(3, camera.getConnections());
+        assertEquals(2, this.source.getStats().get("reconnects").intValue());
+    }
+
+    @Test
+    public void testFailover() throws Exception
+    {
+        FakeCamera primary = this.camera(Mode.REFUSE);
+        FakeCamera backup = this.camera(Mode.STREAM);
+        this.source = this.source("<url>" + primary.getURL() + "</url><backup>" + backup.getURL() + "</backup>");
+        this.source.register(this.viewer);
+
+        assertNotNull(this.source.frameAfter(2, 5000));
+        assertTrue(primary.getConnections() > 0);
+        assertEquals(1, backup.getConnections());
+    }
+
+    @Test
+    public void testHedged() throws Exception
+    {
+        FakeCamera slow = this.camera(Mode.STREAM);
+        slow.setDelay(FakeCamera.FRAME_PERIOD * 2);
+        FakeCamera fast = this.camera(Mode.STREAM);
+        this.source = this.source("<url>" + slow.getURL() + "</url><hedge>" + fast.getURL() + "</hedge>");
+        this.source.register(this.viewer);
+
+        /* Each frame is published once, from whichever path read it first. */
+        Frame last = this.source.frameAfter(-1, 5000);
+        assertNotNull(last);
+        for (int i = 0; i < 40; i++)
+        {
+            Frame frame = this.source.frameFollowing(last.getSequence(), 5000);
+            assertNotNull(frame);
+            assertEquals(last.getSequence() + 1, frame.getSequence());
+            assertFalse("Duplicate frame " + frame.getSequence(), last.getBuffer().equals(frame.getBuffer()));
+            last = frame;
+        }
+
+        Map<String, Number> stats = this.source.getStats();
+        assertTrue("Fast path win rate " + stats.get("path1WinRate"), stats.get("path1WinRate").intValue() > 80);
+        assertTrue("Slow path win rate " + stats.get("path0WinRate"), stats.get("path0WinRate").intValue() < 20);
+        assertEquals(FakeCamera.FRAME_PERIOD * 2, stats.get("path0Latency").doubleValue(), FakeCamera.FRAME_PERIOD);
+    }
+
+    @Test
+    public void testSharedUpstream() throws Exception
+    {
+        FakeCamera camera = this.camera(Mode.STREAM);
+        FakeCamera other = this.camera(Mode.STREAM);
+        StreamerHolder holder = new StreamerHolder();
+        holder.init(this.config(
+                "<stream><name>a</name><url>" + camera.getURL() + "</url></stream>" +
+                "<stream><name>b</name><url>" + camera.getURL() + "</url><protect>true</protect>" +
+                        "<access>secret</access></stream>" +
+                "<stream><name>c</name><url>" + other.getURL() + "</url></stream>").getPath());
+        
+        try
+        {
+            SourceStream a = holder.getStream("a"), b = holder.getStream("b");
+            assertTrue(a.getUpstream() == b.getUpstream());
+            assertFalse(a.getUpstream() == holder.getStream("c").getUpstream());
+            
+            /* Both streams receive frames from a single camera connection. */
+            Object viewerA = new Object(), viewerB = new Object();
+            assertTrue(a.register(viewerA));
+            assertTrue(b.register(viewerB));
+            assertNotNull(a.frameAfter(2, 5000));
+            assertNotNull(b.frameAfter(2, 5000));
+            assertEquals(1, camera.getConnections());
+            assertEquals(0, other.getConnections());
+            assertEquals(2, b.getStats().get("attachedStreams").intValue());
+            
+            /* Disabling one stream does not affect the other. */
+            a.disable();
+            assertFalse(a.register(viewerA));
+            Frame last = b.getLastFrame();
+            assertNotNull(b.frameAfter(last.getSequence() + 2, 5000));
+            assertEquals(1, camera.getConnections());
+            
+            /* Reading stops when no stream is reading. */
+            b.unregister(viewerB);
+            assertFalse(b.isReading());
+            assertFalse(b.getUpstream().isReading());
+        }
+        finally
+        {
+            holder.destroy();
+        }
+    }
+
+    @Test
+    public void testProfileSwitch() throws Exception
+    {
+        FakeCamera full = this.camera(Mode.STREAM);
+        FakeCamera small = this.camera(Mode.STREAM);
+        this.source = this.source("<url>" + full.getURL() + "</url><profile><url>" + small.getURL() + "</url>" +
+                "<width>320</width><height>240</height></profile>");
+
+        /* A thumbnail viewer is served by the small profile, at the camera rate so
+         * frames are not decimated. */
+        this.source.register(this.viewer, new Demand(160, 120, 1000 / FakeCamera.FRAME_PERIOD));
+        Frame last = this.source.frameAfter(2, 5000);
+        assertNotNull(last);
+        assertEquals(0, full.getConnections());
+        assertEquals(1, small.getConnections());
+
+        /* A viewer of the full size switches up without interrupting frames. */
+        Object demanding = new Object();
+        this.source.register(demanding);
+        long deadline = System.currentTimeMillis() + 5000;
+        while (this.source.getStats().get("profile").intValue() != -1 && System.currentTimeMillis() < deadline)
+        {
+            long start = System.nanoTime();
+            Frame frame = this.source.frameFollowing(last.getSequence(), 5000);
+            assertNotNull(frame);
+            assertEquals(last.getSequence() + 1, frame.getSequence());
+            assertTrue((System.nanoTime() - start) / 1000000 < FakeCamera.FRAME_PERIOD * 4);
+            last = frame;
+        }
+        assertEquals(-1, this.source.getStats().get("profile").intValue());
+        assertEquals(1, full.getConnections());
+
+        /* Switching down waits in case the demanding viewer returns. */
+        this.source.unregister(demanding);
+        Thread.sleep(1000);
+        assertEquals(-1, this.source.getStats().get("profile").intValue());
+
+        deadline = System.currentTimeMillis() + 10000;
+        while (this.source.getStats().get("profile").intValue() != 0 && System.currentTimeMillis() < deadline)
+        {
+            Thread.sleep(100);
+        }
+        assertEquals(0, this.source.getStats().get("profile").intValue());
+        assertEquals(2, this.source.getStats().get("profileSwitches").intValue());
+        assertNotNull(this.source.frameAfter(this.source.getLastFrame().getSequence(), 5000));
+    }
+
+    @Test
+    public void testDecimation() throws Exception
+    {
+        FakeCamera camera = this.camera(Mode.STREAM);
+        this.source = this.source("<url>" + camera.getURL() + "</url>");
+
+        /* Frames are read at the rate the viewer needs. */
+        this.source.register(this.viewer, new Demand(Integer.MAX_VALUE, Integer.MAX_VALUE, 5));
+        assertEquals(5, this.countFrames(2000), 2);
+        assertEquals(5, this.source.getStats().get("ingestRate").intValue());
+        assertTrue(this.source.getStats().get("decimated").longValue() > 0);
+
+        /* A viewer needing every frame stops decimation. */
+        Object demanding = new Object();
+        this.source.register(demanding);
+        assertEquals(1000 / FakeCamera.FRAME_PERIOD, this.countFrames(2000), 3);
+        assertEquals(0, this.source.getStats().get("ingestRate").intValue());
+        this.source.unregister(demanding);
+    }
+
+    @Test
+    public void testMaxFps() throws Exception
+    {
+        FakeCamera camera = this.camera(Mode.STREAM);
+        this.source = this.source("<url>" + camera.getURL() + "</url><maxFps>4</maxFps>");
+        this.source.register(this.viewer);
+
+        assertEquals(4, this.countFrames(2000), 2);
+        assertEquals(4, this.source.getStats().get("ingestRate").intValue());
+    }
+
+    @Test
+    public void testRetriesExhausted() throws Exception
+    {
+        FakeCamera camera = this.camera(Mode.REFUSE);
+        this.source = this.source("<url>" + camera.getURL() + "</url><retries>2</retries>");
+        this.source.register(this.viewer);
+
+        /* Waiting viewers are released once the retries are exhausted. */
+        assertNull(this.source.frameAfter(-1, 5000));
+        assertTrue(this.source.isErrored());
+        assertTrue(this.source.isReading());
+
+        /* Reconnection continues so the stream recovers with the camera. */
+        camera.setModes(Mode.STREAM);
+        long deadline = System.currentTimeMillis() + 10000;
+        while (this.source.isErrored() && System.currentTimeMillis() < deadline) Thread.sleep(100);
+
+        assertFalse(this.source.isErrored());
+        assertNotNull(this.source.frameAfter(-1, 5000));
+    }
+
+    @Test
+    public void testLinger() throws Exception
+    {
+        FakeCamera camera = this.camera(Mode.STREAM);
+        this.source = this.source("<url>" + camera.getURL() + "</url><linger>1000</linger>");
+        this.source.register(this.viewer);
+        Frame last = this.source.frameAfter(-1, 5000);
+        assertNotNull(last);
+
+        /* A viewer returning while the source lingers does not wait for a new connection. */
+        this.source.unregister(this.viewer);
+        assertTrue(this.source.isReading());
+        assertEquals(1, this.source.getStats().get("lingering").intValue());
+
+        this.source.register(this.viewer);
+        assertNotNull(this.source.frameAfter(last.getSequence(), 1000));
+        assertEquals(1, camera.getConnections());
+
+        Map<String, Number> stats = this.source.getStats();
+        assertEquals(1, stats.get("coldStarts").intValue());
+        assertEquals(1, stats.get("warmJoins").intValue());
+        assertEquals(0, stats.get("lingering").intValue());
+        assertTrue(stats.get("firstFrameLatency").doubleValue() > 0);
+
+        this.source.unregister(this.viewer);
+        Thread.sleep(1500);
+        assertFalse(this.source.isReading());
+    }
+
+    @Test
+    public void testPrewarm() throws Exception
+    {
+        FakeCamera camera = this.camera(Mode.STREAM);
+        this.source = this.source("<url>" + camera.getURL() + "</url>");
+
+        /* A prewarmed source is read without viewers until the prewarm expires. */
+        assertTrue(this.source.prewarm(1000));
+        assertNotNull(this.source.frameAfter(-1, 5000));
+
+        this.source.register(this.viewer);
+        this.source.unregister(this.viewer);
+        assertTrue(this.source.isReading());
+
+        Map<String, Number> stats = this.source.getStats();
+        assertEquals(1, stats.get("prewarms").intValue());
+        assertEquals(1, stats.get("warmJoins").intValue());
+        assertEquals(1, camera.getConnections());
+
+        Thread.sleep(1500);
+        assertFalse(this.source.isReading());
+
+        this.source.disable();
+        assertFalse(this.source.prewarm(1000));
+    }
+
+    /**
+     * Measures the rate frames are published by the source.
+     *
+     * @param duration time in milliseconds to count frames for
+     * @return frames per second
+     */
+    private double countFrames(long duration)
+    {
+        Frame first = this.source.frameAfter(-1, 5000);
+        assertNotNull(first);
+
+        long end = System.currentTimeMillis() + duration;
+        Frame last = first;
+        while (System.currentTimeMillis() < end)
+        {
+            Frame frame = this.source.frameFollowing(last.getSequence(), 1000);
+            if (frame != null) last = frame;
+        }
+
+        return (last.getSequence() - first.getSequence()) * 1000.0 / duration;
+    }
+
+    /**
+     * Creates a camera.
+     *
+     * @param modes behaviour of each connection
+     * @return camera
+     * @throws IOException error creating camera
+     */
+    private FakeCamera camera(Mode... modes) throws IOException
+    {
+        FakeCamera camera = new FakeCamera(modes);
+        this.cameras.add(camera);
+        return camera;
+    }
+
+    /**
+     * Creates an on demand source from stream configuration.
+     *
+     * @param stream stream configuration elements
+     * @return source
+     * @throws Exception error loading configuration
+     */
+    private SourceStream source(String stream) throws Exception
+    {
+        File file = this.config("<stream><name>fake</name>" + stream + "</stream>");
+        return new SourceStream(new StreamerConfig(file).getStream("fake"));
+    }
+
+    /**
+     * Writes a configuration file with streams.
+     *
+     * @param streams stream elements
+     * @return configuration file
+     * @throws IOException error writing configuration
+     */
+    private File config(String streams) throws IOException
+    {
+        File file = File.createTempFile("source-test", ".xml");
+        file.deleteOnExit();
+
+        try (FileWriter writer = new FileWriter(file))
+        {
+            writer.write("<?xml version=\"1.0\" encoding=\"utf-8\" ?><streamer><streams>" + streams +
+                    "</streams></streamer>");
+        }
+
+        return file;
+    }
+}